@@ -1,14 +1,42 @@
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.*;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
 
 public class BuildCustomLang{
     private final static String FOLDER_PATH = "mars/mips/instructions/customlangs/";
     private final static String OUT_PATH = "last_customlang_out";
+    private final static String WATCH_OPTION = "-watch";
+
+    // Compiler and file manager are kept between builds so watch mode doesn't reload the MARS classes each time
+    private static JavaCompiler compiler;
+    private static StandardJavaFileManager fileManager;
+    private static Writer compilerOutput = new OutputStreamWriter(System.out);
 
     public static boolean findJavaFileInDir(File dir, String filename){
         for (File fileEntry : dir.listFiles()){
@@ -42,20 +70,109 @@ public class BuildCustomLang{
             System.exit(-1);
         return;
     }
-    public static void main(String[] args) throws IOException, InterruptedException{
-        String langFile = "";
-        if (args.length == 1){
-            langFile = args[0].split("\\.")[0];
-        } else{
-            System.out.println("Improper input provided! Give only one argument, the name of your custom language file, i.e. \"ExampleCustomAssembly.java\".");
-            System.exit(-1);
+
+    /*
+     * Returns true if some MARS source file is newer than its class file, or has none.  The
+     * custom language sources are not part of MARS and are skipped.
+     */
+    private static boolean isMarsOutOfDate(File dir){
+        for (File f : dir.listFiles()){
+            if (f.isDirectory()){
+                if (!f.getPath().replace(File.separatorChar, '/').equals(FOLDER_PATH.substring(0, FOLDER_PATH.length() - 1)) && isMarsOutOfDate(f)){
+                    return true;
+                }
+            } else if (f.getName().endsWith(".java")){
+                File classFile = new File(dir, f.getName().substring(0, f.getName().length() - 5) + ".class");
+                if (!classFile.exists() || classFile.lastModified() < f.lastModified()){
+                    return true;
+                }
+            }
         }
-        File folder = new File(FOLDER_PATH);
-        
-        if (!findJavaFileInDir(folder, langFile)){
-            System.out.println("File not found in " + FOLDER_PATH + "! Input only the name of your custom language file, i.e. \"ExampleCustomAssembly.java\".");
-            System.exit(-1);
+        return false;
+    }
+
+    // Compiles MARS in place, as "javac Mars.java" does, unless its class files are already up to date.
+    private static boolean ensureMarsCompliance(){
+        File mars = new File("Mars.java");
+        File marsClass = new File("Mars.class");
+        if (marsClass.exists() && marsClass.lastModified() >= mars.lastModified() && !isMarsOutOfDate(new File("mars"))){
+            return true;
+        }
+        Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjects(mars);
+        List<String> options = Arrays.asList("-classpath", ".", "-nowarn");
+        return compiler.getTask(compilerOutput, fileManager, null, options, null, units).call();
+    }
+
+    /*
+     * Compiles the language file against the MARS class files and returns its classes, keyed by
+     * binary name.  Nothing is written to disk.  Returns null if compilation fails.
+     */
+    private static Map<String, byte[]> compileLanguage(String langFile){
+        final Map<String, ByteArrayOutputStream> classes = new LinkedHashMap<String, ByteArrayOutputStream>();
+        JavaFileManager memoryManager = new ForwardingJavaFileManager<StandardJavaFileManager>(fileManager){
+            public JavaFileObject getJavaFileForOutput(Location location, final String className, JavaFileObject.Kind kind, FileObject sibling){
+                return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind){
+                    public OutputStream openOutputStream(){
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        classes.put(className, bytes);
+                        return bytes;
+                    }
+                };
+            }
+        };
+        Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjects(new File(FOLDER_PATH + langFile + ".java"));
+        // MARS classes were brought up to date above; only the language's own classes go in the JAR
+        List<String> options = Arrays.asList("-classpath", ".", "-implicit:none");
+        if (!compiler.getTask(compilerOutput, memoryManager, null, options, null, units).call()){
+            return null;
+        }
+        Map<String, byte[]> result = new LinkedHashMap<String, byte[]>();
+        for (Map.Entry<String, ByteArrayOutputStream> e : classes.entrySet()){
+            result.put(e.getKey(), e.getValue().toByteArray());
+        }
+        return result;
+    }
+
+    /*
+     * Writes the classes to a JAR file in the language folder.  The JAR is written under a
+     * temporary name and then moved into place, so MARS never sees a partly written file.
+     */
+    private static void writeJar(String langFile, Map<String, byte[]> classes) throws IOException{
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        File tempJar = new File(FOLDER_PATH + langFile + ".jar.tmp");
+        JarOutputStream jar = new JarOutputStream(new FileOutputStream(tempJar), manifest);
+        try {
+            for (Map.Entry<String, byte[]> e : classes.entrySet()){
+                jar.putNextEntry(new JarEntry(e.getKey().replace('.', '/') + ".class"));
+                jar.write(e.getValue());
+                jar.closeEntry();
+            }
+        } finally {
+            jar.close();
+        }
+        Files.move(tempJar.toPath(), Paths.get(FOLDER_PATH + langFile + ".jar"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static boolean build(String langFile) throws IOException{
+        long start = System.currentTimeMillis();
+        if (!ensureMarsCompliance()){
+            return false;
+        }
+        System.out.println("[PROCESS] MARS executable is up to date.");
+        Map<String, byte[]> classes = compileLanguage(langFile);
+        if (classes == null){
+            return false;
         }
+        System.out.println("[PROCESS] " + langFile + ".java file compiled successfully.");
+        writeJar(langFile, classes);
+        System.out.println("[PROCESS] JAR file successfully written to " + FOLDER_PATH + langFile + ".jar.");
+        System.out.println("[SUCCESS] JAR built successfully in " + (System.currentTimeMillis() - start) + " ms! Open MARS LE and check it out.");
+        return true;
+    }
+
+    // Builds the language with external javac and jar processes, for when no compiler is available in this JVM.
+    private static void buildWithCommands(String langFile) throws IOException, InterruptedException{
         String[] ensure_mars_compliance_command = {"javac", "Mars.java"};
         String[] compile_command = {"javac", "-d", OUT_PATH, FOLDER_PATH + langFile + ".java"};
         String[] build_jar_command = {"jar", "cf", langFile + ".jar", "-C", OUT_PATH, "."};
@@ -73,4 +190,71 @@ public class BuildCustomLang{
         System.out.println("[PROCESS] JAR file successfully moved to " + FOLDER_PATH + langFile + ".jar.");
         System.out.println("[SUCCESS] JAR built successfully! Open MARS LE and check it out.");
     }
-}
\ No newline at end of file
+
+    // Rebuilds the language each time its source file is saved, until the program is stopped.
+    private static void watch(String langFile) throws IOException, InterruptedException{
+        Path folder = Paths.get(FOLDER_PATH);
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        folder.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        System.out.println("[WATCH] Watching " + FOLDER_PATH + langFile + ".java for changes. Press Ctrl+C to stop.");
+        while (true){
+            WatchKey key = watcher.take();
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()){
+                if (event.context() != null && event.context().toString().equalsIgnoreCase(langFile + ".java")){
+                    changed = true;
+                }
+            }
+            key.reset();
+            if (!changed){
+                continue;
+            }
+            // Editors often save in several steps; let them finish before compiling
+            Thread.sleep(50);
+            while ((key = watcher.poll()) != null){
+                key.pollEvents();
+                key.reset();
+            }
+            if (!build(langFile)){
+                System.out.println("[WATCH] Build failed. Waiting for the next change.");
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException{
+        String langFile = "";
+        boolean watchMode = false;
+        if (args.length == 1){
+            langFile = args[0].split("\\.")[0];
+        } else if (args.length == 2 && args[0].equals(WATCH_OPTION)){
+            langFile = args[1].split("\\.")[0];
+            watchMode = true;
+        } else{
+            System.out.println("Improper input provided! Give only one argument, the name of your custom language file, i.e. \"ExampleCustomAssembly.java\".");
+            System.out.println("To rebuild the language every time it is saved, put " + WATCH_OPTION + " before the file name.");
+            System.exit(-1);
+        }
+        File folder = new File(FOLDER_PATH);
+
+        if (!findJavaFileInDir(folder, langFile)){
+            System.out.println("File not found in " + FOLDER_PATH + "! Input only the name of your custom language file, i.e. \"ExampleCustomAssembly.java\".");
+            System.exit(-1);
+        }
+        compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null){
+            if (watchMode){
+                System.out.println("Watch mode needs a Java compiler in this JVM. Run BuildCustomLang with a JDK.");
+                System.exit(-1);
+            }
+            buildWithCommands(langFile);
+            return;
+        }
+        fileManager = compiler.getStandardFileManager(null, null, null);
+        if (!build(langFile) && !watchMode){
+            System.exit(-1);
+        }
+        if (watchMode){
+            watch(langFile);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+   import java.io.BufferedWriter;
+   import java.io.File;
+   import java.io.FileWriter;
+   import java.io.IOException;
+   import java.io.PrintStream;
+   import java.io.PrintWriter;
+   import java.util.ArrayList;
+
+   import mars.Globals;
+   import mars.MIPSprogram;
+
+/**
+ * Measures macro expansion by assembling a generated program that defines a small macro library
+ * and calls its macros many times, so that a change to Macro, MacroPool or the way the assembler
+ * expands macros can be seen by comparing the output before and after it.  Compile and run from
+ * the MARS directory:
+ * <pre>
+ *   javac -d bench -cp . bench/MacroBenchmark.java
+ *   java -cp bench:. MacroBenchmark [-n expansions] [-runs count] [-nolabels] [-keep file]
+ * </pre>
+ * The library has five macros with zero to three parameters; one of them defines a label and
+ * branches to it, which makes every expansion rename the label.  The program calls the macros in
+ * turn until it has made the given number of calls (default 100000).  -nolabels leaves the
+ * label-defining macro out, and -keep writes the generated source to a file for assembling
+ * with the command-line "a" option.
+ * <br><br>
+ * Output is one tab-separated line per run: run, expansions, milliseconds to read and tokenize
+ * the source, milliseconds to assemble it (which is where macros are expanded), and the number of
+ * basic statements produced.  The first run includes JIT warm-up.
+ **/
+
+   public class MacroBenchmark {
+      private static final String[] LIBRARY = {
+         ".macro push (%r)",
+         "   addi $sp, $sp, -4",
+         "   sw %r, 0($sp)",
+         ".end_macro",
+         ".macro pop (%r)",
+         "   lw %r, 0($sp)",
+         "   addi $sp, $sp, 4",
+         ".end_macro",
+         ".macro add3 (%d, %a, %b)",
+         "   add %d, %a, %b",
+         "   add %d, %d, %b",
+         ".end_macro",
+         ".macro nothing",
+         "   nop",
+         ".end_macro",
+         };
+      private static final String[] LABEL_MACRO = {
+         ".macro max (%d, %a, %b)",
+         "   move %d, %a",
+         "   bge %a, %b, done",
+         "   move %d, %b",
+         "done:",
+         ".end_macro",
+         };
+      private static final String[] CALLS = {"push ($t0)", "add3 ($t1, $t2, $t3)", "pop ($t0)", "nothing"};
+      private static final String LABEL_CALL = "max ($t4, $t5, $t6)";
+
+       public static void main(String[] args) throws Exception {
+         int expansions = 100000;
+         int runs = 3;
+         boolean labels = true;
+         String keep = null;
+         for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-n") && i + 1 < args.length) {
+               expansions = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-runs") && i + 1 < args.length) {
+               runs = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-nolabels")) {
+               labels = false;
+            }
+            else if (args[i].equals("-keep") && i + 1 < args.length) {
+               keep = args[++i];
+            }
+            else {
+               System.out.println("Unknown argument " + args[i]);
+               return;
+            }
+         }
+         File source = (keep != null) ? new File(keep) : File.createTempFile("macros", ".asm");
+         if (keep == null) {
+            source.deleteOnExit();
+         }
+         writeSource(source, expansions, labels);
+
+         PrintStream out = System.out;
+         Globals.initialize(false);
+         out.println("# run\texpansions\ttokenize ms\tassemble ms\tstatements");
+         for (int run = 1; run <= runs; run++) {
+            ArrayList files = new ArrayList();
+            files.add(source.getPath());
+            MIPSprogram program = new MIPSprogram();
+            Globals.program = program;
+            long start = System.nanoTime();
+            ArrayList prepared = program.prepareFilesForAssembly(files, source.getPath(), null);
+            long tokenized = System.nanoTime();
+            program.assemble(prepared, true, false);
+            long assembled = System.nanoTime();
+            out.println(run + "\t" + expansions + "\t" + (tokenized - start) / 1000000 + "\t"
+               + (assembled - tokenized) / 1000000 + "\t" + program.getMachineList().size());
+         }
+         out.flush();
+      }
+
+      // Writes the macro library followed by the calls, ending with an exit syscall.
+       private static void writeSource(File file, int expansions, boolean labels) throws IOException {
+         PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+         try {
+            for (int i = 0; i < LIBRARY.length; i++) {
+               writer.println(LIBRARY[i]);
+            }
+            if (labels) {
+               for (int i = 0; i < LABEL_MACRO.length; i++) {
+                  writer.println(LABEL_MACRO[i]);
+               }
+            }
+            writer.println(".text");
+            int kinds = CALLS.length + (labels ? 1 : 0);
+            for (int i = 0; i < expansions; i++) {
+               int kind = i % kinds;
+               writer.println("   " + ((kind < CALLS.length) ? CALLS[kind] : LABEL_CALL));
+            }
+            writer.println("   li $v0, 10");
+            writer.println("   syscall");
+         }
+         finally {
+            writer.close();
+         }
+      }
+   }
@@ -0,0 +1,220 @@
+   import java.lang.reflect.Field;
+   import java.util.ArrayList;
+   import java.util.Random;
+   import javax.swing.event.UndoableEditEvent;
+   import javax.swing.event.UndoableEditListener;
+   import javax.swing.text.BadLocationException;
+   import javax.swing.text.Element;
+   import javax.swing.text.PlainDocument;
+   import javax.swing.text.Position;
+   import javax.swing.text.StringContent;
+   import javax.swing.undo.UndoManager;
+
+   import mars.venus.RingBufferContent;
+
+/**
+ * Checks mars.venus.RingBufferContent against javax.swing.text.StringContent, which it
+ * is meant to behave as.  Two PlainDocuments, one on each, are given the same random
+ * sequence of inserts, removals (from the front, as the Run I/O console cuts, and
+ * elsewhere, as typed input does), positions created and dropped, and undos and redos.
+ * After every step the text, the line elements and every position must be the same in
+ * both.  It then adds and removes lines in the middle of a document many times, as a long
+ * run with typed input does, and reports how many positions the content still keeps once
+ * those of the removed lines have been collected.  Compile and run from the MARS directory:
+ * <pre>
+ *   javac -d bench -cp . bench/RingBufferContentCheck.java
+ *   java -cp bench:. RingBufferContentCheck [-steps count] [-seed seed]
+ * </pre>
+ * The exit code is 1 if the contents differ, after printing the step where they did.
+ **/
+
+   public class RingBufferContentCheck {
+      private static final String LETTERS = "abc\n";
+      private static final int MAXIMUM_POSITIONS = 200; // beyond this, positions are dropped instead
+      private static final int MAXIMUM_LENGTH = 2000;   // beyond this, text is removed instead of inserted
+
+      private PlainDocument ring = new PlainDocument(new RingBufferContent());
+      private PlainDocument string = new PlainDocument(new StringContent());
+      private UndoManager ringUndo = new UndoManager();
+      private UndoManager stringUndo = new UndoManager();
+      private ArrayList ringPositions = new ArrayList();
+      private ArrayList stringPositions = new ArrayList();
+      private Random random;
+
+       public static void main(String[] args) throws Exception {
+         int steps = 20000;
+         long seed = 1;
+         for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-steps") && i + 1 < args.length) {
+               steps = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-seed") && i + 1 < args.length) {
+               seed = Long.parseLong(args[++i]);
+            }
+            else {
+               System.out.println("Unknown argument " + args[i]);
+               return;
+            }
+         }
+         if (!new RingBufferContentCheck(seed).compare(steps)) {
+            System.exit(1);
+         }
+         checkPositionsFreed();
+      }
+
+       private RingBufferContentCheck(long seed) {
+         random = new Random(seed);
+         ring.addUndoableEditListener(listener(ringUndo));
+         string.addUndoableEditListener(listener(stringUndo));
+      }
+
+      // Applies the given number of random steps to both documents, comparing them after each.
+       private boolean compare(int steps) throws BadLocationException {
+         for (int step = 1; step <= steps; step++) {
+            String done = randomStep();
+            String difference = difference();
+            if (difference != null) {
+               System.out.println("Step " + step + " (" + done + "): " + difference);
+               return false;
+            }
+            if (step % 20000 == 0) {
+               System.gc(); // lets dropped positions be collected and purged on the next edit
+            }
+         }
+         System.out.println(steps + " steps: text, lines and positions the same as StringContent");
+         return true;
+      }
+
+       private String randomStep() throws BadLocationException {
+         int length = ring.getLength();
+         int choice = random.nextInt(100);
+         if (choice < 35 && length < MAXIMUM_LENGTH || length == 0) {
+            int where = random.nextInt(length + 1);
+            String text = randomText(1 + random.nextInt(8));
+            ring.insertString(where, text, null);
+            string.insertString(where, text, null);
+            return "insert " + where;
+         }
+         if (choice < 50) {
+            int where = random.nextInt(length);
+            int count = 1 + random.nextInt(Math.min(8, length - where));
+            ring.remove(where, count);
+            string.remove(where, count);
+            return "remove " + where + "," + count;
+         }
+         if (choice < 60) {
+            int count = 1 + random.nextInt(Math.min(8, length));
+            ring.remove(0, count);
+            string.remove(0, count);
+            return "cut " + count;
+         }
+         if (choice < 75 && ringPositions.size() < MAXIMUM_POSITIONS) {
+            int where = random.nextInt(length + 1);
+            ringPositions.add(ring.createPosition(where));
+            stringPositions.add(string.createPosition(where));
+            return "position " + where;
+         }
+         if (choice < 82 && ringPositions.size() > 0) {
+            int index = random.nextInt(ringPositions.size());
+            ringPositions.remove(index);
+            stringPositions.remove(index);
+            return "drop position " + index;
+         }
+         if (choice < 92) {
+            if (ringUndo.canUndo() != stringUndo.canUndo()) {
+               return "undo availability differs";
+            }
+            if (ringUndo.canUndo()) {
+               ringUndo.undo();
+               stringUndo.undo();
+            }
+            return "undo";
+         }
+         if (ringUndo.canRedo() != stringUndo.canRedo()) {
+            return "redo availability differs";
+         }
+         if (ringUndo.canRedo()) {
+            ringUndo.redo();
+            stringUndo.redo();
+         }
+         return "redo";
+      }
+
+      // Description of the first difference between the documents, or null if there is none.
+       private String difference() throws BadLocationException {
+         if (ringUndo.canUndo() != stringUndo.canUndo() || ringUndo.canRedo() != stringUndo.canRedo()) {
+            return "undo availability differs";
+         }
+         String ringText = ring.getText(0, ring.getLength());
+         String stringText = string.getText(0, string.getLength());
+         if (!ringText.equals(stringText)) {
+            return "text \"" + ringText + "\" instead of \"" + stringText + "\"";
+         }
+         Element ringLines = ring.getDefaultRootElement();
+         Element stringLines = string.getDefaultRootElement();
+         if (ringLines.getElementCount() != stringLines.getElementCount()) {
+            return ringLines.getElementCount() + " lines instead of " + stringLines.getElementCount();
+         }
+         for (int i = 0; i < ringLines.getElementCount(); i++) {
+            Element ringLine = ringLines.getElement(i);
+            Element stringLine = stringLines.getElement(i);
+            if (ringLine.getStartOffset() != stringLine.getStartOffset()
+                || ringLine.getEndOffset() != stringLine.getEndOffset()) {
+               return "line " + i + " is " + ringLine.getStartOffset() + "-" + ringLine.getEndOffset()
+                  + " instead of " + stringLine.getStartOffset() + "-" + stringLine.getEndOffset();
+            }
+         }
+         for (int i = 0; i < ringPositions.size(); i++) {
+            int ringOffset = ((Position) ringPositions.get(i)).getOffset();
+            int stringOffset = ((Position) stringPositions.get(i)).getOffset();
+            if (ringOffset != stringOffset) {
+               return "position " + i + " is " + ringOffset + " instead of " + stringOffset;
+            }
+         }
+         return null;
+      }
+
+      // Adds and removes lines in the middle of a document, then reports the positions kept.
+       private static void checkPositionsFreed() throws Exception {
+         RingBufferContent content = new RingBufferContent();
+         PlainDocument document = new PlainDocument(content);
+         for (int i = 0; i < 100; i++) {
+            document.insertString(document.getLength(), "output line " + i + "\n", null);
+         }
+         int middle = document.getLength() / 2;
+         for (int i = 0; i < 100000; i++) {
+            document.insertString(middle, "typed\n", null);
+            document.remove(middle, 6);
+         }
+         int before = markCount(content);
+         System.gc();
+         Thread.sleep(100);
+         document.insertString(document.getLength(), "end\n", null); // removes the collected marks
+         System.out.println("after 100000 lines typed and removed: " + before + " positions kept, "
+            + markCount(content) + " after collection, for " + document.getDefaultRootElement().getElementCount()
+            + " lines");
+      }
+
+       private static int markCount(RingBufferContent content) throws Exception {
+         Field marks = RingBufferContent.class.getDeclaredField("marks");
+         marks.setAccessible(true);
+         return ((ArrayList) marks.get(content)).size();
+      }
+
+       private String randomText(int length) {
+         StringBuffer text = new StringBuffer();
+         for (int i = 0; i < length; i++) {
+            text.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+         }
+         return text.toString();
+      }
+
+       private static UndoableEditListener listener(final UndoManager undo) {
+         return
+            new UndoableEditListener() {
+               public void undoableEditHappened(UndoableEditEvent e) {
+                  undo.addEdit(e.getEdit());
+               }
+            };
+      }
+   }
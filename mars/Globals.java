@@ -83,6 +83,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       public static final int maximumErrorMessages = getErrorLimit();
     /** Maximum number of back-step operations to buffer */
       public static final int maximumBacksteps = getBackstepLimit();
+    /** Size in bytes of the standard output and standard error buffers when running from the command line */
+      public static final int consoleBufferSize = getConsoleBufferSize();
+    /** Maximum number of files a MIPS program can have open, including standard input, output and error */
+      public static final int maximumOpenFiles = getMaximumOpenFiles();
+    /** Size in bytes of the buffer of each file a MIPS program opens */
+      public static final int fileBufferSize = getFileBufferSize();
+    /** Files a MIPS program opens for reading that are no longer than this many bytes are memory-mapped */
+      public static final int fileMapLimit = getFileMapLimit();
+    /** Rate at which virtual time advances as instructions are executed */
+      public static final int virtualTimeInstructionsPerMillisecond = getVirtualTimeInstructionsPerMillisecond();
    	/** MARS copyright years */
       public static final String copyrightYears = getCopyrightYears();
    	/** MARS copyright holders */
@@ -120,11 +130,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      
        public static void initialize(boolean gui) {
          if (!initialized) {
+            settings = new Settings(gui); // first: loading the syscalls reads a setting
             memory = Memory.getInstance();  //clients can use Memory.getInstance instead of Globals.memory
             instructionSet = new InstructionSet();
             instructionSet.populate();    
+            if (gui) {
+               // the IDE lets the user switch languages; have the others ready
+               LanguageLoader.buildInstructionsInBackground();
+               LanguageLoader.watchForChanges();
+            }
             symbolTable = new SymbolTable("global");
-            settings = new Settings(gui);
             initialized = true;
             debug = false; 
 				memory.clear(); // will establish memory configuration from setting
@@ -146,6 +161,31 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return getIntegerProperty(configPropertiesFile, "BackstepLimit", 1000);
       } 
 		
+   	// Read size of the console output buffers from properties file.  0 means unbuffered.
+       private static int getConsoleBufferSize() {
+         return getIntegerProperty(configPropertiesFile, "ConsoleBufferSize", 8192);
+      }
+
+   	// Read limit on number of files open at once from properties file.
+       private static int getMaximumOpenFiles() {
+         return getIntegerProperty(configPropertiesFile, "MaximumOpenFiles", 32);
+      }
+
+   	// Read size of the buffer for each file opened by a MIPS program from properties file.
+       private static int getFileBufferSize() {
+         return getIntegerProperty(configPropertiesFile, "FileBufferSize", 65536);
+      }
+
+   	// Read size limit for memory-mapping files opened for reading from properties file.  0 means never.
+       private static int getFileMapLimit() {
+         return getIntegerProperty(configPropertiesFile, "FileMapLimit", 0);
+      }
+
+   	// Read number of instructions executed per millisecond of virtual time from properties file.
+       private static int getVirtualTimeInstructionsPerMillisecond() {
+         return getIntegerProperty(configPropertiesFile, "VirtualTimeInstructionsPerMillisecond", 1000);
+      }
+		
    	// Read ASCII default display character for non-printing characters, from properties file.
        public static String getAsciiNonPrint() {
 		   String anp = getPropertyEntry(configPropertiesFile, "AsciiNonPrint");
@@ -57,6 +57,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private ArrayList tokenList;
       private ArrayList parsedList;
       private ArrayList machineList;
+      private ArrayList includedFilenames = new ArrayList();
       private BackStepper backStepper;
       private SymbolTable localSymbolTable;
       private MacroPool macroPool;
@@ -240,8 +241,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     **/
    
        public void tokenize() throws ProcessingException {
+         tokenize(new IncludeFileCache());
+      }
+   
+   /**
+    * Tokenizes the MIPS source program, taking the contents of any included files from
+    * the given cache. Program must have already been read from file.
+    * @param includeCache IncludeFileCache shared by all files of the assembly.
+    * @throws ProcessingException Will throw exception if errors occured while tokenizing.
+    **/
+   
+       public void tokenize(IncludeFileCache includeCache) throws ProcessingException {
          this.tokenizer = new Tokenizer();
-         this.tokenList = tokenizer.tokenize(this);
+         this.tokenList = tokenizer.tokenize(this, includeCache);
          this.localSymbolTable = new SymbolTable(this.filename); // prepare for assembly
          return;
       }
@@ -263,6 +275,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
        public ArrayList prepareFilesForAssembly(ArrayList filenames, String leadFilename, String exceptionHandler) throws ProcessingException {
          ArrayList MIPSprogramsToAssemble = new ArrayList();
+         IncludeFileCache includeCache = new IncludeFileCache();
          int leadFilePosition = 0;
          if (exceptionHandler != null && exceptionHandler.length() > 0) {
             filenames.add(0, exceptionHandler);
@@ -272,7 +285,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             String filename = (String) filenames.get(i);  
             MIPSprogram preparee = (filename.equals(leadFilename)) ? this : new MIPSprogram();
             preparee.readSource(filename);
-            preparee.tokenize();
+            preparee.tokenize(includeCache);
          	// I want "this" MIPSprogram to be the first in the list...except for exception handler
             if (preparee == this && MIPSprogramsToAssemble.size()>0) {
                MIPSprogramsToAssemble.add(leadFilePosition,preparee);
@@ -281,9 +294,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                MIPSprogramsToAssemble.add(preparee);
             }
          }
+         this.includedFilenames = includeCache.getFilenames();
          return MIPSprogramsToAssemble;
       }
    
+   /**
+    * Produces the names of the files included by ".include" directives in the files
+    * last prepared for assembly, including those included by included files.
+    * @return ArrayList of String, the canonical path of each included file.
+    **/
+    
+       public ArrayList getIncludedFilenames() {
+         return includedFilenames;
+      }
+   
    /**
     * Assembles the MIPS source program. All files comprising the program must have 
     * already been tokenized.  Assembler warnings are not considered errors.
@@ -319,7 +343,32 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          this.backStepper = new BackStepper();
          return asm.getErrorList();
       }
-   
+
+   /**
+    * Loads a previously saved assembled image of the given source files into memory,
+    * in place of tokenizing and assembling them.  If there is no usable image, nothing
+    * is changed and the files must be prepared and assembled as usual.
+    * @param cache AssemblyCache holding saved images.
+    * @param filenames ArrayList containing the source file name(s).
+    * @param leadFilename String containing name of source file that will be represented
+    * by "this" MIPSprogram object.
+    * @param extendedAssemblerEnabled A boolean value - true means extended (pseudo) instructions
+    * are permitted in source code and false means they are to be flagged as errors.
+    * @return true if the image was loaded, false if the files need to be assembled.
+    * @throws ProcessingException Will throw exception if a source file could not be read.
+    **/
+
+       public boolean loadAssembledImage(AssemblyCache cache, ArrayList filenames, String leadFilename,
+              boolean extendedAssemblerEnabled) throws ProcessingException {
+         ArrayList machine = cache.load(this, filenames, leadFilename, extendedAssemblerEnabled);
+         if (machine == null) {
+            return false;
+         }
+         this.machineList = machine;
+         this.backStepper = new BackStepper();
+         return true;
+      }
+
    
    /**
     * Simulates execution of the MIPS program. Program must have already been assembled.
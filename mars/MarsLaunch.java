@@ -4,6 +4,10 @@
    import mars.mips.dump.*;
    import mars.mips.hardware.*;
    import mars.simulator.*;
+   import mars.assembler.AssemblyCache;
+   import mars.mips.instructions.syscalls.HeapAllocator;
+   import mars.mips.instructions.syscalls.RandomStreams;
+   import mars.mips.instructions.syscalls.ToneGenerator;
    import java.io.*;
    import java.util.*;
    import java.awt.*;
@@ -56,6 +60,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.<br>
    	  ascii  -- display memory or register contents interpreted as ASCII
    		   b  -- brief - do not display register/memory address along with contents<br>
+        cache  -- reuse assembled program images saved in a directory.  Option has 1 argument, e.g.<br>
+                  <tt>cache &lt;dir&gt;</tt>.  Unchanged sources and settings skip assembly.<br>
    		   d  -- print debugging statements<br>
            da  -- both a and d<br>
            db  -- MIPS delayed branching is enabled.<br>
@@ -65,21 +71,34 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   an address range (see <i>m-n</i> below).  Current supported <br>
                   segments are <tt>.text</tt> and <tt>.data</tt>.  Current supported dump formats <br>
                   are <tt>Binary</tt>, <tt>HexText</tt>, <tt>BinaryText</tt>.<br>
+           fs  -- file syscalls use files in memory, loaded from a directory or zip file, and never<br>
+                  touch the disk.  Option has 1 argument, e.g. <tt>fs &lt;dir&gt;</tt>.<br>
+        fsout  -- save the files the program wrote in memory to a directory at the end of the run.<br>
+                  Option has 1 argument, e.g. <tt>fsout &lt;dir&gt;</tt>.  Implies in-memory files.<br>
             h  -- display help.  Use by itself and with no filename</br>
           hex  -- display memory or register contents in hexadecimal (default)<br>
+           hs  -- display Heap Statistics of the Malloc and Free syscalls at end of run<br>
            ic  -- display count of MIPS basic instructions 'executed'");
+           in  -- take program input from a file instead of standard input.  Option has 1 argument,<br>
+                  e.g. <tt>in &lt;file&gt;</tt>.  Input and confirm dialogs read their responses from it too,<br>
+                  one per line, as they do from standard input when there is no display.<br>
            mc  -- set memory configuration.  Option has 1 argument, e.g.<br>
                   <tt>mc &lt;config$gt;</tt>, where &lt;config$gt; is <tt>Default</tt><br>
                   for the MARS default 32-bit address space, <tt>CompactDataAtZero</tt> for<br>
                   a 32KB address space with data segment at address 0, or <tt>CompactTextAtZero</tt><br>
                   for a 32KB address space with text segment at address 0.<br>
            me  -- display MARS messages to standard err instead of standard out. Can separate via redirection.</br>
+           ms  -- Memory Syscalls - provide the MemCopy, MemSet, MemCompare and StrLen syscalls (60-63).</br>
            nc  -- do not display copyright notice (for cleaner redirected/piped output).</br>
+           nm  -- No MIDI - MIDI syscalls play nothing (MidiOutSync still waits out the tone).</br>
    		  np  -- No Pseudo-instructions allowed ("ne" will work also).<br>
    		   p  -- Project mode - assemble all files in the same directory as given file.<br>
+           rs  -- seed the random number syscalls' streams.  Option has 1 argument, e.g.<br>
+                  <tt>rs &lt;seed&gt;</tt>.  Streams the program does not seed give the same numbers every run.<br>
    	  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.<br>
            sm  -- Start execution at Main - Execution will start at program statement globally labeled main.<br>
           smc  -- Self Modifying Code - Program can write and branch to either text or data segment<br>
+           vt  -- Virtual Time - Time and Sleep syscalls use simulated time, so sleeping takes no real time<br>
            we  -- assembler Warnings will be considered Errors<br>
           <n>  -- where <n> is an integer maximum count of steps to simulate.<br>
                   If 0, negative or not specified, there is no maximum.<br>
@@ -107,7 +126,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private boolean warningsAreErrors; // Whether assembler warnings should be considered errors.
       private boolean startAtMain; // Whether to start execution at statement labeled 'main' 
       private boolean countInstructions; // Whether to count and report number of instructions executed 
+      private boolean heapStatistics; // Whether to report Malloc and Free statistics at end of run
       private boolean selfModifyingCode; // Whether to allow self-modifying code (e.g. write to text segment)
+      private boolean virtualTime; // Whether the program sees simulated time rather than real time
+      private boolean memorySyscalls; // Whether the MemCopy, MemSet, MemCompare and StrLen syscalls are provided
       private static final String rangeSeparator = "-";
       private static final int splashDuration = 2000; // time in MS to show splash screen
       private static final int memoryWordsPerLine = 4; // display 4 memory words, tab separated, per line
@@ -125,6 +147,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private ArrayList programArgumentList; // optional program args for MIPS program (becomes argc, argv)
       private int assembleErrorExitCode;  // MARS command exit code to return if assemble error occurs
       private int simulateErrorExitCode;// MARS command exit code to return if simulation error occurs
+      private String assemblyCacheDirectory; // directory of saved assembled images, null if not caching
+      private MemoryFileSystem fileSystem; // in-memory files for the file syscalls, null for the disk's
+      private String fileSystemOutputDirectory; // directory to save files the program wrote in memory, null if none
    		
       public MarsLaunch(String[] args) {
          boolean gui = (args.length == 0);
@@ -144,10 +169,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             warningsAreErrors = false;
             startAtMain = false;
             countInstructions = false;
+            heapStatistics = false;
 				selfModifyingCode = false;
+            virtualTime = false;
+            memorySyscalls = false;
             instructionCount = 0;
             assembleErrorExitCode = 0;
             simulateErrorExitCode = 0;
+            assemblyCacheDirectory = null;
+            fileSystem = null;
+            fileSystemOutputDirectory = null;
             registerDisplayList = new ArrayList();
             memoryDisplayList = new ArrayList();
             filenameList = new ArrayList();
@@ -155,6 +186,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          	// do NOT use Globals.program for command line MARS -- it triggers 'backstep' log.
             code = new MIPSprogram();  
             maxSteps = -1;
+            SystemIO.bufferConsoleOutput(Globals.consoleBufferSize);
             out = System.out;  
             if (parseCommandArgs(args)) {
                if (runCommand()) {
@@ -163,6 +195,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   displayMemoryPostMortem();
                }
                dumpSegments();
+               saveProgramFiles();
             }
             System.exit(Globals.exitCode);
          }
@@ -231,6 +264,22 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       } 	
    	
    		
+      /////////////////////////////////////////////////////////////
+   	// Save the files the program wrote to its in-memory file system.  See "fsout" option.
+   	//
+   
+      private void saveProgramFiles() {
+         if (fileSystemOutputDirectory == null) 
+            return;
+         try {
+            fileSystem.saveFiles(fileSystemOutputDirectory, true);
+         } 
+            catch (IOException e) {
+               out.println("Error while attempting to save program files to " + fileSystemOutputDirectory + ": " + e.getMessage());
+            }
+      }
+   
+   		
    	/////////////////////////////////////////////////////////////////
    	// There are no command arguments, so run in interactive mode by
    	// launching the GUI-fronted integrated development environment.
@@ -311,6 +360,77 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                }
                continue;
             } 
+            if (args[i].toLowerCase().equals("cache")) {
+               if (args.length <= (i+1)) {
+                  out.println("Cache command line argument requires a directory name.");
+                  argsOK = false;
+               } 
+               else {
+                  assemblyCacheDirectory = args[++i];
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("fs")) {
+               if (args.length <= (i+1)) {
+                  out.println("File system command line argument requires a directory or zip file name.");
+                  argsOK = false;
+                  continue;
+               } 
+               try {
+                  fileSystem = (new File(args[++i]).isDirectory()) 
+                     ? MemoryFileSystem.fromDirectory(args[i]) 
+                     : MemoryFileSystem.fromArchive(args[i]);
+                  SystemIO.setFileSystem(fileSystem);
+               } 
+                   catch (IOException ioe) {
+                     out.println("Cannot load file system from "+args[i]+": "+ioe.getMessage());
+                     argsOK = false;
+                  }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("fsout")) {
+               if (args.length <= (i+1)) {
+                  out.println("File system output command line argument requires a directory name.");
+                  argsOK = false;
+                  continue;
+               } 
+               fileSystemOutputDirectory = args[++i];
+               if (fileSystem == null) { // no fs option yet: start with no files
+                  fileSystem = new MemoryFileSystem();
+                  SystemIO.setFileSystem(fileSystem);
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("in")) {
+               if (args.length <= (i+1)) {
+                  out.println("Input command line argument requires a file name.");
+                  argsOK = false;
+                  continue;
+               } 
+               try {
+                  SystemIO.setInputSource(InputSource.fromFile(args[++i]));
+               } 
+                   catch (IOException ioe) {
+                     out.println("Cannot read input file "+args[i]+": "+ioe.getMessage());
+                     argsOK = false;
+                  }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("rs")) {
+               if (args.length <= (i+1)) {
+                  out.println("Random seed command line argument requires an integer seed.");
+                  argsOK = false;
+                  continue;
+               } 
+               try {
+                  RandomStreams.setSeed(Long.decode(args[++i]).longValue());
+               } 
+                   catch (NumberFormatException nfe) {
+                     out.println("Invalid random seed: "+args[i]);
+                     argsOK = false;
+                  }
+               continue;
+            }
             if (args[i].toLowerCase().equals("mc")) {
                String configName = args[++i];
                MemoryConfiguration config = MemoryConfigurations.getConfigurationByName(configName);
@@ -383,6 +503,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                delayedBranching = true;
                continue;
             }
+            if (args[i].toLowerCase().equals("nm")) {
+               ToneGenerator.setNullSink(true);
+               continue;
+            }
             if (args[i].toLowerCase().equals("np") || args[i].toLowerCase().equals("ne")) {
                pseudo = false;
                continue;
@@ -399,6 +523,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                selfModifyingCode = true;
                continue;
             }
+            if (args[i].toLowerCase().equals("vt")) {
+               virtualTime = true;
+               continue;
+            }
+            if (args[i].toLowerCase().equals("ms")) {
+               memorySyscalls = true;
+               continue;
+            }
+            if (args[i].toLowerCase().equals("hs")) {
+               heapStatistics = true;
+               continue;
+            }
             if (args[i].toLowerCase().equals("ic")) { // added 19-Jul-2012 DPS
                countInstructions = true;
                continue;
@@ -467,6 +603,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          try {
             Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, delayedBranching);
             Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, selfModifyingCode);
+            Globals.getSettings().setBooleanSettingNonPersistent(Settings.VIRTUAL_TIME_ENABLED, virtualTime);
+            Globals.getSettings().setBooleanSettingNonPersistent(Settings.MEMORY_SYSCALLS_ENABLED, memorySyscalls);
+            String syscallProblem = Globals.instructionSet.setMemorySyscallsEnabled(memorySyscalls);
+            if (syscallProblem != null) {
+               out.println("Memory syscalls cannot be turned " + (memorySyscalls ? "on" : "off") + ".\n" + syscallProblem);
+               return programRan;
+            }
             File mainFile = new File((String) filenameList.get(0)).getAbsoluteFile();// First file is "main" file
             ArrayList filesToAssemble;
             if (assembleProject) { 
@@ -495,15 +638,27 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             if (Globals.debug) {
                out.println("--------  TOKENIZING BEGINS  -----------");
             }
-            ArrayList MIPSprogramsToAssemble = 
-                      code.prepareFilesForAssembly(filesToAssemble, mainFile.getAbsolutePath(), null);		
-            if (Globals.debug) {
-               out.println("--------  ASSEMBLY BEGINS  -----------");
-            }
-         	// Added logic to check for warnings and print if any. DPS 11/28/06
-            ErrorList warnings = code.assemble(MIPSprogramsToAssemble, pseudo, warningsAreErrors);
-            if (warnings != null && warnings.warningsOccurred()) {
-               out.println(warnings.generateWarningReport());
+            AssemblyCache cache = (assemblyCacheDirectory == null) ? null : new AssemblyCache(new File(assemblyCacheDirectory));
+            if (cache != null && code.loadAssembledImage(cache, filesToAssemble, mainFile.getAbsolutePath(), pseudo)) {
+               if (Globals.debug) {
+                  out.println("--------  ASSEMBLED IMAGE LOADED FROM CACHE  -----------");
+               }
+            } 
+            else {
+               ArrayList MIPSprogramsToAssemble = 
+                         code.prepareFilesForAssembly(filesToAssemble, mainFile.getAbsolutePath(), null);		
+               if (Globals.debug) {
+                  out.println("--------  ASSEMBLY BEGINS  -----------");
+               }
+            	// Added logic to check for warnings and print if any. DPS 11/28/06
+               ErrorList warnings = code.assemble(MIPSprogramsToAssemble, pseudo, warningsAreErrors);
+               if (warnings != null && warnings.warningsOccurred()) {
+                  out.println(warnings.generateWarningReport());
+               }
+               else if (cache != null) {
+                  cache.store(filesToAssemble, mainFile.getAbsolutePath(), pseudo, code.getMachineList(),
+                     code.getIncludedFilenames());
+               }
             }
             RegisterFile.initializeProgramCounter(startAtMain); // DPS 3/9/09
             if (simulate) {
@@ -598,6 +753,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (countInstructions) {
             out.println("\n"+instructionCount);
          }
+         if (heapStatistics) {
+            out.println("\n"+HeapAllocator.getReport());
+         }
       }
    
    	     		   	
@@ -792,6 +950,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          out.println("  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.");
          out.println("  ascii  -- display memory or register contents interpreted as ASCII codes.");
          out.println("      b  -- brief - do not display register/memory address along with contents");
+         out.println("  cache <dir>  -- save assembled program images in directory <dir> and reuse them");
+         out.println("            to skip assembly when sources and settings are unchanged.");
          out.println("      d  -- display MARS debugging statements");
          out.println("     db  -- MIPS delayed branching is enabled");
          out.println("    dec  -- display memory or register contents in decimal.");
@@ -801,9 +961,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          out.println("            Segment and format are case-sensitive and possible values are:");
          out.println("            <segment> = "+segments);
          out.println("            <format> = "+formats);
+         out.println("  fs <dir>  -- file syscalls open files in memory, loaded from directory or zip file");
+         out.println("            <dir> before the run, and never read or change files on disk.");
+         out.println("  fsout <dir>  -- at the end of the run, save the files the program wrote in memory");
+         out.println("            to directory <dir>.  Without fs, in-memory files start out empty.");
          out.println("      h  -- display this help.  Use by itself with no filename.");
          out.println("    hex  -- display memory or register contents in hexadecimal (default)");
+         out.println("     hs  -- display Heap Statistics of the Malloc and Free syscalls: allocations,");
+         out.println("            live and peak bytes, and fragmentation of free memory.");
          out.println("     ic  -- display count of MIPS basic instructions 'executed'");
+         out.println("  in <file>  -- take program input from <file> instead of standard input.");
+         out.println("            Input and confirm dialog syscalls read their responses from it too,");
+         out.println("            one per line, as they do from standard input when there is no display.");
          out.println("     mc <config>  -- set memory configuration.  Argument <config> is");
          out.println("            case-sensitive and possible values are: Default for the default");
          out.println("            32-bit address space, CompactDataAtZero for a 32KB memory with");
@@ -811,12 +980,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          out.println("            memory with text segment at address 0.");
          out.println("     me  -- display MARS messages to standard err instead of standard out. ");
          out.println("            Can separate messages from program output using redirection");
+         out.println("     ms  -- Memory Syscalls - provide the MemCopy, MemSet, MemCompare and StrLen");
+         out.println("            syscalls (60-63).  Without it, their numbers are free for other syscalls.");
          out.println("     nc  -- do not display copyright notice (for cleaner redirected/piped output).");
+         out.println("     nm  -- No MIDI - MIDI syscalls play nothing (MidiOutSync still waits out the tone)");
          out.println("     np  -- use of pseudo instructions and formats not permitted");
          out.println("      p  -- Project mode - assemble all files in the same directory as given file.");
+         out.println("  rs <seed>  -- seed the streams of the random number syscalls with integer <seed>, so");
+         out.println("            streams the program does not seed itself give the same numbers every run.");
          out.println("  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.");
          out.println("     sm  -- start execution at statement with global label main, if defined");
          out.println("    smc  -- Self Modifying Code - Program can write and branch to either text or data segment");
+         out.println("     vt  -- Virtual Time - Time and Sleep syscalls use simulated time that advances with");
+         out.println("            instructions executed and time slept, so sleeping takes no real time");
          out.println("    <n>  -- where <n> is an integer maximum count of steps to simulate.");
          out.println("            If 0, negative or not specified, there is no maximum.");
          out.println(" $<reg>  -- where <reg> is number or name (e.g. 5, t3, f10) of register whose ");
@@ -50,6 +50,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private BasicStatementList basicStatementList;
       private int[] operands;
       private int numOperands;
+      private int firstOperand, secondOperand, thirdOperand; // copied from operands once assembled, for typed SimulationCode
       private Instruction instruction;
       private int textAddress;
       private int sourceLine;
@@ -144,8 +145,45 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
          this.altered = false;
          this.basicStatementList = buildBasicStatementListFromBinaryCode(binaryStatement, instr, operands, numOperands);
+         decodeOperands();
       }
-   	
+
+
+    //////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Constructor for ProgramStatement used when restoring a previously assembled
+     * program image.  The operands are the assembled (not binary-decoded) values so
+     * the statement simulates exactly as the original did, but there are no token
+     * lists to refer back to.
+     * @param sourceMIPSprogram The MIPSprogram object that contains this statement.  May be null.
+     * @param source The corresponding MIPS source statement.
+     * @param basicAssemblyStatement The statement in basic assembly format.
+     * @param instr The BasicInstruction object for this statement's operator.
+     * @param operands The assembled operand values.
+     * @param binaryStatement The 32-bit machine code.
+     * @param textAddress The Text Segment address in memory where the binary machine code for this statement
+     * is stored.
+     * @param sourceLine The source line number of this statement.
+     **/
+       public ProgramStatement(MIPSprogram sourceMIPSprogram, String source, String basicAssemblyStatement,
+                            BasicInstruction instr, int[] operands, int binaryStatement, int textAddress, int sourceLine) {
+         this.sourceMIPSprogram = sourceMIPSprogram;
+         this.source = source;
+         this.originalTokenList = this.strippedTokenList = null;
+         this.instruction = instr;
+         this.operands = new int[4];
+         this.numOperands = operands.length;
+         System.arraycopy(operands, 0, this.operands, 0, operands.length);
+         this.binaryStatement = binaryStatement;
+         this.textAddress = textAddress;
+         this.sourceLine = sourceLine;
+         this.basicAssemblyStatement = basicAssemblyStatement;
+         this.machineStatement = Binary.intToBinaryString(binaryStatement);
+         this.altered = false;
+         this.basicStatementList = buildBasicStatementListFromBinaryCode(binaryStatement, instr, this.operands, this.numOperands);
+         decodeOperands();
+      }
+
    
     /////////////////////////////////////////////////////////////////////////////
     /**
@@ -367,6 +405,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                this.insertBinaryCode(this.operands[i], Instruction.operandMask[i], errors);
          }
          this.binaryStatement = Binary.binaryStringToInt(this.machineStatement);
+         decodeOperands();
          return;
       } // buildMachineStatementFromBasicStatement(
         
@@ -554,6 +593,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public int[] getOperands() {
          return operands;
       }
+    /**
+     * Produces the number of operands actually used by this statement.  The operand
+     * array returned by getOperands() may be longer.
+     * @return number of operands.
+     **/
+       public int getNumOperands() {
+         return numOperands;
+      }
     /**
      * Produces operand value from given array position (first operand is position 0).
      * 
@@ -569,6 +616,39 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
       }
    
+    /**
+     * Produces the first operand as assembled, without going through the operand array.
+     * Used to pass operands to RTypeSimulationCode, ITypeSimulationCode and JTypeSimulationCode.
+     * @return first operand value, or 0 if the statement has none.
+     **/
+       public int getFirstOperand() {
+         return firstOperand;
+      }
+   
+    /**
+     * Produces the second operand as assembled, without going through the operand array.
+     * @return second operand value, or 0 if the statement has fewer than two.
+     **/
+       public int getSecondOperand() {
+         return secondOperand;
+      }
+   
+    /**
+     * Produces the third operand as assembled, without going through the operand array.
+     * @return third operand value, or 0 if the statement has fewer than three.
+     **/
+       public int getThirdOperand() {
+         return thirdOperand;
+      }
+   
+    // Copy the final operand values into their own fields, once the statement is assembled
+    // (a jump's target is only a word address after buildMachineStatementFromBasicStatement).
+       private void decodeOperands() {
+         firstOperand = (numOperands > 0) ? operands[0] : 0;
+         secondOperand = (numOperands > 1) ? operands[1] : 0;
+         thirdOperand = (numOperands > 2) ? operands[2] : 0;
+      }
+   
     
     //////////////////////////////////////////////////////////////////////////////
     //  Given operand (register or integer) and mask character ('f', 's', or 't'),
@@ -15,6 +15,7 @@
    import mars.mips.instructions.BasicInstruction;
    import mars.mips.instructions.ExtendedInstruction;
    import mars.mips.instructions.Instruction;
+   import mars.mips.instructions.PseudoTemplate;
    import mars.util.Binary;
    import mars.util.SystemIO;
 
@@ -325,21 +326,20 @@
                
                // ////////////////////////////////////////////////////////////////////////////
                // If we are using compact memory config and there is a compact expansion, use it
-                  ArrayList templateList;
+                  PseudoTemplate[] templateList;
                   if (compactTranslationCanBeApplied(statement)) {
-                     templateList = inst.getCompactBasicIntructionTemplateList();
+                     templateList = inst.getCompactBasicInstructionTemplates();
                   } 
                   else {
-                     templateList = inst.getBasicIntructionTemplateList();
+                     templateList = inst.getBasicInstructionTemplates();
                   }
                
                // subsequent ProgramStatement constructor needs the correct text segment address.
                   textAddress.set(statement.getAddress());
                // Will generate one basic instruction for each template in the list.
-                  for (int instrNumber = 0; instrNumber < templateList.size(); instrNumber++) {
-                     String instruction = ExtendedInstruction.makeTemplateSubstitutions(
-                        this.fileCurrentlyBeingAssembled,
-                        (String) templateList.get(instrNumber), theTokenList);
+                  for (int instrNumber = 0; instrNumber < templateList.length; instrNumber++) {
+                     String instruction = templateList[instrNumber].expand(
+                        this.fileCurrentlyBeingAssembled, theTokenList);
                   // 23 Jan 2008 by DPS. Template substitution may result in no instruction.
                   // If this is the case, skip remainder of loop iteration. This should only
                   // happen if template substitution was for "nop" instruction but delayed branching
@@ -0,0 +1,387 @@
+   package mars.assembler;
+
+   import java.io.BufferedInputStream;
+   import java.io.BufferedOutputStream;
+   import java.io.DataInputStream;
+   import java.io.DataOutputStream;
+   import java.io.File;
+   import java.io.FileInputStream;
+   import java.io.FileOutputStream;
+   import java.io.IOException;
+   import java.nio.file.Files;
+   import java.nio.file.StandardCopyOption;
+   import java.security.MessageDigest;
+   import java.security.NoSuchAlgorithmException;
+   import java.util.ArrayList;
+   import java.util.IdentityHashMap;
+   import java.util.zip.GZIPInputStream;
+   import java.util.zip.GZIPOutputStream;
+
+   import mars.ErrorList;
+   import mars.ErrorMessage;
+   import mars.Globals;
+   import mars.MIPSprogram;
+   import mars.ProcessingException;
+   import mars.ProgramStatement;
+   import mars.Settings;
+   import mars.mips.hardware.AddressErrorException;
+   import mars.mips.hardware.MemoryConfigurations;
+   import mars.mips.instructions.BasicInstruction;
+   import mars.mips.instructions.CustomAssembly;
+   import mars.mips.instructions.ExtendedInstruction;
+   import mars.mips.instructions.Instruction;
+   import mars.mips.instructions.LanguageLoader;
+   import mars.util.SystemIO;
+
+/**
+ * Persistent on-disk cache of assembled program images, used by command-line MARS
+ * to skip tokenizing and assembling sources it has already assembled.  An image
+ * holds the text segment statements along with their source line map, the data
+ * segment blocks, and the global symbol table.  Images are keyed by a hash of the
+ * source file contents plus everything else that affects assembly: delayed branching,
+ * memory configuration, whether pseudo-instructions are permitted, and the
+ * instruction set of the enabled languages.  Files named by ".include" directives are
+ * only known once the sources are tokenized, so instead of being part of the key they
+ * are listed in the image with a hash of their contents, and the image is used only
+ * if every one of them still has the same contents.
+ * <br><br>
+ * Only assemblies that produce no warnings are cached, since a warm start would not
+ * be able to report them.  An unreadable or stale image is treated as a cache miss.
+ **/
+
+   public class AssemblyCache {
+      private static final int IMAGE_MAGIC = 0x4D415253; // "MARS"
+      private static final int IMAGE_VERSION = 2;
+      private static final String IMAGE_EXTENSION = ".img";
+      private static final int DATA_SEGMENT_TABLES = 2; // user and kernel
+
+      private File directory;
+
+   /**
+    * Create a cache that stores its images in the given directory.  The directory
+    * will be created if it does not exist.
+    *
+    * @param directory directory holding the image files.
+    **/
+      public AssemblyCache(File directory) {
+         this.directory = directory;
+      }
+
+   /**
+    * Attempt to load the assembled image of the given source files directly into
+    * memory, in place of tokenizing and assembling them.  On success the global symbol
+    * table and memory reflect the image exactly as the assembler would have left them.
+    *
+    * @param leadProgram MIPSprogram that will represent the lead file.
+    * @param filenames ArrayList of the source file names to be assembled.
+    * @param leadFilename name of the lead source file.
+    * @param extendedAssemblerEnabled true if pseudo-instructions are permitted.
+    * @return ArrayList of ProgramStatement, sorted by address, or null if there is
+    *         no usable image for these sources and settings.
+    * @throws ProcessingException if a source file cannot be read.
+    **/
+      public ArrayList<ProgramStatement> load(MIPSprogram leadProgram, ArrayList<String> filenames, String leadFilename,
+       	boolean extendedAssemblerEnabled) throws ProcessingException {
+         File imageFile = new File(directory, computeKey(filenames, leadFilename, extendedAssemblerEnabled) + IMAGE_EXTENSION);
+         if (!imageFile.isFile()) {
+            return null;
+         }
+         MIPSprogram[] programs = new MIPSprogram[filenames.size()];
+         for (int i = 0; i < programs.length; i++) {
+            String filename = filenames.get(i);
+            programs[i] = (filename.equals(leadFilename)) ? leadProgram : new MIPSprogram();
+            programs[i].readSource(filename);
+         }
+         ArrayList<?> instructionList = Globals.instructionSet.getInstructionList();
+         ArrayList<ProgramStatement> machineList = new ArrayList<ProgramStatement>();
+         int[][][] dataImage = new int[DATA_SEGMENT_TABLES][][];
+         ArrayList<Symbol> symbols = new ArrayList<Symbol>();
+         DataInputStream in = null;
+         try {
+            in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(imageFile))));
+            if (in.readInt() != IMAGE_MAGIC || in.readInt() != IMAGE_VERSION) {
+               return null;
+            }
+            int includeCount = in.readInt();
+            for (int i = 0; i < includeCount; i++) {
+               String includedFilename = in.readUTF();
+               byte[] hash = new byte[in.readByte()];
+               in.readFully(hash);
+               if (!MessageDigest.isEqual(hash, hashFile(includedFilename))) {
+                  return null;
+               }
+            }
+            int statementCount = in.readInt();
+            for (int i = 0; i < statementCount; i++) {
+               int address = in.readInt();
+               int binary = in.readInt();
+               Object instr = instructionList.get(in.readInt());
+               int fileIndex = in.readInt();
+               int sourceLine = in.readInt();
+               String source = in.readUTF();
+               String basic = in.readUTF();
+               int[] operands = new int[in.readByte()];
+               for (int op = 0; op < operands.length; op++) {
+                  operands[op] = in.readInt();
+               }
+               if (!(instr instanceof BasicInstruction)) {
+                  return null;
+               }
+               machineList.add(new ProgramStatement((fileIndex < 0) ? null : programs[fileIndex],
+                  source, basic, (BasicInstruction) instr, operands, binary, address, sourceLine));
+            }
+            for (int table = 0; table < DATA_SEGMENT_TABLES; table++) {
+               int[][] blockTable = new int[in.readInt()][];
+               int blockCount = in.readInt();
+               for (int i = 0; i < blockCount; i++) {
+                  int[] block = new int[in.readInt()];
+                  blockTable[in.readInt()] = block;
+                  for (int word = 0; word < block.length; word++) {
+                     block[word] = in.readInt();
+                  }
+               }
+               dataImage[table] = blockTable;
+            }
+            int symbolCount = in.readInt();
+            for (int i = 0; i < symbolCount; i++) {
+               symbols.add(new Symbol(in.readUTF(), in.readInt(), in.readBoolean()));
+            }
+         }
+            catch (IOException e) {
+               return null;
+            }
+            catch (RuntimeException e) { // index out of range etc. from a damaged image
+               return null;
+            }
+         finally {
+               closeQuietly(in);
+            }
+
+      // Image read completely, so now put it in place just as the assembler would.
+         Globals.symbolTable.clear();
+         Globals.memory.clear();
+         ErrorList errors = new ErrorList();
+         for (int i = 0; i < machineList.size(); i++) {
+            ProgramStatement statement = machineList.get(i);
+            try {
+               Globals.memory.setStatement(statement.getAddress(), statement);
+            }
+               catch (AddressErrorException e) {
+                  errors.add(new ErrorMessage(statement.getSourceMIPSprogram(), statement.getSourceLine(), 0,
+                     "Invalid address for text segment: " + e.getAddress()));
+                  throw new ProcessingException(errors);
+               }
+         }
+         Globals.memory.setDataSegmentImage(dataImage);
+         for (int i = 0; i < symbols.size(); i++) {
+            Globals.symbolTable.addSymbol(symbols.get(i));
+         }
+         SystemIO.resetFiles();
+         return machineList;
+      }
+
+   /**
+    * Save the image of a just-completed assembly of the given source files.  Must be
+    * called before the program is simulated, since the data segment is taken from
+    * memory.  Failure to save is not an error; the next run simply assembles again.
+    *
+    * @param filenames ArrayList of the source file names that were assembled.
+    * @param leadFilename name of the lead source file.
+    * @param extendedAssemblerEnabled true if pseudo-instructions were permitted.
+    * @param machineList ArrayList of ProgramStatement produced by the assembler.
+    * @param includedFilenames ArrayList of the names of the files included by the sources.
+    * @return true if the image was saved, false otherwise.
+    **/
+      public boolean store(ArrayList<String> filenames, String leadFilename, boolean extendedAssemblerEnabled,
+       	ArrayList<ProgramStatement> machineList, ArrayList<String> includedFilenames) {
+         File tempFile = null;
+         DataOutputStream out = null;
+         try {
+            String key = computeKey(filenames, leadFilename, extendedAssemblerEnabled);
+            IdentityHashMap<Object, Integer> instructionIndex = new IdentityHashMap<Object, Integer>();
+            ArrayList<?> instructionList = Globals.instructionSet.getInstructionList();
+            for (int i = 0; i < instructionList.size(); i++) {
+               instructionIndex.put(instructionList.get(i), Integer.valueOf(i));
+            }
+            directory.mkdirs();
+            // Write to a temporary file then move it into place, so concurrent runs
+            // sharing the directory never see a partially written image.
+            tempFile = File.createTempFile(key, ".tmp", directory);
+            out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tempFile))));
+            out.writeInt(IMAGE_MAGIC);
+            out.writeInt(IMAGE_VERSION);
+            out.writeInt(includedFilenames.size());
+            for (int i = 0; i < includedFilenames.size(); i++) {
+               String includedFilename = includedFilenames.get(i);
+               byte[] hash = hashFile(includedFilename);
+               out.writeUTF(includedFilename);
+               out.writeByte(hash.length);
+               out.write(hash);
+            }
+            out.writeInt(machineList.size());
+            for (int i = 0; i < machineList.size(); i++) {
+               ProgramStatement statement = machineList.get(i);
+               Integer index = instructionIndex.get(statement.getInstruction());
+               if (index == null) {
+                  return false;
+               }
+               out.writeInt(statement.getAddress());
+               out.writeInt(statement.getBinaryStatement());
+               out.writeInt(index.intValue());
+               out.writeInt((statement.getSourceMIPSprogram() == null) ? -1
+                  : filenames.indexOf(statement.getSourceMIPSprogram().getFilename()));
+               out.writeInt(statement.getSourceLine());
+               out.writeUTF((statement.getSource() == null) ? "" : statement.getSource());
+               out.writeUTF((statement.getBasicAssemblyStatement() == null) ? "" : statement.getBasicAssemblyStatement());
+               out.writeByte(statement.getNumOperands());
+               for (int op = 0; op < statement.getNumOperands(); op++) {
+                  out.writeInt(statement.getOperands()[op]);
+               }
+            }
+            int[][][] dataImage = Globals.memory.getDataSegmentImage();
+            for (int table = 0; table < dataImage.length; table++) {
+               int[][] blockTable = dataImage[table];
+               int blockCount = 0;
+               for (int i = 0; i < blockTable.length; i++) {
+                  if (blockTable[i] != null)
+                     blockCount++;
+               }
+               out.writeInt(blockTable.length);
+               out.writeInt(blockCount);
+               for (int i = 0; i < blockTable.length; i++) {
+                  if (blockTable[i] != null) {
+                     out.writeInt(blockTable[i].length);
+                     out.writeInt(i);
+                     for (int word = 0; word < blockTable[i].length; word++) {
+                        out.writeInt(blockTable[i][word]);
+                     }
+                  }
+               }
+            }
+            ArrayList<?> symbols = Globals.symbolTable.getAllSymbols();
+            out.writeInt(symbols.size());
+            for (int i = 0; i < symbols.size(); i++) {
+               Symbol symbol = (Symbol) symbols.get(i);
+               out.writeUTF(symbol.getName());
+               out.writeInt(symbol.getAddress());
+               out.writeBoolean(symbol.getType());
+            }
+            out.close();
+            out = null;
+            Files.move(tempFile.toPath(), new File(directory, key + IMAGE_EXTENSION).toPath(),
+               StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tempFile = null;
+            return true;
+         }
+            catch (IOException e) {
+               if (Globals.debug)
+                  System.out.println("Assembled image not saved: " + e);
+               return false;
+            }
+            catch (ProcessingException e) {
+               return false;
+            }
+         finally {
+               closeQuietly(out);
+               if (tempFile != null)
+                  tempFile.delete();
+            }
+      }
+
+   /**
+    * Compute the cache key for assembling the given source files under the current
+    * settings and instruction set.
+    *
+    * @param filenames ArrayList of the source file names.
+    * @param leadFilename name of the lead source file.
+    * @param extendedAssemblerEnabled true if pseudo-instructions are permitted.
+    * @return hexadecimal String hash that names the image file.
+    * @throws ProcessingException if a source file cannot be read.
+    **/
+      public String computeKey(ArrayList<String> filenames, String leadFilename, boolean extendedAssemblerEnabled)
+       	throws ProcessingException {
+         MessageDigest digest = newDigest();
+         updateDigest(digest, "version " + IMAGE_VERSION);
+         for (int i = 0; i < filenames.size(); i++) {
+            String filename = filenames.get(i);
+            updateDigest(digest, filename);
+            try {
+               byte[] contents = Files.readAllBytes(new File(filename).toPath());
+               updateDigest(digest, Integer.toString(contents.length));
+               digest.update(contents);
+            }
+               catch (IOException e) {
+                  ErrorList errors = new ErrorList();
+                  errors.add(new ErrorMessage((MIPSprogram) null, 0, 0, e.toString()));
+                  throw new ProcessingException(errors);
+               }
+         }
+         updateDigest(digest, "lead " + leadFilename);
+         updateDigest(digest, "pseudo " + extendedAssemblerEnabled);
+         updateDigest(digest, "delayed branching " + Globals.getSettings().getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED));
+         updateDigest(digest, "memory configuration "
+            + MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier());
+         for (int i = 0; i < LanguageLoader.assemblyList.size(); i++) {
+            CustomAssembly language = LanguageLoader.assemblyList.get(i);
+            if (language.enabled) {
+               updateDigest(digest, "language " + LanguageLoader.getLanguageClassName(language) + " " + language.getName());
+            }
+         }
+         // The encodings and pseudo-instruction templates of the enabled languages stand in
+         // for their versions: any change that could alter the image changes the key.
+         ArrayList<?> instructionList = Globals.instructionSet.getInstructionList();
+         for (int i = 0; i < instructionList.size(); i++) {
+            Instruction instr = (Instruction) instructionList.get(i);
+            updateDigest(digest, instr.getExampleFormat());
+            if (instr instanceof BasicInstruction) {
+               updateDigest(digest, ((BasicInstruction) instr).getOperationMask());
+            }
+            else if (instr instanceof ExtendedInstruction) {
+               ExtendedInstruction ext = (ExtendedInstruction) instr;
+               updateDigest(digest, String.valueOf(ext.getBasicIntructionTemplateList()));
+               updateDigest(digest, String.valueOf(ext.getCompactBasicIntructionTemplateList()));
+            }
+         }
+         byte[] hash = digest.digest();
+         StringBuffer key = new StringBuffer();
+         for (int i = 0; i < hash.length; i++) {
+            key.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+            key.append(Character.forDigit(hash[i] & 0xF, 16));
+         }
+         return key.toString();
+      }
+
+      private static MessageDigest newDigest() {
+         try {
+            return MessageDigest.getInstance("SHA-256");
+         }
+            catch (NoSuchAlgorithmException e) { // every Java platform is required to have SHA-256
+               throw new IllegalStateException(e.toString());
+            }
+      }
+
+   // Hash of a file's contents, for telling whether an included file has changed.
+      private static byte[] hashFile(String filename) throws IOException {
+         return newDigest().digest(Files.readAllBytes(new File(filename).toPath()));
+      }
+
+   // Each item is followed by a separator so that adjacent items cannot run together.
+      private static void updateDigest(MessageDigest digest, String item) {
+         try {
+            digest.update(item.getBytes("UTF-8"));
+         }
+            catch (java.io.UnsupportedEncodingException e) { // UTF-8 is always supported
+            }
+         digest.update((byte) 0);
+      }
+
+      private static void closeQuietly(java.io.Closeable stream) {
+         if (stream != null) {
+            try {
+               stream.close();
+            }
+               catch (IOException e) {
+               }
+         }
+      }
+   }
@@ -1,6 +1,8 @@
    package mars.assembler;
 
    import java.util.ArrayList;
+   import java.util.HashMap;
+   import java.util.Locale;
 
 /*
 Copyright (c) 2003-2012,  Pete Sanderson and Kenneth Vollmar
@@ -43,6 +45,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     public final class Directives {
    
       private static ArrayList directiveList = new ArrayList();
+      private static HashMap directiveIndex = null; // lower-case name to Directives, built on first match
       public static final Directives DATA   = new Directives(".data", "Subsequent items stored in Data segment at next available address");
       public static final Directives TEXT   = new Directives(".text", "Subsequent items (instructions) stored in Text segment at next available address");
       public static final Directives WORD   = new Directives(".word", "Store the listed value(s) as 32 bit words on word boundary");
@@ -92,14 +95,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     **/
     
        public static Directives matchDirective(String str) {
-         Directives match;
-         for (int i=0; i<directiveList.size(); i++) {
-            match = (Directives) directiveList.get(i);
-            if (str.equalsIgnoreCase(match.descriptor)) {
-               return match;
+         if (directiveIndex == null) {
+            HashMap index = new HashMap();
+            for (int i=directiveList.size()-1; i>=0; i--) { // first in list wins
+               Directives directive = (Directives) directiveList.get(i);
+               index.put(directive.descriptor.toLowerCase(Locale.ENGLISH), directive);
             }
+            directiveIndex = index;
          }
-         return null;
+         return (Directives) directiveIndex.get(str.toLowerCase(Locale.ENGLISH));
       }
    
    
@@ -0,0 +1,76 @@
+   package mars.assembler;
+   import mars.*;
+   import java.util.*;
+   import java.io.*;
+
+/**
+ * Holds the source of files named in ".include" directives so that a file included
+ * many times during one assembly, such as a shared macro library included by every
+ * source file of a project, is read from disk only once.  Entries are keyed by
+ * canonical path and are re-read if the file's modification time or length changes.
+ * One cache is shared by all source files prepared for the same assembly.
+ *
+ * @see Tokenizer
+ **/
+
+    public class IncludeFileCache {
+
+      private HashMap<String,CachedFile> files;
+
+   /**
+    * Creates a new empty cache.
+    */
+       public IncludeFileCache() {
+         files = new HashMap<String,CachedFile>();
+      }
+
+   /**
+    * Produces a MIPSprogram holding the source of the given include file, reading
+    * the file only if it is not already cached or has changed since it was cached.
+    * The returned object is shared by every inclusion of the file and must be
+    * treated as read-only.
+    *
+    * @param filename name of the file to include.
+    * @return MIPSprogram whose source list holds the file's lines.
+    * @throws ProcessingException if the file cannot be read.
+    */
+       public MIPSprogram getProgram(String filename) throws ProcessingException {
+         File file = new File(filename);
+         String key;
+         try {
+            key = file.getCanonicalPath();
+         }
+             catch (IOException e) {
+               key = file.getAbsolutePath();
+            }
+         long lastModified = file.lastModified();
+         long length = file.length();
+         CachedFile cached = files.get(key);
+         if (cached == null || cached.lastModified != lastModified || cached.length != length) {
+            MIPSprogram program = new MIPSprogram();
+            program.readSource(filename);
+            cached = new CachedFile(program, lastModified, length);
+            files.put(key, cached);
+         }
+         return cached.program;
+      }
+   
+   /**
+    * @return the canonical paths of the files included so far, in no particular order.
+    */
+       public ArrayList<String> getFilenames() {
+         return new ArrayList<String>(files.keySet());
+      }
+
+      private static class CachedFile {
+         private MIPSprogram program;
+         private long lastModified;
+         private long length;
+
+          private CachedFile(MIPSprogram program, long lastModified, long length) {
+            this.program = program;
+            this.lastModified = lastModified;
+            this.length = length;
+         }
+      }
+   }
@@ -56,6 +56,11 @@ public class Macro {
  * arguments like <code>%arg</code> will be substituted by macro expansion
  */
    private ArrayList<String> args;
+/**
+ * body lines between <code>.macro</code> and <code>.end_macro</code>, prepared
+ * for substitution by {@link #readyForCommit()}
+ */
+   private BodyLine[] body;
 
    public Macro() {
       name = "";
@@ -156,37 +161,113 @@ public class Macro {
  */
 
    public String getSubstitutedLine(int line, TokenList args, long counter, ErrorList errors) {
+      int index = line - fromLine - 1;
+      BodyLine bodyLine = (body != null && index >= 0 && index < body.length)
+         ? body[index] : compileLine(line);
+      for (int i = 0; i < bodyLine.unknownParameters.length; i++) {
+         Token token = bodyLine.unknownParameters[i];
+         errors.add(new ErrorMessage(program, token.getSourceLine(),
+            token.getStartPos(), "Unknown macro parameter"));
+      }
+      if (bodyLine.kind.length == 1 && bodyLine.kind[0] == BodyLine.TEXT) {
+         return bodyLine.text[0];
+      }
+      StringBuffer s = new StringBuffer();
+      for (int i = 0; i < bodyLine.kind.length; i++) {
+         switch (bodyLine.kind[i]) {
+            case BodyLine.TEXT :
+               s.append(bodyLine.text[i]);
+               break;
+            case BodyLine.ARGUMENT :
+               s.append(args.get(bodyLine.argument[i] + 1).toString());
+               break;
+            case BodyLine.LABEL :
+               s.append(bodyLine.text[i]).append("_M").append(counter);
+               break;
+         }
+      }
+      return s.toString();
+   }
+
+/**
+ * Splits a line of the macro body into literal text and the places where a
+ * macro argument or a unique label suffix is substituted on expansion.  Tokens are
+ * matched to the source text as {@link #replaceToken} does: last token first, each at
+ * the first unsubstituted occurrence of its text.
+ * @param line source line number in macro definition
+ * @return the line, ready for substitution
+ */
+   private BodyLine compileLine(int line) {
       TokenList tokens = (TokenList) program.getTokenList().get(line - 1);
       String s = program.getSourceLine(line);
-   
+      ArrayList<Integer> kinds = new ArrayList<Integer>();
+      ArrayList<Integer> arguments = new ArrayList<Integer>();
+      ArrayList<String> values = new ArrayList<String>();
+      ArrayList<Token> unknown = new ArrayList<Token>();
+   // Each substitution is marked in the source by a single private-use character,
+   // so that tokens matched later cannot match text that has already been substituted.
       for (int i = tokens.size() - 1; i >= 0; i--) {
          Token token = tokens.get(i);
+         int kind;
+         int argument = -1;
          if (tokenIsMacroParameter(token.getValue(), true)) {
-            int repl = -1;
             for (int j = 0; j < this.args.size(); j++) {
                if (this.args.get(j).equals(token.getValue())) {
-                  repl = j;
+                  argument = j;
                   break;
                }
             }
-            String substitute = token.getValue();
-            if (repl != -1)
-               substitute = args.get(repl + 1).toString();
-            else {
-               errors.add(new ErrorMessage(program, token.getSourceLine(),
-                  token.getStartPos(), "Unknown macro parameter"));
-            } 
-            s = replaceToken(s, token, substitute);
+            if (argument == -1) {
+               unknown.add(token);
+               continue; // token is left as is
+            }
+            kind = BodyLine.ARGUMENT;
          } 
-         else if (tokenIsMacroLabel(token.getValue())){
-            String substitute = token.getValue()+"_M"+counter;
-            s=replaceToken(s, token, substitute); 
+         else if (tokenIsMacroLabel(token.getValue())) {
+            kind = BodyLine.LABEL;
+         }
+         else {
+            continue;
          }
+         if (s.indexOf(token.getValue()) >= 0) {
+            s = replaceToken(s, token, String.valueOf((char) (BodyLine.MARK + values.size())));
+            kinds.add(kind);
+            arguments.add(argument);
+            values.add(token.getValue());
+         }
+      }
+      BodyLine bodyLine = new BodyLine();
+      ArrayList<Integer> lineKinds = new ArrayList<Integer>();
+      ArrayList<Integer> lineArguments = new ArrayList<Integer>();
+      ArrayList<String> lineText = new ArrayList<String>();
+      int start = 0;
+      for (int i = 0; i <= s.length(); i++) {
+         int mark = (i < s.length()) ? s.charAt(i) - BodyLine.MARK : -1;
+         if (i == s.length() || (mark >= 0 && mark < values.size())) {
+            if (i > start || lineKinds.isEmpty() && i == s.length()) {
+               lineKinds.add(BodyLine.TEXT);
+               lineArguments.add(-1);
+               lineText.add(s.substring(start, i));
+            }
+            if (i < s.length()) {
+               lineKinds.add(kinds.get(mark));
+               lineArguments.add(arguments.get(mark));
+               lineText.add(values.get(mark));
+            }
+            start = i + 1;
+         }
+      }
+      bodyLine.kind = new int[lineKinds.size()];
+      bodyLine.argument = new int[lineKinds.size()];
+      bodyLine.text = lineText.toArray(new String[lineText.size()]);
+      for (int i = 0; i < bodyLine.kind.length; i++) {
+         bodyLine.kind[i] = lineKinds.get(i);
+         bodyLine.argument[i] = lineArguments.get(i);
       }
-      return s;
+      bodyLine.unknownParameters = unknown.toArray(new Token[unknown.size()]);
+      return bodyLine;
    }
 
-
 /**
  * returns true if <code>value</code> is name of a label defined in this macro's body.
  * @param value
@@ -247,6 +328,24 @@ public class Macro {
  */
    public void readyForCommit() {
       Collections.sort(labels);
+      body = new BodyLine[Math.max(0, toLine - fromLine - 1)];
+      for (int i = 0; i < body.length; i++) {
+         body[i] = compileLine(fromLine + 1 + i);
+      }
+   }
+
+/**
+ * One line of a macro body split into literal text, argument slots and labels.
+ */
+   private static class BodyLine {
+      private static final int TEXT = 0;      // text[i] copied as is
+      private static final int ARGUMENT = 1;  // replaced by caller's argument[i]
+      private static final int LABEL = 2;     // label text[i] made unique with "_M" + counter
+      private static final char MARK = '\uE000';
+      private int[] kind;
+      private int[] argument;
+      private String[] text;
+      private Token[] unknownParameters;
    }
 
 
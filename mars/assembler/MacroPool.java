@@ -1,6 +1,8 @@
    package mars.assembler;
 
    import java.util.ArrayList;
+   import java.util.HashMap;
+   import java.util.HashSet;
    import java.util.Stack;
 
    import mars.ErrorList;
@@ -52,6 +54,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     * List of macros defined by now
     */
       private ArrayList<Macro> macroList;
+   /**
+    * Latest definition of each macro, keyed by name and argument count
+    * @see #indexKey(String, int)
+    */
+      private HashMap<String, Macro> macroIndex;
+   /**
+    * Names of macros defined by now, regardless of argument count
+    */
+      private HashSet<String> macroNames;
    /**
     * @see #BeginMacro(String, int)
     */
@@ -71,6 +82,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public MacroPool(MIPSprogram mipsProgram) {
          this.program = mipsProgram;
          macroList = new ArrayList<Macro>();
+         macroIndex = new HashMap<String, Macro>();
+         macroNames = new HashSet<String>();
          callStack=new ArrayList<Integer>();
          callStackOrigLines=new ArrayList<Integer>();
          current = null;
@@ -110,6 +123,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          current.setOriginalToLine(endToken.getOriginalSourceLine());
          current.readyForCommit();
          macroList.add(current);
+         String key = indexKey(current.getName(), current.getArgs().size());
+         Macro previous = macroIndex.get(key);
+         if (previous == null || previous.getFromLine() < current.getFromLine())
+            macroIndex.put(key, current);
+         macroNames.add(current.getName());
          current = null;
       }
    	   		
@@ -124,16 +142,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public Macro getMatchingMacro(TokenList tokens, int callerLine) {
          if (tokens.size() < 1)
             return null;
-         Macro ret = null;
-         Token firstToken = tokens.get(0);
-         for (Macro macro : macroList) {
-            if (macro.getName().equals(firstToken.getValue())
-            	&& macro.getArgs().size() + 1 == tokens.size()
-            	//&& macro.getToLine() < callerLine  // condition removed; doesn't work nicely in conjunction with .include, and does not seem necessary.  DPS 8-MAR-2013
-            	&& (ret == null || ret.getFromLine() < macro.getFromLine()))
-               ret = macro;
-         }
-         return ret;
+         // The latest definition wins.  callerLine is not used: requiring macro.getToLine() < callerLine
+         // doesn't work nicely in conjunction with .include, and does not seem necessary.  DPS 8-MAR-2013
+         return macroIndex.get(indexKey(tokens.get(0).getValue(), tokens.size() - 1));
       }
    
    /**
@@ -142,13 +153,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     *         by now, not concerning arguments count.
     */
        public boolean matchesAnyMacroName(String value) {
-         for (Macro macro : macroList)
-            if (macro.getName().equals(value))
-               return true;
-         return false;
+         return macroNames.contains(value);
       }
    
    
+   // Key for macroIndex.  A space cannot occur in a macro name.
+       private static String indexKey(String name, int argCount) {
+         return name + " " + argCount;
+      }
+   
        public Macro getCurrent() {
          return current;
       }
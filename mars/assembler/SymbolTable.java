@@ -73,7 +73,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             if (Globals.debug) System.out.println("The symbol " + label + " with address " + address + " has been added to the "+this.filename+" symbol table.");
          }
       }
-   
+
+   	/**
+   	  *  Adds an existing Symbol object into the array of Symbols, such as one restored
+   	  *  from an assembled program image.  There is no check for duplicate labels.
+   	  *   @param symbol The Symbol to add.
+   	  **/
+
+       public void addSymbol(Symbol symbol) {
+         table.add(symbol);
+      }
+
    
    	/**
    	  *   Removes a symbol from the Symbol table.  If not found, it does nothing.
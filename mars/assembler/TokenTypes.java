@@ -71,6 +71,29 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
       private String descriptor;
    
+   // Character classes of ASCII characters, used to rule out token types without
+   // trying them.  A number can only start with a digit, sign or '.', and an integer
+   // cannot contain '.'.  Tokens with characters above ASCII get the full tests.
+      private static final byte IDENTIFIER_START = 1;  // letter _ . $
+      private static final byte IDENTIFIER_PART  = 2;  // letter digit _ . $
+      private static final byte NUMBER_START     = 4;  // digit + - .
+      private static final byte DIGIT            = 8;
+      private static final byte[] charClass = new byte[128];
+      static {
+         for (char c = 'a'; c <= 'z'; c++) {
+            charClass[c] = IDENTIFIER_START | IDENTIFIER_PART;
+            charClass[Character.toUpperCase(c)] = IDENTIFIER_START | IDENTIFIER_PART;
+         }
+         for (char c = '0'; c <= '9'; c++) {
+            charClass[c] = IDENTIFIER_PART | NUMBER_START | DIGIT;
+         }
+         charClass['_'] = IDENTIFIER_START | IDENTIFIER_PART;
+         charClass['$'] = IDENTIFIER_START | IDENTIFIER_PART;
+         charClass['.'] = IDENTIFIER_START | IDENTIFIER_PART | NUMBER_START;
+         charClass['+'] = NUMBER_START;
+         charClass['-'] = NUMBER_START;
+      }
+   
        private TokenTypes() {
       // private ctor assures no objects can be created other than those above.
          descriptor = "generic";
@@ -150,9 +173,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        // Classify based on # bits needed to represent in binary
        // This is needed because most immediate operands limited to 16 bits
        // others limited to 5 bits unsigned (shift amounts) others 32 bits.
+         char first = value.charAt(0);
+         boolean numberStart = (first >= 128) || (charClass[first] & NUMBER_START) != 0; // decode() takes any Unicode digit
+         if (numberStart && first != '.' && value.indexOf('.') < 0) {
          try {
 
-            int i = Binary.stringToInt(value);   // KENV 1/6/05
+            int i = parseInteger(value);
 				
 		/***************************************************************************
 		 *  MODIFICATION AND COMMENT, DPS 3-July-2008
@@ -209,9 +235,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             {
             // NO ACTION -- exception suppressed
             }
+         }
       
        // See if it is a real (fixed or floating point) number.  Note that parseDouble()
        // accepts integer values but if it were an integer literal we wouldn't get this far.
+       // Besides numbers starting with a digit, sign or '.', it also accepts NaN and Infinity.
+         if ((numberStart && (first != '.' || (value.length() > 1 && isDigit(value.charAt(1)))))
+              || value.equals("NaN") || value.equals("Infinity")) {
          try {
             Double.parseDouble(value);
             return TokenTypes.REAL_NUMBER;
@@ -220,6 +250,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             {
             // NO ACTION -- exception suppressed
             }
+         }
       	 
        // See if it is an instruction operator
          if (Globals.instructionSet.matchOperator(value) != null)
@@ -279,6 +310,22 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 		 // DPS 14-Jul-2008: added '$' as valid symbol.  Permits labels to include $.
 		 //                  MIPS-target GCC will produce labels that start with $. 
        public static boolean isValidIdentifier(String value) {
+       // ASCII-only values, nearly all of them, are decided by the character class table.
+         char c = value.charAt(0);
+         if (c < 128 && (charClass[c] & IDENTIFIER_START) == 0) {
+            return false;
+         }
+         for (int i = 1; i < value.length(); i++) {
+            c = value.charAt(i);
+            if (c >= 128 || (charClass[c] & IDENTIFIER_PART) == 0) {
+               return c >= 128 && isValidIdentifierChars(value);
+            }
+         }
+         return value.charAt(0) < 128 || isValidIdentifierChars(value);
+      }
+   
+   // The test of isValidIdentifier() for values that contain non-ASCII characters.
+       private static boolean isValidIdentifierChars(String value) {
          boolean result = 
                  (Character.isLetter(value.charAt(0)) || value.charAt(0)=='_' || value.charAt(0)=='.' || value.charAt(0)=='$');
          int index = 1;
@@ -290,4 +337,28 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return result;
       }
    
+      
+   // Same result as Binary.stringToInt(), but decimal values of up to 9 digits,
+   // the common case, are converted directly.
+       private static int parseInteger(String value) throws NumberFormatException {
+         int length = value.length();
+         int start = (value.charAt(0) == '-') ? 1 : 0;
+         if (length - start < 1 || length - start > 9 || (value.charAt(start) == '0' && length - start > 1)) {
+            return Binary.stringToInt(value);
+         }
+         int result = 0;
+         for (int i = start; i < length; i++) {
+            char c = value.charAt(i);
+            if (!isDigit(c)) {
+               return Binary.stringToInt(value);
+            }
+            result = result * 10 + (c - '0');
+         }
+         return (start == 1) ? -result : result;
+      }
+   
+       private static boolean isDigit(char c) {
+         return c < 128 && (charClass[c] & DIGIT) != 0;
+      }
+   
    }
@@ -52,6 +52,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private ErrorList errors;
       private MIPSprogram sourceMIPSprogram;
       private HashMap<String,String> equivalents; // DPS 11-July-2012
+      private IncludeFileCache includeCache;
    	// The 8 escaped characters are: single quote, double quote, backslash, newline (linefeed),
    	// tab, backspace, return, form feed.  The characters and their corresponding decimal codes:
       private static final String escapedCharacters = "'\"\\ntbrf0";
@@ -84,7 +85,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     **/
    
        public ArrayList tokenize(MIPSprogram p) throws ProcessingException {
+         return tokenize(p, new IncludeFileCache());
+      }
+   
+   /**
+    * Will tokenize a complete MIPS program, taking the contents of any included
+    * files from the given cache.  Share one cache among all the files of an assembly
+    * so that a file included by several of them is read only once.
+    *
+    * @param p The MIPSprogram to be tokenized.
+    * @param includeCache The IncludeFileCache holding files already included.
+    * @return An ArrayList representing the tokenized program.  Each list member is a TokenList
+    * that represents a tokenized source statement from the MIPS program.
+    **/
+   
+       public ArrayList tokenize(MIPSprogram p, IncludeFileCache includeCache) throws ProcessingException {
          sourceMIPSprogram = p;
+         this.includeCache = includeCache;
          equivalents = new HashMap<String,String>(); // DPS 11-July-2012
          ArrayList tokenList = new ArrayList();
          //ArrayList source = p.getSourceList();
@@ -120,12 +137,22 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    // files that themselves have .include.  Plus it will detect and report recursive
    // includes both direct and indirect.
    // DPS 11-Jan-2013
+   // Only lines that contain the text ".include" are tokenized here, since every line
+   // is tokenized afterward anyway.  Included files come from the include cache.
        private ArrayList<SourceLine> processIncludes(MIPSprogram program, Map<String,String> inclFiles) throws ProcessingException {
          ArrayList source = program.getSourceList();
          ArrayList<SourceLine> result = new ArrayList<SourceLine>(source.size());
          for (int i=0; i<source.size(); i++) {
             String line = (String) source.get(i);
+            if (!mayContainInclude(line)) {
+               result.add(new SourceLine(line, program, i+1));
+               continue;
+            }
+            // Lexical errors will be reported when the line is tokenized for real.
+            ErrorList saveList = this.errors;
+            this.errors = new ErrorList();
             TokenList tl = tokenizeLine(program, i+1, line, false);
+            this.errors = saveList;
             boolean hasInclude = false;
             for (int ii=0; ii<tl.size(); ii++) {
                if (tl.get(ii).getValue().equalsIgnoreCase(Directives.INCLUDE.getName()) 
@@ -145,9 +172,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      throw new ProcessingException(errors);
                   }
                   inclFiles.put(filename, filename);
-                  MIPSprogram incl = new MIPSprogram();
+                  MIPSprogram incl;
                   try {
-                     incl.readSource(filename);
+                     incl = includeCache.getProgram(filename);
                   }
                       catch (ProcessingException p) {
                         Token t = tl.get(ii+1);
@@ -167,6 +194,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
          return result;
       }
+   
+   // Quick test for whether a source line could possibly hold a ".include" directive,
+   // without tokenizing it.  False positives (e.g. the word in a comment) are fine.
+       private static boolean mayContainInclude(String line) {
+         String directive = Directives.INCLUDE.getName();
+         int last = line.length() - directive.length();
+         for (int pos = line.indexOf('.'); pos >= 0 && pos <= last; pos = line.indexOf('.', pos+1)) {
+            if (line.regionMatches(true, pos, directive, 0, directive.length())) {
+               return true;
+            }
+         }
+         return false;
+      }
    	
    /**
     * Used only to create a token list for the example provided with each instruction
@@ -41,10 +41,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     
     public class DumpFormatLoader {
       
-      private static final String CLASS_PREFIX = "mars.mips.dump.";
       private static final String DUMP_DIRECTORY_PATH = "mars/mips/dump";
-      private static final String SYSCALL_INTERFACE = "DumpFormat.class";
-      private static final String CLASS_EXTENSION = "class";
       
       private static ArrayList formatList = null;
    	
@@ -59,29 +56,35 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          // The list will be populated only the first time this method is called.
          if (formatList == null) {
             formatList = new ArrayList();
-         // grab all class files in the dump directory
-            ArrayList candidates = FilenameFinder.getFilenameList(this.getClass( ).getClassLoader(),
-                                              DUMP_DIRECTORY_PATH, CLASS_EXTENSION);
-            for( int i = 0; i < candidates.size(); i++) {
-               String file = (String) candidates.get(i);
+         // grab all DumpFormat classes in the dump directory, as found by the plugin registry
+            ArrayList formatClasses = findDumpFormats();
+            for( int i = 0; i < formatClasses.size(); i++) {
+               String formatClassName = ((String[]) formatClasses.get(i))[0];
                try {
-                  // grab the class, make sure it implements DumpFormat, instantiate, add to list
-                  String formatClassName = CLASS_PREFIX+file.substring(0, file.indexOf(CLASS_EXTENSION)-1);
-                  Class clas = Class.forName(formatClassName);
-                  if (DumpFormat.class.isAssignableFrom(clas) && 
-                      !Modifier.isAbstract(clas.getModifiers()) &&
-                  	 !Modifier.isInterface(clas.getModifiers())   ) {
-                     formatList.add(clas.newInstance());
-                  }
+                  formatList.add(Class.forName(formatClassName).newInstance());
                } 
                    catch (Exception e) {
-                     System.out.println("Error instantiating DumpFormat from file " + file + ": "+e);
+                     System.out.println("Error instantiating DumpFormat " + formatClassName + ": "+e);
                   }
             }
          }
          return formatList;
       }
    	
+     /**
+      *  Tells whether there are any dump formats, without loading them.  Used to
+      *  decide whether to enable the Dump Memory menu item.
+      *
+      *  @return true if at least one dump format was found.
+      */
+       public boolean hasDumpFormats() {
+         return (formatList != null) ? formatList.size() > 0 : findDumpFormats().size() > 0;
+      }
+   	
+       private ArrayList findDumpFormats() {
+         return PluginRegistry.getPluginClasses(this.getClass().getClassLoader(), DUMP_DIRECTORY_PATH, DumpFormat.class, null);
+      }
+   	
        public static DumpFormat findDumpFormatGivenCommandDescriptor(ArrayList formatList, String formatCommandDescriptor) {
          DumpFormat match = null;
          for (int i=0; i<formatList.size(); i++) {
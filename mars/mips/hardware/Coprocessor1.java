@@ -384,7 +384,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
        public static Register getRegister(String rName) {
          Register reg = null;
-         if (rName.charAt(0) == '$' && rName.length() > 1 && rName.charAt(1) == 'f') {
+         if (rName.charAt(0) == '$' && rName.length() > 1 && rName.charAt(1) == 'f'
+              && (rName.length() == 2 || Binary.mayStartNumber(rName.charAt(2)))) {  // $fp is not an FP register
             try {
                    // check for register number 0-31.
                reg = registers[Binary.stringToInt(rName.substring(2))];    // KENV 1/6/05
@@ -318,7 +318,41 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          heapAddress = newHeapAddress;
          return result;
       }
-   
+
+
+   	/**
+   	 * Produces a copy of the user and kernel data segment block tables.  Used to save
+   	 * an assembled program image, so blocks never written to are left null.  No
+   	 * observers are notified.
+   	 *
+   	 * @return array of two block tables, user data segment first then kernel data segment.
+   	 */
+       public synchronized int[][][] getDataSegmentImage() {
+         return new int[][][] { copyBlockTable(dataBlockTable), copyBlockTable(kernelDataBlockTable) };
+      }
+
+   	/**
+   	 * Replaces the user and kernel data segment block tables with a copy of the given
+   	 * image, as produced by getDataSegmentImage().  Used to restore an assembled program
+   	 * image in place of assembling it.  No observers are notified.
+   	 *
+   	 * @param image array of two block tables, user data segment first then kernel data segment.
+   	 */
+       public synchronized void setDataSegmentImage(int[][][] image) {
+         dataBlockTable = copyBlockTable(image[0]);
+         kernelDataBlockTable = copyBlockTable(image[1]);
+      }
+
+       private int[][] copyBlockTable(int[][] blockTable) {
+         int[][] copy = new int[BLOCK_TABLE_LENGTH][];
+         for (int block = 0; block < BLOCK_TABLE_LENGTH && block < blockTable.length; block++) {
+            if (blockTable[block] != null) {
+               copy[block] = (int[]) blockTable[block].clone();
+            }
+         }
+         return copy;
+      }
+
    
      /**
       * Set byte order to either LITTLE_ENDIAN or BIG_ENDIAN.  Default is LITTLE_ENDIAN.
@@ -356,6 +390,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     
    // Allocates blocks if necessary.
        public int set(int address, int value, int length) throws AddressErrorException {
+         return set(address, value, length, true);
+      }
+   
+   	// Does the real work, but includes option to NOT notify observers.
+       private int set(int address, int value, int length, boolean notify) throws AddressErrorException {
          int oldValue = 0;
          if (Globals.debug) System.out.println("memory["+address+"] set to "+value+"("+length+" bytes)");
          int relativeByteAddress;
@@ -408,7 +447,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             throw new AddressErrorException("address out of range ",
                Exceptions.ADDRESS_EXCEPTION_STORE, address);
          }
-         notifyAnyObservers(AccessNotice.WRITE, address, length, value);
+         if (notify) notifyAnyObservers(AccessNotice.WRITE, address, length, value);
          return oldValue;
       }
    	
@@ -584,6 +623,61 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             storeProgramStatement(address, statement, kernelTextBaseAddress, kernelTextBlockTable);
          }
       }
+   
+    ///////////////////////////////////////////////////////////////////////////////////////
+    /** 
+     *  Starting at the given address, write bytes from an array, without regard to word
+     *  boundaries.  Bytes in the data and kernel data segments are copied a word at a time;
+     *  elsewhere they are written one by one as setByte() would.  Observers are notified
+     *  once, of a write of the whole range.
+     * 
+     * @param address Starting address of Memory bytes to be set.
+     * @param buffer Array holding the bytes to be written.
+     * @param offset Index in the array of the first byte to be written.
+     * @param length Number of bytes to be written.
+     * @throws AddressErrorException If any of the bytes is outside the writable address range.
+     *  Bytes before it have already been written.
+     **/
+       public void writeBytes(int address, byte[] buffer, int offset, int length) throws AddressErrorException {
+         if (length <= 0) {
+            return;
+         }
+         if (Globals.debug) System.out.println("memory["+address+"] set to "+length+" bytes");
+         boolean backStepping = Globals.getSettings().getBackSteppingEnabled() && Globals.program != null;
+         byte[] oldBytes = backStepping ? new byte[length] : null;
+         int last = address + length - 1;
+         int written = length;
+         AddressErrorException error = null;
+         if (last >= address && inDataSegment(address) && inDataSegment(last)) {
+            copyBytesInTable(dataBlockTable, address - dataSegmentBaseAddress, buffer, offset, length, oldBytes, STORE);
+         } 
+         else if (last >= address && inKernelDataSegment(address) && inKernelDataSegment(last)) {
+            copyBytesInTable(kernelDataBlockTable, address - kernelDataBaseAddress, buffer, offset, length, oldBytes, STORE);
+         } 
+         else {
+            for (written = 0; written < length; written++) {
+               try {
+                  int oldValue = set(address + written, buffer[offset + written], 1, false);
+                  if (backStepping) oldBytes[written] = (byte) oldValue;
+               } 
+                   catch (AddressErrorException e) {
+                     error = e;
+                     break;
+                  }
+            }
+         }
+         if (backStepping) {
+            for (int i = 0; i < written; i++) {
+               Globals.program.getBackStepper().addMemoryRestoreByte(address + i, oldBytes[i] & 0xFF);
+            }
+         }
+         if (written > 0) {
+            notifyAnyObservers(AccessNotice.WRITE, address, written, 0);
+         }
+         if (error != null) {
+            throw error;
+         }
+      }
    	
    
    
@@ -876,6 +970,159 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return get(address, 1);
       }
    
+    ///////////////////////////////////////////////////////////////////////////////////////
+    /** 
+     *  Starting at the given address, read bytes into an array, without regard to word
+     *  boundaries.  Bytes in the data and kernel data segments are copied a word at a time;
+     *  elsewhere they are read one by one as getByte() would.  Observers are notified
+     *  once, of a read of the whole range.
+     * 
+     * @param address Starting address of Memory bytes to be read.
+     * @param buffer Array to hold the bytes read.
+     * @param offset Index in the array for the first byte read.
+     * @param length Number of bytes to be read.
+     * @throws AddressErrorException If any of the bytes is outside the readable address range.
+     **/
+       public void readBytes(int address, byte[] buffer, int offset, int length) throws AddressErrorException {
+         if (length <= 0) {
+            return;
+         }
+         int last = address + length - 1;
+         if (last >= address && inDataSegment(address) && inDataSegment(last)) {
+            copyBytesInTable(dataBlockTable, address - dataSegmentBaseAddress, buffer, offset, length, null, FETCH);
+         } 
+         else if (last >= address && inKernelDataSegment(address) && inKernelDataSegment(last)) {
+            copyBytesInTable(kernelDataBlockTable, address - kernelDataBaseAddress, buffer, offset, length, null, FETCH);
+         } 
+         else {
+            for (int i = 0; i < length; i++) {
+               buffer[offset + i] = (byte) get(address + i, 1, false);
+            }
+         }
+         notifyAnyObservers(AccessNotice.READ, address, length, 0);
+      }
+   
+    ///////////////////////////////////////////////////////////////////////////////////////
+    /** 
+     *  Reads the null-terminated string starting at the given address, one character
+     *  per byte.  In the data and kernel data segments the string is scanned a word at
+     *  a time.  Observers are notified once, of a read of the string and its terminator.
+     * 
+     * @param address Address of the first byte of the string.
+     * @param maxLength Greatest number of characters to read if no null byte is found first.
+     * @return The string, without its terminating null byte.
+     * @throws AddressErrorException If the string runs outside the readable address range
+     *  before it ends.
+     **/
+       public String readCString(int address, int maxLength) throws AddressErrorException {
+         StringBuilder string = new StringBuilder();
+         boolean terminated = false;
+         if (maxLength > 0 && inDataSegment(address)) {
+            terminated = scanStringInTable(dataBlockTable, address - dataSegmentBaseAddress,
+                                    Math.min(maxLength, dataSegmentLimitAddress - address), string);
+         } 
+         else if (maxLength > 0 && inKernelDataSegment(address)) {
+            terminated = scanStringInTable(kernelDataBlockTable, address - kernelDataBaseAddress,
+                                    Math.min(maxLength, kernelDataSegmentLimitAddress - address), string);
+         }
+         // Continue byte by byte in other segments, or past the end of this one.
+         while (!terminated && string.length() < maxLength) {
+            int value = get(address + string.length(), 1, false);
+            if (value == 0) {
+               terminated = true;
+            } 
+            else {
+               string.append((char) value);
+            }
+         }
+         int length = string.length() + (terminated ? 1 : 0);
+         if (length > 0) {
+            notifyAnyObservers(AccessNotice.READ, address, length, 0);
+         }
+         return string.toString();
+      }
+   
+    ///////////////////////////////////////////////////////////////////////////////////////
+    /** 
+     *  Copies bytes from one range of addresses to another, as if through a temporary
+     *  buffer, so the ranges may overlap.  The bytes are moved a chunk at a time by
+     *  readBytes() and writeBytes(), and observers and backstepping see each chunk as
+     *  those methods report it.
+     * 
+     * @param destination Address of the first byte to be written.
+     * @param source Address of the first byte to be read.
+     * @param length Number of bytes to be copied.  0 or less copies nothing.
+     * @throws AddressErrorException If any of the bytes is outside the readable or writable
+     *  address range.  Chunks before it have already been copied.
+     **/
+       public void copyBytes(int destination, int source, int length) throws AddressErrorException {
+         if (length <= 0) {
+            return;
+         }
+         byte[] chunk = new byte[Math.min(length, BULK_CHUNK_BYTES)];
+         int distance = destination - source;
+         boolean backward = distance > 0 && distance < length; // destination overlaps the end of source
+         for (int done = 0; done < length; done += chunk.length) {
+            int count = Math.min(chunk.length, length - done);
+            int offset = backward ? length - done - count : done;
+            readBytes(source + offset, chunk, 0, count);
+            writeBytes(destination + offset, chunk, 0, count);
+         }
+      }
+   
+    ///////////////////////////////////////////////////////////////////////////////////////
+    /** 
+     *  Sets every byte in a range of addresses to the same value, a chunk at a time
+     *  with writeBytes().
+     * 
+     * @param address Address of the first byte to be set.
+     * @param value Value whose low order byte is to be stored.
+     * @param length Number of bytes to be set.  0 or less sets nothing.
+     * @throws AddressErrorException If any of the bytes is outside the writable address range.
+     *  Bytes before it have already been set.
+     **/
+       public void fillBytes(int address, int value, int length) throws AddressErrorException {
+         if (length <= 0) {
+            return;
+         }
+         byte[] chunk = new byte[Math.min(length, BULK_CHUNK_BYTES)];
+         Arrays.fill(chunk, (byte) value);
+         for (int done = 0; done < length; done += chunk.length) {
+            writeBytes(address + done, chunk, 0, Math.min(chunk.length, length - done));
+         }
+      }
+   
+    ///////////////////////////////////////////////////////////////////////////////////////
+    /** 
+     *  Compares two ranges of bytes as unsigned values, as memcmp() does.  They are
+     *  read a chunk at a time with readBytes(), stopping after the chunk that differs.
+     * 
+     * @param first Address of the first byte of one range.
+     * @param second Address of the first byte of the other range.
+     * @param length Number of bytes to compare.  0 or less compares nothing.
+     * @return 0 if the ranges hold the same bytes, otherwise the first differing byte of
+     *  the first range minus that of the second.
+     * @throws AddressErrorException If any of the bytes compared is outside the readable address range.
+     **/
+       public int compareBytes(int first, int second, int length) throws AddressErrorException {
+         if (length <= 0) {
+            return 0;
+         }
+         byte[] firstChunk = new byte[Math.min(length, BULK_CHUNK_BYTES)];
+         byte[] secondChunk = new byte[firstChunk.length];
+         for (int done = 0; done < length; done += firstChunk.length) {
+            int count = Math.min(firstChunk.length, length - done);
+            readBytes(first + done, firstChunk, 0, count);
+            readBytes(second + done, secondChunk, 0, count);
+            for (int i = 0; i < count; i++) {
+               if (firstChunk[i] != secondChunk[i]) {
+                  return (firstChunk[i] & 0xFF) - (secondChunk[i] & 0xFF);
+               }
+            }
+         }
+         return 0;
+      }
+   
    ////////////////////////////////////////////////////////////////////////////////
    /**
     * Gets ProgramStatement from Text Segment.  
@@ -1188,6 +1435,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             return (address >= lowAddress && address <= highAddress-1+WORD_LENGTH_BYTES);
          }
       	
+         // For accesses longer than a word, such as by readBytes(), match any overlap.
+          public boolean match(int address, int length) {
+            return (address <= highAddress-1+WORD_LENGTH_BYTES && address+length-1 >= lowAddress);
+         }
+      	
           public void notifyObserver(MemoryAccessNotice notice) {
             this.setChanged();
             this.notifyObservers(notice);
@@ -1226,7 +1478,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             MemoryObservable mo;
             while (it.hasNext()) {
                mo = (MemoryObservable)it.next();
-               if (mo.match(address)) {
+               if ((length > WORD_LENGTH_BYTES) ? mo.match(address, length) : mo.match(address)) {
                   mo.notifyObserver(new MemoryAccessNotice(type, address, length, value));
                }
             }
@@ -1243,6 +1495,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    //
       private static final boolean STORE = true;
       private static final boolean FETCH = false;
+      private static final int BULK_CHUNK_BYTES = 65536; // most bytes copyBytes(), fillBytes() and compareBytes() hold at once
    	 
        private int storeBytesInTable(int [][] blockTable, 
                                    int relativeByteAddress, int length, int value) {
@@ -1314,6 +1567,83 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return (op == STORE)	? oldValue : value;
       }	
    
+   ////////////////////////////////////////////////////////////////////////////////
+   //
+   // Helper method to store or fetch a range of bytes, for writeBytes() and readBytes().
+   // Each word of the range is fetched from the table once, rather than once per byte.
+   // For STORE, the bytes replaced are returned in oldBytes unless it is null.
+   // Not for the stack, whose table is addressed backward.
+   //
+       private synchronized void copyBytesInTable(int[][] blockTable, int relativeByteAddress,
+                                   byte[] buffer, int offset, int length, byte[] oldBytes, boolean op) {
+         int index = 0;
+         while (index < length) {
+            int relativeWordAddress = (relativeByteAddress + index) >> 2;
+            int block = relativeWordAddress / BLOCK_LENGTH_WORDS;
+            int wordOffset = relativeWordAddress % BLOCK_LENGTH_WORDS;
+            int firstByte = (relativeByteAddress + index) & 3;
+            int stopByte = Math.min(4, firstByte + length - index);
+            if (blockTable[block] == null) {
+               if (op == FETCH) {
+                  // Never written, so all zeros.
+                  for (int bite = firstByte; bite < stopByte; bite++) {
+                     buffer[offset + index++] = 0;
+                  }
+                  continue;
+               }
+               blockTable[block] = new int[BLOCK_LENGTH_WORDS];
+            }
+            int word = blockTable[block][wordOffset];
+            for (int bite = firstByte; bite < stopByte; bite++) {
+               int shift = byteShift(bite);
+               if (op == STORE) {
+                  if (oldBytes != null) oldBytes[index] = (byte) (word >> shift);
+                  word = (word & ~(0xFF << shift)) | ((buffer[offset + index] & 0xFF) << shift);
+               } 
+               else {
+                  buffer[offset + index] = (byte) (word >> shift);
+               }
+               index++;
+            }
+            if (op == STORE) blockTable[block][wordOffset] = word;
+         }
+      }
+   
+   ////////////////////////////////////////////////////////////////////////////////
+   //
+   // Helper method for readCString().  Appends characters to the string a word at
+   // a time until a null byte or "limit" bytes have been examined.  Returns true
+   // if it stopped at a null byte.
+   //
+       private synchronized boolean scanStringInTable(int[][] blockTable, int relativeByteAddress,
+                                   int limit, StringBuilder string) {
+         int index = 0;
+         while (index < limit) {
+            int relativeWordAddress = (relativeByteAddress + index) >> 2;
+            int block = relativeWordAddress / BLOCK_LENGTH_WORDS;
+            if (blockTable[block] == null) {
+               return true; // never written, so the next byte is null
+            }
+            int word = blockTable[block][relativeWordAddress % BLOCK_LENGTH_WORDS];
+            int stopByte = Math.min(4, ((relativeByteAddress + index) & 3) + limit - index);
+            for (int bite = (relativeByteAddress + index) & 3; bite < stopByte; bite++) {
+               int value = (word >> byteShift(bite)) & 0xFF;
+               if (value == 0) {
+                  return true;
+               }
+               string.append((char) value);
+               index++;
+            }
+         }
+         return false;
+      }
+   
+   // Number of bits to shift a word right to bring the byte at the given position
+   // in memory (0-3, from the word's address up) to the low order byte.
+       private int byteShift(int bytePositionInMemory) {
+         return (byteOrder == LITTLE_ENDIAN) ? bytePositionInMemory << 3 : (3 - bytePositionInMemory) << 3;
+      }
+   
    ////////////////////////////////////////////////////////////////////////////////
    //
    // Helper method to store 4 byte value in table that represents MIPS memory.
@@ -63,7 +63,8 @@ public class MemoryAccessNotice extends AccessNotice {
   public int getAddress() {
      return address;
   }
-  /** Fetch the length in bytes of the access operation (4,2,1). */
+  /** Fetch the length in bytes of the access operation (4,2,1, or longer for a range
+   *  accessed by Memory.readBytes(), writeBytes() or readCString()). */
   public int getLength() {
      return length;
   }
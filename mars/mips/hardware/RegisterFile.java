@@ -193,22 +193,27 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public static Register getUserRegister(String Rname) {
          Register reg = null;
          if (Rname.charAt(0) == '$') {
-            try {
-                   // check for register number 0-31.
-               reg = regFile[Binary.stringToInt(Rname.substring(1))];    // KENV 1/6/05
+            // check for register number 0-31.  A mnemonic such as $t0 cannot be
+            // a number, so don't pay for the NumberFormatException on those.
+            if (Rname.length() == 1 || Binary.mayStartNumber(Rname.charAt(1))) {
+               try {
+                  reg = regFile[Binary.stringToInt(Rname.substring(1))];    // KENV 1/6/05
+               }
+                   catch (Exception e) {
+                      // handles both NumberFormat and ArrayIndexOutOfBounds
+                     reg = null; // just to be sure
+                  }
             }
-                catch (Exception e) {
-                   // handles both NumberFormat and ArrayIndexOutOfBounds
+            if (reg == null) {
                    // check for register mnemonic $zero thru $ra
-                  reg = null; // just to be sure
                    // just do linear search; there aren't that many registers
-                  for (int i=0; i < regFile.length; i++) {
-                     if (Rname.equals(regFile[i].getName())) {
-                        reg = regFile[i];
-                        break;
-                     }
+               for (int i=0; i < regFile.length; i++) {
+                  if (Rname.equals(regFile[i].getName())) {
+                     reg = regFile[i];
+                     break;
                   }
                }
+            }
          }
          return reg;
       }
@@ -0,0 +1,73 @@
+package mars.mips.instructions;
+import java.io.*;
+
+/**
+ * Stands in for a CustomAssembly in a language JAR file, using the name and description
+ * recorded in the language index, so that the JAR's classes are not loaded until the
+ * language's instructions are needed.
+ * @see LanguageLoader
+ */
+class DeferredAssembly extends CustomAssembly{
+   private File jarFile;
+   private String className;
+   private String name;
+   private String description;
+   private CustomAssembly language;
+
+   DeferredAssembly(File jarFile, String className, String name, String description){
+      this.jarFile = jarFile;
+      this.className = className;
+      this.name = name;
+      this.description = description;
+   }
+
+   public String getName(){
+      return name;
+   }
+
+   public String getDescription(){
+      return description;
+   }
+
+   /**
+    * @return The fully qualified name of the CustomAssembly class this stands in for.
+    */
+   String getClassName(){
+      return className;
+   }
+
+   /**
+    * Loads and instantiates the language the first time it is called.
+    * @return The language this stands in for.
+    * @throws Exception if the class cannot be loaded or instantiated.
+    */
+   synchronized CustomAssembly getLanguage() throws Exception{
+      if (language == null){
+         language = LanguageLoader.instantiate(jarFile, className);
+      }
+      return language;
+   }
+
+   /**
+    * @return true if the language has been loaded, false if it has not been needed yet
+    * or could not be loaded.
+    */
+   synchronized boolean isLoaded(){
+      return language != null;
+   }
+
+   protected void populate(){
+      CustomAssembly c;
+      try {
+         c = getLanguage();
+      } catch(Exception e){
+         System.out.println("Error instantiating CustomAssembly from file " + jarFile.getName() + ": " + e);
+         return;
+      } catch(LinkageError e){
+         // e.g. compiled for a newer Java version
+         System.out.println("Error instantiating CustomAssembly from file " + jarFile.getName() + ": " + e);
+         return;
+      }
+      c.addCustomInstructions(instructionList);
+   }
+}
@@ -0,0 +1,26 @@
+package mars.mips.instructions;
+import mars.*;
+
+/**
+ * SimulationCode for an instruction with two registers and an immediate, such as
+ * "addi $t1,$t2,100".  The operands are passed as ints, in the order they are written, from
+ * fields the statement fills in when it is assembled.  The immediate is passed as the
+ * statement holds it: an instruction that needs it sign extended does so itself, e.g.
+ * imm << 16 >> 16.  An operand the instruction doesn't have is passed as 0.
+ * @see SimulationCode
+ */
+public interface ITypeSimulationCode extends SimulationCode{
+   /**
+    * Simulates the execution of the instruction.
+    * @param statement The statement being executed, for reporting exceptions.
+    * @param rt First operand: register number.
+    * @param rs Second operand: register number.
+    * @param imm Third operand: the immediate.
+    * @throws ProcessingException This is a run-time exception generated during simulation.
+    */
+   public void simulate(ProgramStatement statement, int rt, int rs, int imm) throws ProcessingException;
+
+   default void simulate(ProgramStatement statement) throws ProcessingException{
+      simulate(statement, statement.getFirstOperand(), statement.getSecondOperand(), statement.getThirdOperand());
+   }
+}
@@ -0,0 +1,170 @@
+package mars.mips.instructions;
+import mars.*;
+import mars.mips.hardware.*;
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+/**
+ * Measures the SimulationCode of every basic instruction of every loaded language, so that a
+ * change that slows down or starts allocating in an instruction can be seen by comparing the
+ * output before and after it.  Run from the MARS directory:
+ * <pre>
+ *   java mars.mips.instructions.InstructionBenchmark [-ms milliseconds] [language name ...]
+ * </pre>
+ * Each language is selected in turn, and each of its instructions is run on a statement made from
+ * its operation mask, with registers $t0, $t2 and $t4 (or $f8, $f10 and $f12) as its register
+ * operands, 8 as its immediate and the start of the text segment as its jump target.  Registers
+ * $t0-$t7 hold distinct doubleword addresses in the data segment and $f8-$f15 hold 1.5.
+ * <p>
+ * Output is one tab-separated line per instruction, in the order the languages define them:
+ * language, instruction, nanoseconds per execution, bytes allocated per execution, and a note
+ * such as "allocates" or the exception the instruction threw.
+ */
+public class InstructionBenchmark{
+   private static final int BATCH = 1000; // executions between resets of the registers
+   private static final int[] REGISTER_OPERANDS = {8, 10, 12};
+   private static final int IMMEDIATE_OPERAND = 8;
+   private static final String[] SKIPPED = {"syscall"}; // would run whatever syscall $v0 selects
+
+   public static void main(String[] args){
+      int millis = 200;
+      ArrayList<String> languages = new ArrayList<String>();
+      for (int i = 0; i < args.length; i++){
+         if (args[i].equals("-ms") && i + 1 < args.length){
+            millis = Integer.parseInt(args[++i]);
+         } else{
+            languages.add(args[i]);
+         }
+      }
+      PrintStream out = System.out;
+      // Keep instructions that print or read from disturbing the results or waiting for input
+      System.setOut(new PrintStream(new OutputStream(){
+         public void write(int b){
+         }
+      }));
+      System.setIn(new ByteArrayInputStream(new byte[0]));
+      Globals.initialize(false);
+
+      out.println("# language\tinstruction\tns/op\tbytes/op\tnote");
+      for (CustomAssembly c : new ArrayList<CustomAssembly>(LanguageLoader.assemblyList)){
+         if (!languages.isEmpty() && !languages.contains(c.getName())){
+            continue;
+         }
+         // Select the language as the IDE does, which also completes its instructions
+         for (CustomAssembly other : LanguageLoader.assemblyList){
+            other.enabled = (other == c);
+         }
+         Globals.instructionSet.populate();
+         for (BasicInstruction instruction : LanguageLoader.getInstructions(c)){
+            out.println(c.getName() + "\t" + instruction.getExampleFormat() + "\t" + measure(instruction, millis));
+         }
+      }
+      out.flush();
+   }
+
+   // Produces the "ns/op, bytes/op, note" columns for an instruction.
+   private static String measure(BasicInstruction instruction, int millis){
+      for (String name : SKIPPED){
+         if (instruction.getName().equals(name)){
+            return "-\t-\tskipped";
+         }
+      }
+      ProgramStatement statement = makeStatement(instruction);
+      SimulationCode code = instruction.getSimulationCode();
+      reset();
+      try {
+         code.simulate(statement);
+      } catch(ProcessingException e){
+         if (e.errors() == null){
+            return "-\t-\tterminates the program";
+         }
+         String message = ((ErrorMessage) e.errors().getErrorMessages().get(0)).getMessage();
+         return "-\t-\texception: " + message.replaceFirst("^Runtime exception at 0x[0-9a-f]+: ", "");
+      } catch(RuntimeException e){
+         return "-\t-\terror: " + e;
+      }
+
+      // Warm up for half the time, then measure for the full time
+      run(code, statement, millis * 500000L);
+      ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      boolean countAllocation = threads instanceof com.sun.management.ThreadMXBean
+         && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported();
+      long threadId = Thread.currentThread().getId();
+      long allocatedBefore = countAllocation ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threadId) : 0;
+      long start = System.nanoTime();
+      long[] result = run(code, statement, millis * 1000000L);
+      long elapsed = System.nanoTime() - start;
+      long allocated = countAllocation ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threadId) - allocatedBefore : -1;
+
+      long executions = result[0];
+      double bytesPerOp = (double) allocated / executions;
+      String note = "";
+      if (allocated >= 0 && bytesPerOp >= 1){
+         note = "allocates";
+      }
+      if (result[1] > 0){
+         note += (note.length() == 0 ? "" : ", ") + result[1] + " exceptions";
+      }
+      return String.format(Locale.ROOT, "%.1f\t%s\t%s", (double) elapsed / executions,
+         (allocated < 0) ? "-" : String.format(Locale.ROOT, "%.1f", bytesPerOp), note);
+   }
+
+   // Runs the instruction in batches for the given time.  Returns the number of executions and of exceptions.
+   private static long[] run(SimulationCode code, ProgramStatement statement, long nanos){
+      long executions = 0;
+      long exceptions = 0;
+      long end = System.nanoTime() + nanos;
+      do {
+         reset();
+         for (int i = 0; i < BATCH; i++){
+            try {
+               code.simulate(statement);
+            } catch(ProcessingException e){
+               exceptions++;
+               reset();
+            }
+         }
+         executions += BATCH;
+      } while (System.nanoTime() < end);
+      return new long[]{executions, exceptions};
+   }
+
+   // Makes a statement for the instruction with the operands described above.
+   private static ProgramStatement makeStatement(BasicInstruction instruction){
+      String mask = instruction.getOperationMask();
+      int binary = instruction.getOpcodeMatch();
+      int[] operands = new int[3];
+      int count = 0;
+      String codes = "fst";
+      for (int i = 0; i < codes.length(); i++){
+         int first = mask.indexOf(codes.charAt(i));
+         if (first < 0){
+            continue;
+         }
+         int last = mask.lastIndexOf(codes.charAt(i));
+         int width = last - first + 1;
+         int value;
+         if (width == 5){
+            value = REGISTER_OPERANDS[count];
+         } else if (width >= 26){
+            value = Memory.textBaseAddress >>> 2;
+         } else{
+            value = IMMEDIATE_OPERAND;
+         }
+         value &= (int) ((1L << width) - 1);
+         binary |= value << (31 - last);
+         operands[count++] = value;
+      }
+      return new ProgramStatement(null, instruction.getExampleFormat(), instruction.getExampleFormat(),
+         instruction, Arrays.copyOf(operands, count), binary, Memory.textBaseAddress, 0);
+   }
+
+   private static void reset(){
+      for (int i = 8; i < 16; i++){
+         RegisterFile.updateRegister(i, Memory.dataBaseAddress + 64 + 8 * i);
+         Coprocessor1.updateRegister(i, Float.floatToIntBits(1.5f));
+      }
+      RegisterFile.setProgramCounter(Memory.textBaseAddress + Instruction.INSTRUCTION_LENGTH);
+   }
+}
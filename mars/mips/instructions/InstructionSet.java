@@ -3,6 +3,7 @@
    import mars.mips.hardware.*;
    import mars.mips.instructions.syscalls.*;
    import mars.*;
+   import mars.assembler.TokenList;
    import java.util.*;
    import java.io.*;
 
@@ -47,7 +48,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    {
       private ArrayList instructionList;
 	  private ArrayList opcodeMatchMaps;
+      private HashMap operatorIndex; // lower-case mnemonic to list of Instructions, built by populate()
       private SyscallLoader syscallLoader;
+      private HashMap builtSets = new HashMap(); // LanguageLoader.getEnabledLanguages() to BuiltSet
     /**
      * Creates a new InstructionSet object.
      */
@@ -71,6 +74,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     /**
      * Adds all instructions to the set.  A given extended instruction may have
      * more than one Instruction object, depending on how many formats it can have.
+     * The set built for each combination of enabled languages is kept, so switching
+     * back to a combination that has been used before does not rebuild it.
      * @see Instruction
      * @see BasicInstruction
      * @see ExtendedInstruction
@@ -87,8 +92,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       frame.pack();
       */
 
+      ArrayList languages = LanguageLoader.getEnabledLanguages();
+      BuiltSet built = (BuiltSet) builtSets.get(languages);
+      if (built != null) {
+         instructionList = built.instructionList;
+         opcodeMatchMaps = built.opcodeMatchMaps;
+         operatorIndex = built.operatorIndex;
+         // Instructions are shared with other combinations, whose populate() replaced their
+         // token lists with ones tokenized against that combination's set.
+         for (int i = 0; i < instructionList.size(); i++) {
+            ((Instruction) instructionList.get(i)).tokenList = built.tokenLists[i];
+         }
+         return;
+      }
+
       // String before = Integer.toString(instructionList.size());
-      instructionList.clear();
+      instructionList = new ArrayList(); // not clear(): the previous list may be in builtSets
+      operatorIndex = null; // matchOperator() searches the list until it is rebuilt below
       /* // Yet more debug
       JLabel debugLabel = new JLabel();
       debugLabel.setPreferredSize(new Dimension(175, 100));
@@ -99,18 +119,24 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
       // 2025 RESEARCH: INSTRUCTIONS MOVED TO MipsAssembly.java
       // LanguageLoader now handles instructions, both for MIPS and custom-defined languages
-      LanguageLoader.mergeCustomInstructions(instructionList);
+      boolean complete = LanguageLoader.mergeCustomInstructions(instructionList);
 
         ////////////// GET AND CREATE LIST OF SYSCALL FUNCTION OBJECTS ////////////////////
-         syscallLoader = new SyscallLoader();
-         syscallLoader.loadSyscalls();
+        // Syscalls do not depend on the language, so they are loaded only the first time.
+        // That is at startup, so that a broken syscall or override is reported then.
+         if (syscallLoader == null) {
+            syscallLoader = new SyscallLoader();
+            syscallLoader.loadSyscalls();
+         }
       	
         // Initialization step.  Create token list for each instruction example.  This is
         // used by parser to determine user program correct syntax.
+         TokenList[] tokenLists = new TokenList[instructionList.size()];
          for (int i = 0; i < instructionList.size(); i++)
          {
             Instruction inst = (Instruction) instructionList.get(i);
             inst.createExampleTokenList();
+            tokenLists[i] = inst.getTokenList();
          }
 
 		 HashMap maskMap = new HashMap();
@@ -132,8 +158,39 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 		 }
 		 Collections.sort(matchMaps);
 		 this.opcodeMatchMaps = matchMaps;
+
+		 HashMap operators = new HashMap();
+		 for (int i = 0; i < instructionList.size(); i++) {
+		 	Instruction inst = (Instruction) instructionList.get(i);
+			String key = inst.getName().toLowerCase(Locale.ENGLISH);
+			ArrayList matching = (ArrayList) operators.get(key);
+			if (matching == null) {
+				matching = new ArrayList();
+				operators.put(key, matching);
+			}
+			matching.add(inst);
+		 }
+		 this.operatorIndex = operators;
+		 if (complete) { // otherwise built again, so that a language that failed to load is tried again
+		    builtSets.put(languages, new BuiltSet(instructionList, opcodeMatchMaps, operatorIndex, tokenLists));
+		 }
       }
 
+	/**
+	 * Discards the instruction sets kept for combinations that include any of the
+	 * given languages, after they have been reloaded or removed.  Sets for other
+	 * combinations are kept.  The current set is kept until the next populate().
+	 * @param languages the languages whose sets are out of date.
+	 */
+	public void forgetBuiltSets(Collection languages) {
+		Iterator keys = builtSets.keySet().iterator();
+		while (keys.hasNext()) {
+			if (!Collections.disjoint((ArrayList) keys.next(), languages)) {
+				keys.remove();
+			}
+		}
+	}
+
 	public BasicInstruction findByBinaryCode(int binaryInstr) {
 		ArrayList matchMaps = this.opcodeMatchMaps;
 		for (int i = 0; i < matchMaps.size(); i++) {
@@ -221,14 +278,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
     /**
      *  Given an operator mnemonic, will return the corresponding Instruction object(s)
-     *  from the instruction set.  Uses straight linear search technique.
+     *  from the instruction set.  Looks up the index built by populate(), so the returned
+     *  list is shared and must not be modified.
      *  @param name operator mnemonic (e.g. addi, sw,...)
      *  @return list of corresponding Instruction object(s), or null if not found.
      */
        public ArrayList matchOperator(String name)
       {
+         if (operatorIndex != null) {
+            return (ArrayList) operatorIndex.get(name.toLowerCase(Locale.ENGLISH));
+         }
          ArrayList matchingInstructions = null;
-        // Linear search for now....
+        // Linear search until the index has been built....
          for (int i = 0; i < instructionList.size(); i++)
          {
             if (((Instruction) instructionList.get(i)).getName().equalsIgnoreCase(name))
@@ -267,6 +328,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return matchingInstructions;
       }
    	
+   /**
+    * Provides the MemCopy, MemSet, MemCompare and StrLen syscalls, or leaves them out
+    * so that their numbers are free for other syscalls.  Does nothing if that would give
+    * two syscalls the same number or a syscall cannot be loaded.
+    * @param enabled true to provide them
+    * @return null if done, otherwise why not
+    */
+       public String setMemorySyscallsEnabled(boolean enabled) {
+         return syscallLoader.setMemorySyscalls(enabled);
+      }
+   	
    	/*
    	 * Method to find and invoke a syscall given its service number.  Each syscall
    	 * function is represented by an object in an array list.  Each object is of
@@ -385,5 +457,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 			return (BasicInstruction) matchMap.get(match);
 		}
 	}
-   }
 
+	  // The tables populate() builds for one combination of enabled languages.
+	  private static class BuiltSet {
+		private ArrayList instructionList;
+		private ArrayList opcodeMatchMaps;
+		private HashMap operatorIndex;
+		private TokenList[] tokenLists; // example token list of each instruction, as tokenized for this set
+
+		public BuiltSet(ArrayList instructionList, ArrayList opcodeMatchMaps, HashMap operatorIndex, TokenList[] tokenLists) {
+			this.instructionList = instructionList;
+			this.opcodeMatchMaps = opcodeMatchMaps;
+			this.operatorIndex = operatorIndex;
+			this.tokenLists = tokenLists;
+		}
+	}
+   }
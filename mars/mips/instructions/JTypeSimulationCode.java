@@ -0,0 +1,21 @@
+package mars.mips.instructions;
+import mars.*;
+
+/**
+ * SimulationCode for a jump instruction with a single target operand, such as "j target".
+ * The target is passed as an int from a field the statement fills in when it is assembled.
+ * @see SimulationCode
+ */
+public interface JTypeSimulationCode extends SimulationCode{
+   /**
+    * Simulates the execution of the instruction.
+    * @param statement The statement being executed, for reporting exceptions.
+    * @param target The operand: jump target.
+    * @throws ProcessingException This is a run-time exception generated during simulation.
+    */
+   public void simulate(ProgramStatement statement, int target) throws ProcessingException;
+
+   default void simulate(ProgramStatement statement) throws ProcessingException{
+      simulate(statement, statement.getFirstOperand());
+   }
+}
@@ -8,9 +8,17 @@
     import java.lang.reflect.Constructor;
     import java.net.URLClassLoader;
     import java.net.URL;
+    import java.util.concurrent.Callable;
+    import java.util.concurrent.ExecutionException;
+    import java.util.concurrent.ExecutorService;
+    import java.util.concurrent.Executors;
+    import java.util.concurrent.Future;
+    import java.nio.file.*;
+    import javax.swing.SwingUtilities;
     
 /**
- * Handles all user-defined instruction sets. Loads JAR files containing classes which extend CustomAssembly from the mars/mips/instructions/customlangs directory
+ * Handles all user-defined instruction sets. Loads JAR files containing classes which extend CustomAssembly, and language specification
+ * files read by SpecAssembly, from the mars/mips/instructions/customlangs directory
  * and adds them to the Language Switcher.
  * @see CustomAssembly
  * @see assemblyList
@@ -18,33 +26,197 @@
 public class LanguageLoader{
     private static final String CUSTOM_LANG_DIRECTORY = "mars/mips/instructions/customlangs";
     private static final String JAR_EXTENSION = "jar";
+    private static final String SPEC_EXTENSION = "lang"; // language specification files, see SpecAssembly
     private static final String EXAMPLE_FILE = "ExampleCustomLanguage";
+    private static final String INDEX_SECTION = "languages"; // section of the plugin index
+    private static final long RELOAD_DELAY = 200; // milliseconds to let a JAR file finish being written
 
     private static ArrayList<BasicInstruction> finalInstructionList = new ArrayList<BasicInstruction>();
+    // Instructions of each language, built by its populate() the first time they are needed
+    private static HashMap<CustomAssembly, ArrayList<BasicInstruction>> builtInstructions = new HashMap<CustomAssembly, ArrayList<BasicInstruction>>();
+    // JAR file each custom language was loaded from, so it can be reloaded when the file changes
+    private static HashMap<CustomAssembly, String> languageFiles = new HashMap<CustomAssembly, String>();
     public static ArrayList<CustomAssembly> assemblyList = new ArrayList<CustomAssembly>(){{
         MipsAssembly m = new MipsAssembly();
         add(m);
 
         ArrayList<String> langCandidates = FilenameFinder.getFilenameList(m.getClass().getClassLoader(), CUSTOM_LANG_DIRECTORY, JAR_EXTENSION);
-        HashSet<String> languages = new HashSet<String>();
+        addAll(discoverLanguages(langCandidates));
 
-        for (String file : langCandidates){
-            // Ensure duplicates are not loaded
-            if (languages.contains(file)){
+        ArrayList<String> specCandidates = FilenameFinder.getFilenameList(m.getClass().getClassLoader(), CUSTOM_LANG_DIRECTORY, SPEC_EXTENSION);
+        for (String file : new LinkedHashSet<String>(specCandidates)){
+            try {
+                CustomAssembly language = new SpecAssembly(new File(CUSTOM_LANG_DIRECTORY + "/" + file));
+                add(language);
+                languageFiles.put(language, file);
+            } catch(IOException e){
+                System.out.println("Error reading language file " + file + ": " + e);
+            }
+        }
+    }};
+
+    /*
+     * Produces the languages in the given JAR files, in order.  A JAR file that has not changed
+     * since it was recorded in the language index is not opened: its languages are represented by
+     * DeferredAssembly objects made from the index.  The others are scanned in parallel for classes
+     * that extend CustomAssembly, and the index is rewritten if anything changed.
+     */
+    private static ArrayList<CustomAssembly> discoverLanguages(ArrayList<String> langCandidates){
+        LinkedHashSet<String> files = new LinkedHashSet<String>(langCandidates); // Ensure duplicates are not loaded
+        HashMap<String, IndexEntry> index = readIndex();
+        HashMap<String, IndexEntry> newIndex = new HashMap<String, IndexEntry>();
+        ArrayList<Object> found = new ArrayList<Object>(); // per file, an IndexEntry or a Future of a scan
+        ExecutorService scanners = null;
+        for (String file : files){
+            File f = new File(CUSTOM_LANG_DIRECTORY + "/" + file);
+            IndexEntry entry = index.get(file);
+            if (entry != null && entry.lastModified == f.lastModified() && entry.length == f.length()){
+                found.add(entry);
+                newIndex.put(file, entry);
+                continue;
+            }
+            if (scanners == null){
+                scanners = Executors.newFixedThreadPool(Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+            }
+            found.add(scanners.submit(new JarScan(f)));
+        }
+        if (scanners != null){
+            scanners.shutdown();
+        }
+
+        ArrayList<CustomAssembly> languages = new ArrayList<CustomAssembly>();
+        boolean indexChanged = !newIndex.keySet().equals(index.keySet());
+        int i = 0;
+        for (String file : files){
+            Object result = found.get(i++);
+            File f = new File(CUSTOM_LANG_DIRECTORY + "/" + file);
+            if (result instanceof IndexEntry){
+                IndexEntry entry = (IndexEntry) result;
+                for (int j = 0; j < entry.classNames.size(); j++){
+                    DeferredAssembly language = new DeferredAssembly(f, entry.classNames.get(j), entry.names.get(j), entry.descriptions.get(j));
+                    languages.add(language);
+                    languageFiles.put(language, file);
+                }
                 continue;
-            } else{
-                languages.add(file);
             }
             // Add an instance of the class to assemblyList if it extends CustomAssembly
             try {
-                String jarPath = CUSTOM_LANG_DIRECTORY + "/" + file;
-                File f = new File(jarPath);
+                ArrayList<CustomAssembly> scanned = ((Future<ArrayList<CustomAssembly>>) result).get();
+                languages.addAll(scanned);
+                IndexEntry entry = new IndexEntry(f.lastModified(), f.length());
+                for (CustomAssembly c : scanned){
+                    languageFiles.put(c, file);
+                    entry.classNames.add(c.getClass().getName());
+                    entry.names.add(c.getName());
+                    entry.descriptions.add(c.getDescription());
+                }
+                newIndex.put(file, entry);
+                indexChanged = true;
+            } catch(ExecutionException e){
+                System.out.println("Error instantiating CustomAssembly from file " + file + ": " + e.getCause());
+            } catch(Exception e){
+                System.out.println("Error instantiating CustomAssembly from file " + file + ": " + e);
+            }
+        }
+        if (indexChanged){
+            writeIndex(newIndex);
+        }
+        return languages;
+    }
 
-                // Create a class loader that can load classes from our JAR files
-                URL[] urls = {f.toURI().toURL()};
-                URLClassLoader cl = URLClassLoader.newInstance(urls);
+    /**
+    * Loads the named CustomAssembly class from a JAR file and instantiates it.
+    * @param f The JAR file.
+    * @param className Fully qualified name of a class that extends CustomAssembly.
+    * @return The new instance.
+    * @throws Exception if the class cannot be loaded, does not extend CustomAssembly, or cannot be instantiated.
+    */
+    static CustomAssembly instantiate(File f, String className) throws Exception{
+        URL[] urls = {f.toURI().toURL()};
+        URLClassLoader cl = URLClassLoader.newInstance(urls);
+        Class langClass = cl.loadClass(className);
+        if (!CustomAssembly.class.isAssignableFrom(langClass)){
+            throw new ClassCastException(className + " does not extend CustomAssembly");
+        }
+        Constructor<CustomAssembly> c = langClass.getConstructor();
+        return c.newInstance();
+    }
 
-                JarFile jarFile = new JarFile(f);
+    /**
+    * Gets the name of the class that implements a language, which for a language
+    * that has not been loaded yet is not the class of the object in assemblyList.
+    * Languages read from specification files share a class, so for them the file
+    * name follows the class name, e.g. "mars.mips.instructions.SpecAssembly(Tiny.lang)".
+    * @param c The language.
+    * @return Its fully qualified class name.
+    */
+    public static String getLanguageClassName(CustomAssembly c){
+        if (c instanceof SpecAssembly){
+            return c.getClass().getName() + "(" + ((SpecAssembly) c).getFileName() + ")";
+        }
+        return (c instanceof DeferredAssembly) ? ((DeferredAssembly) c).getClassName() : c.getClass().getName();
+    }
+
+    // The language index, a section of the plugin index, records for each JAR file its
+    // modification time and length and the class name, name and description of each language
+    // in it.  It is a cache: if it is missing, unreadable or cannot be written, the JAR files
+    // are simply scanned.
+    private static HashMap<String, IndexEntry> readIndex(){
+        HashMap<String, IndexEntry> index = new HashMap<String, IndexEntry>();
+        ArrayList records = PluginRegistry.get(INDEX_SECTION, new File(CUSTOM_LANG_DIRECTORY).getAbsolutePath());
+        if (records == null){
+            return index;
+        }
+        // Each record is file, modification time, length, then class name, name and description
+        // if the file has a language.  A file with several languages has a record for each.
+        for (Object o : records){
+            String[] record = (String[]) o;
+            IndexEntry entry = index.get(record[0]);
+            if (entry == null){
+                entry = new IndexEntry(Long.parseLong(record[1]), Long.parseLong(record[2]));
+                index.put(record[0], entry);
+            }
+            if (record.length > 3){
+                entry.classNames.add(record[3]);
+                entry.names.add(record[4]);
+                entry.descriptions.add(record[5]);
+            }
+        }
+        return index;
+    }
+
+    private static void writeIndex(HashMap<String, IndexEntry> index){
+        ArrayList<String[]> records = new ArrayList<String[]>();
+        for (Map.Entry<String, IndexEntry> e : index.entrySet()){
+            IndexEntry entry = e.getValue();
+            String[] file = {e.getKey(), Long.toString(entry.lastModified), Long.toString(entry.length)};
+            if (entry.classNames.isEmpty()){
+                records.add(file);
+            }
+            for (int j = 0; j < entry.classNames.size(); j++){
+                records.add(new String[]{file[0], file[1], file[2], entry.classNames.get(j), entry.names.get(j), entry.descriptions.get(j)});
+            }
+        }
+        PluginRegistry.put(INDEX_SECTION, new File(CUSTOM_LANG_DIRECTORY).getAbsolutePath(), records);
+    }
+
+    // Instantiates every class in a JAR file that extends CustomAssembly.  The scans run while
+    // LanguageLoader is still being initialized, so this must not use any of its static members.
+    private static class JarScan implements Callable<ArrayList<CustomAssembly>>{
+        private File f;
+
+        private JarScan(File f){
+            this.f = f;
+        }
+
+        public ArrayList<CustomAssembly> call() throws Exception{
+            ArrayList<CustomAssembly> languages = new ArrayList<CustomAssembly>();
+            // Create a class loader that can load classes from our JAR files
+            URL[] urls = {f.toURI().toURL()};
+            URLClassLoader cl = URLClassLoader.newInstance(urls);
+
+            JarFile jarFile = new JarFile(f);
+            try {
                 Enumeration<JarEntry> e = jarFile.entries();
 
                 while (e.hasMoreElements()){
@@ -54,35 +226,47 @@ public class LanguageLoader{
                     }
                     String className = je.getName().replace(".class", "").replace("/", ".");
                     Class langClass = cl.loadClass(className);
-                    /* 
-                    if (className.endsWith(EXAMPLE_FILE))
-                        continue;
-                    */
                     // Do nothing if the class doesn't implement CustomAssembly
                     if (!CustomAssembly.class.isAssignableFrom(langClass)){
                         continue;
                     }
 
                     Constructor<CustomAssembly> c = langClass.getConstructor();
-                    add(c.newInstance());
+                    languages.add(c.newInstance());
                 }
+            } finally {
                 jarFile.close();
-            } catch(Exception e){
-                System.out.println("Error instantiating CustomAssembly from file " + file + ": " + e);
             }
+            return languages;
         }
-    }};
+    }
+
+    private static class IndexEntry{
+        private long lastModified;
+        private long length;
+        private ArrayList<String> classNames = new ArrayList<String>();
+        private ArrayList<String> names = new ArrayList<String>();
+        private ArrayList<String> descriptions = new ArrayList<String>();
+
+        private IndexEntry(long lastModified, long length){
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
 
     /**
     * Merges all enabled custom instruction sets into the main instruction set that the simulator reads from.
     * @param instrList The global instruction list.
+    * @return false if some enabled language could not be loaded, so its instructions are missing.
     */
-    public static void mergeCustomInstructions(ArrayList<BasicInstruction> instrList){
+    public static boolean mergeCustomInstructions(ArrayList<BasicInstruction> instrList){
         boolean pseudo = false;
+        boolean complete = true;
         finalInstructionList.clear();
         for (CustomAssembly c : assemblyList){
             if (c.enabled){
-                c.addCustomInstructions(finalInstructionList);
+                finalInstructionList.addAll(getInstructions(c));
+                complete = complete && isLoaded(c);
                 if (c instanceof MipsAssembly){
                     pseudo = true;
                 }
@@ -93,5 +277,212 @@ public class LanguageLoader{
         if (pseudo == true){
             Globals.instructionSet.addPseudoInstructions();
         }
+        return complete;
+    }
+
+    // A language stood in for by a DeferredAssembly is loaded from its JAR file by its populate().
+    private static boolean isLoaded(CustomAssembly c){
+        return !(c instanceof DeferredAssembly) || ((DeferredAssembly) c).isLoaded();
     }
-}
\ No newline at end of file
+
+    /**
+    * Produces the languages that are currently enabled, for caching whatever is built from
+    * that combination.  Languages compare by identity, so a language that has been reloaded
+    * is a different one.
+    * @return The enabled languages, in assemblyList order.
+    */
+    public static ArrayList<CustomAssembly> getEnabledLanguages(){
+        ArrayList<CustomAssembly> enabled = new ArrayList<CustomAssembly>();
+        for (CustomAssembly c : assemblyList){
+            if (c.enabled){
+                enabled.add(c);
+            }
+        }
+        return enabled;
+    }
+
+    /**
+    * Gets the instructions defined by a language, running its populate() only the first time
+    * it succeeds.  A language whose JAR file could not be loaded has no instructions, and is
+    * tried again the next time.
+    * @param c The language.
+    * @return The language's instructions.  Shared, so must not be modified.
+    */
+    public static ArrayList<BasicInstruction> getInstructions(CustomAssembly c){
+        synchronized (c){
+            ArrayList<BasicInstruction> instructions;
+            synchronized (builtInstructions){
+                instructions = builtInstructions.get(c);
+            }
+            if (instructions == null){
+                instructions = new ArrayList<BasicInstruction>();
+                c.addCustomInstructions(instructions);
+                if (isLoaded(c)){
+                    synchronized (builtInstructions){
+                        builtInstructions.put(c, instructions);
+                    }
+                }
+            }
+            return instructions;
+        }
+    }
+
+    /**
+    * Builds the instructions of every language that is not enabled on a low priority
+    * background thread, so that selecting one later does not have to wait for its populate().
+    */
+    public static void buildInstructionsInBackground(){
+        Thread builder = new Thread(new Runnable(){
+            public void run(){
+                for (CustomAssembly c : new ArrayList<CustomAssembly>(assemblyList)){
+                    if (c.enabled){
+                        continue;
+                    }
+                    try {
+                        getInstructions(c);
+                    } catch(Exception e){
+                        // Left for populate() to retry and report when the language is selected.
+                    }
+                }
+            }
+        }, "LanguageLoader");
+        builder.setDaemon(true);
+        builder.setPriority(Thread.MIN_PRIORITY);
+        builder.start();
+    }
+
+    /**
+    * Watches the custom language directory on a background thread and reloads a JAR file
+    * or language specification file whenever it is rebuilt or saved, so a language can be changed without restarting MARS.  The new
+    * classes are loaded by a new class loader and take the old languages' places in assemblyList.
+    * The old class loader is not closed: statements already assembled may still run its classes,
+    * some of which are only loaded when first used.  It is freed once nothing refers to them.
+    */
+    public static void watchForChanges(){
+        final WatchService watcher;
+        try {
+            Path folder = Paths.get(CUSTOM_LANG_DIRECTORY);
+            watcher = folder.getFileSystem().newWatchService();
+            folder.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch(Exception e){
+            System.out.println("Custom languages will not be reloaded when changed: " + e);
+            return;
+        }
+        Thread reloader = new Thread(new Runnable(){
+            public void run(){
+                try {
+                    while (true){
+                        LinkedHashSet<String> changed = new LinkedHashSet<String>();
+                        WatchKey key = watcher.take();
+                        do {
+                            for (WatchEvent<?> event : key.pollEvents()){
+                                if (event.context() != null && (event.context().toString().endsWith("." + JAR_EXTENSION) || event.context().toString().endsWith("." + SPEC_EXTENSION))){
+                                    changed.add(event.context().toString());
+                                }
+                            }
+                            key.reset();
+                            if (changed.isEmpty()){
+                                break;
+                            }
+                            Thread.sleep(RELOAD_DELAY);
+                        } while ((key = watcher.poll()) != null);
+                        for (String file : changed){
+                            reload(file);
+                        }
+                    }
+                } catch(InterruptedException e){
+                    // MARS is exiting.
+                }
+            }
+        }, "LanguageWatcher");
+        reloader.setDaemon(true);
+        reloader.start();
+    }
+
+    // Loads the languages in a changed file and hands them to the event thread to replace the old ones.
+    private static void reload(final String file){
+        final ArrayList<CustomAssembly> languages;
+        try {
+            if (file.endsWith("." + SPEC_EXTENSION)){
+                languages = new ArrayList<CustomAssembly>();
+                languages.add(new SpecAssembly(new File(CUSTOM_LANG_DIRECTORY, file)));
+            } else{
+                languages = new JarScan(new File(CUSTOM_LANG_DIRECTORY, file)).call();
+            }
+        } catch(Exception e){
+            System.out.println("Error instantiating CustomAssembly from file " + file + ": " + e);
+            return;
+        } catch(LinkageError e){
+            System.out.println("Error instantiating CustomAssembly from file " + file + ": " + e);
+            return;
+        }
+        for (CustomAssembly c : languages){
+            try {
+                getInstructions(c);
+            } catch(Exception e){
+                // Left for populate() to retry and report when the language is selected.
+            }
+        }
+        SwingUtilities.invokeLater(new Runnable(){
+            public void run(){
+                replaceLanguages(file, languages);
+            }
+        });
+    }
+
+    /*
+     * Puts the languages loaded from a file in place of the ones previously loaded from it.
+     * A language keeps its position in assemblyList and its enabled state if the new JAR has a
+     * class of the same name; other old languages are removed and other new ones added at the end.
+     * Must run on the event thread, which is the only one that uses assemblyList after startup.
+     */
+    private static void replaceLanguages(String file, ArrayList<CustomAssembly> languages){
+        ArrayList<CustomAssembly> added = new ArrayList<CustomAssembly>(languages);
+        ArrayList<CustomAssembly> replaced = new ArrayList<CustomAssembly>();
+        boolean enabledChanged = false;
+        for (int i = assemblyList.size() - 1; i >= 0; i--){
+            CustomAssembly old = assemblyList.get(i);
+            if (!file.equals(languageFiles.get(old))){
+                continue;
+            }
+            replaced.add(old);
+            enabledChanged |= old.enabled;
+            CustomAssembly match = null;
+            for (CustomAssembly c : added){
+                if (getLanguageClassName(c).equals(getLanguageClassName(old))){
+                    match = c;
+                }
+            }
+            if (match == null){
+                assemblyList.remove(i);
+            } else{
+                match.enabled = old.enabled;
+                assemblyList.set(i, match);
+                added.remove(match);
+            }
+        }
+        assemblyList.addAll(added);
+        for (CustomAssembly c : languages){
+            languageFiles.put(c, file);
+        }
+        for (CustomAssembly old : replaced){
+            languageFiles.remove(old);
+            synchronized (builtInstructions){
+                builtInstructions.remove(old);
+            }
+        }
+
+        // Only the instruction sets that include a replaced language are rebuilt, and
+        // for them only the new languages run populate(); the others' instructions are kept.
+        Globals.instructionSet.forgetBuiltSets(replaced);
+        if (enabledChanged){
+            Globals.instructionSet.populate();
+        }
+        if (Globals.getGui() != null){
+            for (CustomAssembly c : languages){
+                Globals.getGui().getMessagesPane().postMarsMessage("Reloaded language " + c.getName() + " from " + file + "\n");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,314 @@
+   package mars.mips.instructions;
+   import mars.*;
+   import mars.util.*;
+   import mars.assembler.*;
+   import mars.mips.hardware.*;
+   import java.util.*;
+
+/**
+ * A basic instruction template from PseudoOps.txt that has been parsed once into a
+ * list of operations: literal text runs and operand slot extractors such as "RG1",
+ * "VHL2P1" or "LAB".  Expanding the template for a particular extended statement is
+ * then a single pass over the operation list, rather than a search-and-replace over
+ * the template text for every marker that might occur in it.  See
+ * {@link ExtendedInstruction#makeTemplateSubstitutions} for the meaning of each marker.
+ *
+ * @see ExtendedInstruction
+ **/
+
+    public class PseudoTemplate {
+
+      // Operation codes.  Each operation reads one or two tokens of the extended
+      // statement (the "slot" and, for label+offset forms, the addend in token 4).
+      private static final int LITERAL = 0;     // text copied as is
+      private static final int OPERAND = 1;     // RGn, OPn
+      private static final int NEXT_REG = 2;    // NRn
+      private static final int HIGH_ADJ = 3;    // LHn, LHnPm, VHn, VHnPm, LHPA, LHPAPm
+      private static final int HIGH = 4;        // VHLn, VHLnPm, LHL, LHPN
+      private static final int LOW = 5;         // LLn, LLnPm, VLn, VLnPm, LLP, LLPPm
+      private static final int LOW_UNSIGNED = 6;// LLnU, VLnU, VLnPmU, LLPU
+      private static final int BRANCH_OFFSET = 7;// BROFFnm
+      private static final int SUB_FROM_32 = 8; // S32
+      private static final int LABEL = 9;       // LAB
+
+      private static final int NO_ADDEND = -1;
+      private static final int LAST_TOKEN = -1;
+
+      private String template;
+      private boolean delayedBranchNop;
+      private int[] kind;
+      private int[] slot;
+      private int[] addendSlot;
+      private int[] constant;
+      private String[] text;
+
+   /**
+    * Parse the given template into its list of operations.
+    *
+    * @param template a String containing template for basic statement.
+    */
+       public PseudoTemplate(String template) {
+         this.template = template;
+         this.delayedBranchNop = template.indexOf("DBNOP") >= 0;
+         ArrayList ops = new ArrayList();    // int[] {kind, slot, addendSlot, constant}
+         ArrayList texts = new ArrayList();  // source text of each operation
+         StringBuffer literal = new StringBuffer();
+         int i = 0;
+         while (i < template.length()) {
+            int[] op = new int[5]; // kind, slot, addendSlot, constant, length
+            if (matchMarker(template, i, op)) {
+               if (literal.length() > 0) {
+                  ops.add(new int[] {LITERAL, 0, NO_ADDEND, 0});
+                  texts.add(literal.toString());
+                  literal.setLength(0);
+               }
+               ops.add(op);
+               texts.add(template.substring(i, i + op[4]));
+               i += op[4];
+            }
+            else {
+               literal.append(template.charAt(i));
+               i++;
+            }
+         }
+         if (literal.length() > 0) {
+            ops.add(new int[] {LITERAL, 0, NO_ADDEND, 0});
+            texts.add(literal.toString());
+         }
+         kind = new int[ops.size()];
+         slot = new int[ops.size()];
+         addendSlot = new int[ops.size()];
+         constant = new int[ops.size()];
+         text = (String[]) texts.toArray(new String[texts.size()]);
+         for (int j = 0; j < ops.size(); j++) {
+            int[] op = (int[]) ops.get(j);
+            kind[j] = op[0];
+            slot[j] = op[1];
+            addendSlot[j] = op[2];
+            constant[j] = op[3];
+         }
+      }
+
+   /**
+    * Get the template text this object was parsed from.
+    *
+    * @return the template String.
+    */
+       public String getTemplate() {
+         return template;
+      }
+
+   /**
+    * Determine whether this is the DBNOP template, which generates a "nop" only
+    * when delayed branching is enabled.
+    *
+    * @return true if the template is DBNOP.
+    */
+       public boolean isDelayedBranchNop() {
+         return delayedBranchNop;
+      }
+
+   /**
+    * Substitute operands from the token list of an extended instruction statement into
+    * this template to generate the basic statement.  Produces the same result as
+    * {@link ExtendedInstruction#makeTemplateSubstitutions} on the template text.
+    *
+    * @param program MIPSprogram whose symbol table is used to recover label names.
+    * @param theTokenList a TokenList containing tokens from extended instruction.
+    * @return String representing basic assembler statement, or "" if none is generated.
+    */
+       public String expand(MIPSprogram program, TokenList theTokenList) {
+         if (delayedBranchNop) {
+            return Globals.getSettings().getDelayedBranchingEnabled() ? "nop" : "";
+         }
+         StringBuffer instruction = new StringBuffer(template.length() + 16);
+         boolean labelDone = false;
+         int size = theTokenList.size();
+         for (int j = 0; j < kind.length; j++) {
+            int op = kind[j];
+            if (op == LITERAL) {
+               instruction.append(text[j]);
+               continue;
+            }
+            int tokenIndex = (slot[j] == LAST_TOKEN) ? size - 1 : slot[j];
+            if (op != BRANCH_OFFSET && (tokenIndex < 1 || tokenIndex >= size
+                 || addendSlot[j] >= size || (op == LABEL && labelDone))) {
+               // no such operand in this statement; leave the marker alone.
+               instruction.append(text[j]);
+               continue;
+            }
+            switch (op) {
+               case OPERAND :
+                  instruction.append(theTokenList.get(tokenIndex).getValue());
+                  break;
+               case NEXT_REG :
+                  instruction.append(nextRegister(theTokenList.get(tokenIndex).getValue(), text[j]));
+                  break;
+               case HIGH_ADJ : {
+                     // If bit 15 is 1, that means lower 16 bits will become a negative offset!  To
+                     // compensate if that is the case, we need to add 1 to the high 16 bits.
+                     int value = tokenValue(theTokenList, tokenIndex, addendSlot[j]) + constant[j];
+                     instruction.append((value >> 16) + Binary.bitValue(value, 15));
+                     break;
+                  }
+               case HIGH :
+                  instruction.append((tokenValue(theTokenList, tokenIndex, addendSlot[j]) + constant[j]) >> 16);
+                  break;
+               case LOW :
+                  instruction.append((tokenValue(theTokenList, tokenIndex, addendSlot[j]) + constant[j]) << 16 >> 16);
+                  break;
+               case LOW_UNSIGNED :
+                  instruction.append((tokenValue(theTokenList, tokenIndex, addendSlot[j]) + constant[j]) & 0xffff);
+                  break;
+               case BRANCH_OFFSET :
+                  // text is "BROFF" followed by offset if disabled, then offset if enabled.
+                  instruction.append(text[j].charAt(Globals.getSettings().getDelayedBranchingEnabled() ? 6 : 5));
+                  break;
+               case SUB_FROM_32 :
+                  instruction.append(32 - tokenValue(theTokenList, tokenIndex, NO_ADDEND));
+                  break;
+               case LABEL : {
+                     // label has to be last token.  It has already been translated to address
+                     // by symtab lookup, so I need to get the text label back so parseLine() won't puke.
+                     // Only the first LAB is substituted: a statement has only one label reference.
+                     Symbol sym = program.getLocalSymbolTable().getSymbolGivenAddressLocalOrGlobal(
+                        theTokenList.get(tokenIndex).getValue());
+                     instruction.append((sym == null) ? text[j] : sym.getName());
+                     labelDone = true;
+                     break;
+                  }
+            }
+         }
+         return instruction.toString();
+      }
+
+      // Value of the operand in the given token, plus the value of the addend token if
+      // there is one (the "100000" in "label+100000").  Labels have already been
+      // translated to addresses by symtab lookup.
+       private static int tokenValue(TokenList theTokenList, int tokenIndex, int addendIndex) {
+         try {
+            int value = Binary.stringToInt(theTokenList.get(tokenIndex).getValue());
+            if (addendIndex != NO_ADDEND) {
+               value += Binary.stringToInt(theTokenList.get(addendIndex).getValue());
+            }
+            return value;
+         }
+             catch (NumberFormatException e) {
+               return 0; // this won't happen...
+            }
+      }
+
+      // Next higher register than the one named by token (for "mfc1.d","mtc1.d").
+       private static String nextRegister(String token, String marker) {
+         int regNumber;
+         try { // if token is a RegisterFile register, substitute next higher register
+            regNumber = RegisterFile.getUserRegister(token).getNumber();
+            if (regNumber >= 0) {
+               return "$" + (regNumber + 1);
+            }
+         }
+             catch (NullPointerException e) { // not in RegisterFile, must be Coprocessor1 register
+               regNumber = Coprocessor1.getRegisterNumber(token);
+               if (regNumber >= 0) {
+                  return "$f" + (regNumber + 1);
+               }
+            }
+         return marker;
+      }
+
+      // Recognize a substitution marker starting at position i of the template.  If one is
+      // found, fills in op (kind, slot, addendSlot, constant, length) and returns true.
+      // Longer markers are tried before their prefixes: LHPAPm before LHPA, VHLn before VHn, etc.
+       private static boolean matchMarker(String t, int i, int[] op) {
+         op[2] = NO_ADDEND;
+         op[3] = 0;
+         if (t.startsWith("LHPAP", i) && i + 5 < t.length()) {
+            return set(op, HIGH_ADJ, 2, 4, t.charAt(i + 5) - '0', 6);
+         }
+         if (t.startsWith("LHPA", i)) {
+            return set(op, HIGH_ADJ, 2, 4, 0, 4);
+         }
+         if (t.startsWith("LHPN", i)) {
+            return set(op, HIGH, 2, 4, 0, 4);
+         }
+         if (t.startsWith("LHL", i)) {
+            return set(op, HIGH, 2, NO_ADDEND, 0, 3);
+         }
+         if (t.startsWith("LLPP", i) && i + 4 < t.length()) {
+            return set(op, LOW, 2, 4, t.charAt(i + 4) - '0', 5);
+         }
+         if (t.startsWith("LLPU", i)) {
+            return set(op, LOW_UNSIGNED, 2, 4, 0, 4);
+         }
+         if (t.startsWith("LLP", i)) {
+            return set(op, LOW, 2, 4, 0, 3);
+         }
+         if (t.startsWith("BROFF", i)) {
+            if (i + 7 <= t.length()) {
+               return set(op, BRANCH_OFFSET, 0, NO_ADDEND, 0, 7);
+            }
+            return false;
+         }
+         if (t.startsWith("S32", i)) {
+            return set(op, SUB_FROM_32, LAST_TOKEN, NO_ADDEND, 0, 3);
+         }
+         if (t.startsWith("LAB", i)) {
+            return set(op, LABEL, LAST_TOKEN, NO_ADDEND, 0, 3);
+         }
+         if (t.startsWith("VHL", i) && isDigit(t, i + 3)) {
+            return matchValue(t, i, op, HIGH, HIGH, 3, false);
+         }
+         if (t.startsWith("VH", i) && isDigit(t, i + 2)) {
+            return matchValue(t, i, op, HIGH_ADJ, HIGH_ADJ, 2, false);
+         }
+         if (t.startsWith("VL", i) && isDigit(t, i + 2)) {
+            return matchValue(t, i, op, LOW, LOW_UNSIGNED, 2, true);
+         }
+         if (t.startsWith("LH", i) && isDigit(t, i + 2)) {
+            return matchValue(t, i, op, HIGH_ADJ, HIGH_ADJ, 2, false);
+         }
+         if (t.startsWith("LL", i) && isDigit(t, i + 2)) {
+            return matchValue(t, i, op, LOW, LOW_UNSIGNED, 2, false);
+         }
+         if ((t.startsWith("RG", i) || t.startsWith("OP", i)) && isDigit(t, i + 2)) {
+            return set(op, OPERAND, t.charAt(i + 2) - '0', NO_ADDEND, 0, 3);
+         }
+         if (t.startsWith("NR", i) && isDigit(t, i + 2)) {
+            return set(op, NEXT_REG, t.charAt(i + 2) - '0', NO_ADDEND, 0, 3);
+         }
+         return false;
+      }
+
+      // Match the Xn, XnU, XnPm and (if unsignedAfterAdd) XnPmU forms of a marker whose
+      // prefix X has the given length.  The unsigned form is only recognized directly
+      // after the slot digit, or after the added digit if unsignedAfterAdd is true.
+       private static boolean matchValue(String t, int i, int[] op, int signedKind, int unsignedKind,
+                                         int prefixLength, boolean unsignedAfterAdd) {
+         int slot = t.charAt(i + prefixLength) - '0';
+         int end = i + prefixLength + 1;
+         if (end + 1 < t.length() && t.charAt(end) == 'P') {
+            int add = t.charAt(end + 1) - '0';
+            if (unsignedAfterAdd && end + 2 < t.length() && t.charAt(end + 2) == 'U') {
+               return set(op, unsignedKind, slot, NO_ADDEND, add, end + 3 - i);
+            }
+            return set(op, signedKind, slot, NO_ADDEND, add, end + 2 - i);
+         }
+         if (end < t.length() && t.charAt(end) == 'U' && signedKind != unsignedKind) {
+            return set(op, unsignedKind, slot, NO_ADDEND, 0, end + 1 - i);
+         }
+         return set(op, signedKind, slot, NO_ADDEND, 0, end - i);
+      }
+
+       private static boolean set(int[] op, int kind, int slot, int addendSlot, int constant, int length) {
+         op[0] = kind;
+         op[1] = slot;
+         op[2] = addendSlot;
+         op[3] = constant;
+         op[4] = length;
+         return true;
+      }
+
+       private static boolean isDigit(String t, int i) {
+         return i < t.length() && Character.isDigit(t.charAt(i));
+      }
+   }
@@ -0,0 +1,25 @@
+package mars.mips.instructions;
+import mars.*;
+
+/**
+ * SimulationCode for an instruction whose operands are registers, such as "add $t1,$t2,$t3".
+ * The operands are passed as ints, in the order they are written, from fields the statement
+ * fills in when it is assembled, so the instruction doesn't unpack statement.getOperands()
+ * on every step.  An operand the instruction doesn't have is passed as 0.
+ * @see SimulationCode
+ */
+public interface RTypeSimulationCode extends SimulationCode{
+   /**
+    * Simulates the execution of the instruction.
+    * @param statement The statement being executed, for reporting exceptions.
+    * @param rd First operand: register number.
+    * @param rs Second operand: register number.
+    * @param rt Third operand: register number.
+    * @throws ProcessingException This is a run-time exception generated during simulation.
+    */
+   public void simulate(ProgramStatement statement, int rd, int rs, int rt) throws ProcessingException;
+
+   default void simulate(ProgramStatement statement) throws ProcessingException{
+      simulate(statement, statement.getFirstOperand(), statement.getSecondOperand(), statement.getThirdOperand());
+   }
+}
@@ -0,0 +1,709 @@
+package mars.mips.instructions;
+import mars.*;
+import mars.mips.hardware.*;
+import mars.simulator.Exceptions;
+import mars.util.*;
+import java.util.*;
+
+/**
+ * Compiles the semantics of an instruction in a language specification file into SimulationCode.
+ * The semantics are a list of statements separated by ';' or given on separate lines:
+ * <pre>
+ *   target = expression          target: an operand, a register such as $ra, a local, or word[addr], half[addr], byte[addr]
+ *   if expression statement      runs the statement if the expression is not 0
+ *   branch expression            branch relative to the next instruction, as beq does with its label
+ *   jump expression              jump to an address
+ *   print expression             print an integer, or print "text"
+ *   trap "message"               raise a trap exception, as teq does
+ * </pre>
+ * Expressions are 32-bit integers with the operators of Java and their precedence (|| && | ^ &amp;
+ * == != &lt; &lt;= &gt; &gt;= &lt;&lt; &gt;&gt; &gt;&gt;&gt; + - * / % and unary - ~ !).  A comparison gives 1 or 0, and
+ * dividing by 0 gives 0.  They may use numbers, operand names (a register operand stands for the register's
+ * contents, any other operand for its value), registers, locals, pc (the address of the next
+ * instruction), memory reads word[addr], half[addr] and byte[addr], and the functions sext8(x),
+ * sext16(x) and ltu(x,y) (unsigned less than).  A name that is not an operand becomes a local
+ * the first time it is assigned, and is 0 until then each time the instruction runs.
+ * <p>
+ * Each statement and expression is compiled to a small object specialized for what it does, such
+ * as adding two register operands, so running an instruction involves no parsing or lookups.
+ * @see SpecAssembly
+ */
+class SemanticsCompiler{
+   /** Kind of an operand that is an integer register. */
+   static final int REGISTER = 0;
+   /** Kind of an operand that is a floating point register. */
+   static final int FP_REGISTER = 1;
+   /** Kind of an operand that is an immediate, label or other value. */
+   static final int VALUE = 2;
+
+   private static final String OPERATORS = ">>> << >> <= >= == != && || + - * / % & | ^ ~ ! < > = ( ) [ ] , ;";
+
+   private String[] operandNames;
+   private int[] operandKinds;
+   private ArrayList<String> locals = new ArrayList<String>();
+   private ArrayList<Stmt> body = new ArrayList<Stmt>();
+
+   // Tokens of the text being compiled
+   private ArrayList<String> tokens;
+   private int position;
+
+   /**
+    * @param operandNames Names by which the semantics refer to the instruction's operands, in order.
+    * @param operandKinds Kind of each operand: REGISTER, FP_REGISTER or VALUE.
+    */
+   SemanticsCompiler(String[] operandNames, int[] operandKinds){
+      this.operandNames = operandNames;
+      this.operandKinds = operandKinds;
+   }
+
+   /**
+    * Compiles statements and adds them to the end of the instruction's semantics.
+    * @param text One or more statements separated by ';'.
+    * @throws IllegalArgumentException with a message describing the error if the text is not valid.
+    */
+   void addStatements(String text){
+      tokens = tokenize(text);
+      position = 0;
+      while (position < tokens.size()){
+         if (accept(";")){
+            continue;
+         }
+         body.add(statement());
+         if (position < tokens.size()){
+            expect(";");
+         }
+      }
+   }
+
+   /**
+    * @return SimulationCode that runs the statements added so far.
+    */
+   SimulationCode getSimulationCode(){
+      final Stmt[] statements = body.toArray(new Stmt[body.size()]);
+      int localCount = locals.size();
+      if (statements.length == 1 && localCount == 0){
+         final Stmt only = statements[0];
+         return new SimulationCode(){
+            public void simulate(ProgramStatement statement) throws ProcessingException{
+               only.exec(statement, statement.getOperands(), null);
+            }
+         };
+      }
+      // Only the simulator thread runs instructions, one at a time, so the locals can be reused.
+      // They are cleared each time, so a local read before it is assigned is always 0.
+      final int[] values = (localCount == 0) ? null : new int[localCount];
+      return new SimulationCode(){
+         public void simulate(ProgramStatement statement) throws ProcessingException{
+            int[] operands = statement.getOperands();
+            if (values != null){
+               Arrays.fill(values, 0);
+            }
+            for (int i = 0; i < statements.length; i++){
+               statements[i].exec(statement, operands, values);
+            }
+         }
+      };
+   }
+
+   ///////////////////////////////  Parsing  ///////////////////////////////
+
+   private Stmt statement(){
+      String word = next();
+      if (word.equals("if")){
+         final Expr condition = expression();
+         final Stmt then = statement();
+         return new Stmt(){
+            void exec(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+               if (condition.eval(s, ops, loc) != 0){
+                  then.exec(s, ops, loc);
+               }
+            }
+         };
+      }
+      if (word.equals("branch")){
+         final Expr displacement = expression();
+         return new Stmt(){
+            void exec(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+               Globals.instructionSet.processBranch(displacement.eval(s, ops, loc));
+            }
+         };
+      }
+      if (word.equals("jump")){
+         final Expr address = expression();
+         return new Stmt(){
+            void exec(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+               Globals.instructionSet.processJump(address.eval(s, ops, loc));
+            }
+         };
+      }
+      if (word.equals("print")){
+         if (peek().startsWith("\"")){
+            final String text = string(next());
+            return new Stmt(){
+               void exec(ProgramStatement s, int[] ops, int[] loc){
+                  SystemIO.printString(text);
+               }
+            };
+         }
+         final Expr value = expression();
+         return new Stmt(){
+            void exec(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+               SystemIO.printString(Integer.toString(value.eval(s, ops, loc)));
+            }
+         };
+      }
+      if (word.equals("trap")){
+         final String message = string(next());
+         return new Stmt(){
+            void exec(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+               throw new ProcessingException(s, message, Exceptions.TRAP_EXCEPTION);
+            }
+         };
+      }
+      return assignment(word);
+   }
+
+   private Stmt assignment(String target){
+      if (isMemory(target)){
+         expect("[");
+         final Expr address = expression();
+         expect("]");
+         expect("=");
+         final Expr value = expression();
+         final int size = memorySize(target);
+         return new Stmt(){
+            void exec(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+               int a = address.eval(s, ops, loc);
+               int v = value.eval(s, ops, loc);
+               try {
+                  if (size == 4){
+                     Globals.memory.setWord(a, v);
+                  } else if (size == 2){
+                     Globals.memory.setHalf(a, v);
+                  } else{
+                     Globals.memory.setByte(a, v);
+                  }
+               } catch(AddressErrorException e){
+                  throw new ProcessingException(s, e);
+               }
+            }
+         };
+      }
+      expect("=");
+      final Expr value = expression();
+      int operand = operandIndex(target);
+      if (operand >= 0){
+         final int i = operand;
+         if (operandKinds[i] == REGISTER){
+            return new Stmt(){
+               void exec(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  RegisterFile.updateRegister(ops[i], value.eval(s, ops, loc));
+               }
+            };
+         }
+         if (operandKinds[i] == FP_REGISTER){
+            return new Stmt(){
+               void exec(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  Coprocessor1.updateRegister(ops[i], value.eval(s, ops, loc));
+               }
+            };
+         }
+         throw new IllegalArgumentException("operand " + target + " is not a register and cannot be assigned");
+      }
+      if (target.startsWith("$")){
+         final int number = register(target);
+         return new Stmt(){
+            void exec(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+               RegisterFile.updateRegister(number, value.eval(s, ops, loc));
+            }
+         };
+      }
+      if (!isName(target) || isReserved(target)){
+         throw new IllegalArgumentException("cannot assign to \"" + target + "\"");
+      }
+      if (!locals.contains(target)){
+         locals.add(target);
+      }
+      final int local = locals.indexOf(target);
+      return new Stmt(){
+         void exec(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+            loc[local] = value.eval(s, ops, loc);
+         }
+      };
+   }
+
+   private Expr expression(){
+      return or();
+   }
+
+   private Expr or(){
+      Expr left = and();
+      while (accept("||")){
+         final Expr a = left, b = and();
+         left = fold(new Expr(){
+            int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+               return (a.eval(s, ops, loc) != 0 || b.eval(s, ops, loc) != 0) ? 1 : 0;
+            }
+         }, a, b);
+      }
+      return left;
+   }
+
+   private Expr and(){
+      Expr left = binaryLevel(0);
+      while (accept("&&")){
+         final Expr a = left, b = binaryLevel(0);
+         left = fold(new Expr(){
+            int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+               return (a.eval(s, ops, loc) != 0 && b.eval(s, ops, loc) != 0) ? 1 : 0;
+            }
+         }, a, b);
+      }
+      return left;
+   }
+
+   // Binary operators from lowest to highest precedence, below && and ||.
+   private static final String[][] LEVELS = {
+      {"|"}, {"^"}, {"&"}, {"==", "!="}, {"<", "<=", ">", ">="}, {"<<", ">>", ">>>"}, {"+", "-"}, {"*", "/", "%"}
+   };
+
+   private Expr binaryLevel(int level){
+      if (level == LEVELS.length){
+         return unary();
+      }
+      Expr left = binaryLevel(level + 1);
+      while (position < tokens.size() && Arrays.asList(LEVELS[level]).contains(peek())){
+         String operator = next();
+         left = binary(operator, left, binaryLevel(level + 1));
+      }
+      return left;
+   }
+
+   private Expr unary(){
+      if (accept("-")){
+         final Expr a = unary();
+         return fold(new Expr(){
+            int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+               return -a.eval(s, ops, loc);
+            }
+         }, a, a);
+      }
+      if (accept("~")){
+         final Expr a = unary();
+         return fold(new Expr(){
+            int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+               return ~a.eval(s, ops, loc);
+            }
+         }, a, a);
+      }
+      if (accept("!")){
+         final Expr a = unary();
+         return fold(new Expr(){
+            int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+               return (a.eval(s, ops, loc) == 0) ? 1 : 0;
+            }
+         }, a, a);
+      }
+      return primary();
+   }
+
+   private Expr primary(){
+      String token = next();
+      if (token.equals("(")){
+         Expr e = expression();
+         expect(")");
+         return e;
+      }
+      if (Character.isDigit(token.charAt(0))){
+         try {
+            return new Constant(Binary.stringToInt(token));
+         } catch(NumberFormatException e){
+            throw new IllegalArgumentException("invalid number \"" + token + "\"");
+         }
+      }
+      if (token.startsWith("$")){
+         final int number = register(token);
+         return new Expr(){
+            int eval(ProgramStatement s, int[] ops, int[] loc){
+               return RegisterFile.getValue(number);
+            }
+         };
+      }
+      if (isMemory(token)){
+         expect("[");
+         final Expr address = expression();
+         expect("]");
+         final int size = memorySize(token);
+         return new Expr(){
+            int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+               int a = address.eval(s, ops, loc);
+               try {
+                  return (size == 4) ? Globals.memory.getWord(a) : (size == 2) ? Globals.memory.getHalf(a) : Globals.memory.getByte(a);
+               } catch(AddressErrorException e){
+                  throw new ProcessingException(s, e);
+               }
+            }
+         };
+      }
+      if (token.equals("sext8") || token.equals("sext16")){
+         expect("(");
+         final Expr a = expression();
+         expect(")");
+         final int shift = token.equals("sext8") ? 24 : 16;
+         return fold(new Expr(){
+            int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+               return a.eval(s, ops, loc) << shift >> shift;
+            }
+         }, a, a);
+      }
+      if (token.equals("ltu")){
+         expect("(");
+         final Expr a = expression();
+         expect(",");
+         final Expr b = expression();
+         expect(")");
+         return fold(new Expr(){
+            int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+               return ((a.eval(s, ops, loc) ^ Integer.MIN_VALUE) < (b.eval(s, ops, loc) ^ Integer.MIN_VALUE)) ? 1 : 0;
+            }
+         }, a, b);
+      }
+      if (token.equals("pc")){
+         return new Expr(){
+            int eval(ProgramStatement s, int[] ops, int[] loc){
+               return RegisterFile.getProgramCounter();
+            }
+         };
+      }
+      int operand = operandIndex(token);
+      if (operand >= 0){
+         return operand(operand);
+      }
+      int local = locals.indexOf(token);
+      if (local >= 0){
+         final int i = local;
+         return new Expr(){
+            int eval(ProgramStatement s, int[] ops, int[] loc){
+               return loc[i];
+            }
+         };
+      }
+      if (isName(token)){
+         throw new IllegalArgumentException("\"" + token + "\" is not an operand or a local that has been assigned");
+      }
+      throw new IllegalArgumentException("unexpected \"" + token + "\"");
+   }
+
+   private Expr operand(final int i){
+      if (operandKinds[i] == REGISTER){
+         return new Expr(){
+            int eval(ProgramStatement s, int[] ops, int[] loc){
+               return RegisterFile.getValue(ops[i]);
+            }
+         };
+      }
+      if (operandKinds[i] == FP_REGISTER){
+         return new Expr(){
+            int eval(ProgramStatement s, int[] ops, int[] loc){
+               return Coprocessor1.getValue(ops[i]);
+            }
+         };
+      }
+      return new Expr(){
+         int eval(ProgramStatement s, int[] ops, int[] loc){
+            return ops[i];
+         }
+      };
+   }
+
+   // A separate class for each operator, so each node does one thing.
+   private Expr binary(String operator, final Expr a, final Expr b){
+      Expr e;
+      switch (operator){
+         case "|":
+            e = new Expr(){
+               int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  return a.eval(s, ops, loc) | b.eval(s, ops, loc);
+               }
+            };
+            break;
+         case "^":
+            e = new Expr(){
+               int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  return a.eval(s, ops, loc) ^ b.eval(s, ops, loc);
+               }
+            };
+            break;
+         case "&":
+            e = new Expr(){
+               int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  return a.eval(s, ops, loc) & b.eval(s, ops, loc);
+               }
+            };
+            break;
+         case "==":
+            e = new Expr(){
+               int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  return (a.eval(s, ops, loc) == b.eval(s, ops, loc)) ? 1 : 0;
+               }
+            };
+            break;
+         case "!=":
+            e = new Expr(){
+               int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  return (a.eval(s, ops, loc) != b.eval(s, ops, loc)) ? 1 : 0;
+               }
+            };
+            break;
+         case "<":
+            e = new Expr(){
+               int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  return (a.eval(s, ops, loc) < b.eval(s, ops, loc)) ? 1 : 0;
+               }
+            };
+            break;
+         case "<=":
+            e = new Expr(){
+               int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  return (a.eval(s, ops, loc) <= b.eval(s, ops, loc)) ? 1 : 0;
+               }
+            };
+            break;
+         case ">":
+            e = new Expr(){
+               int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  return (a.eval(s, ops, loc) > b.eval(s, ops, loc)) ? 1 : 0;
+               }
+            };
+            break;
+         case ">=":
+            e = new Expr(){
+               int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  return (a.eval(s, ops, loc) >= b.eval(s, ops, loc)) ? 1 : 0;
+               }
+            };
+            break;
+         case "<<":
+            e = new Expr(){
+               int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  return a.eval(s, ops, loc) << b.eval(s, ops, loc);
+               }
+            };
+            break;
+         case ">>":
+            e = new Expr(){
+               int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  return a.eval(s, ops, loc) >> b.eval(s, ops, loc);
+               }
+            };
+            break;
+         case ">>>":
+            e = new Expr(){
+               int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  return a.eval(s, ops, loc) >>> b.eval(s, ops, loc);
+               }
+            };
+            break;
+         case "+":
+            e = new Expr(){
+               int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  return a.eval(s, ops, loc) + b.eval(s, ops, loc);
+               }
+            };
+            break;
+         case "-":
+            e = new Expr(){
+               int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  return a.eval(s, ops, loc) - b.eval(s, ops, loc);
+               }
+            };
+            break;
+         case "*":
+            e = new Expr(){
+               int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  return a.eval(s, ops, loc) * b.eval(s, ops, loc);
+               }
+            };
+            break;
+         case "/":
+            e = new Expr(){
+               int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  int divisor = b.eval(s, ops, loc);
+                  int dividend = a.eval(s, ops, loc);
+                  return (divisor == 0) ? 0 : dividend / divisor;
+               }
+            };
+            break;
+         default: // "%"
+            e = new Expr(){
+               int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException{
+                  int divisor = b.eval(s, ops, loc);
+                  int dividend = a.eval(s, ops, loc);
+                  return (divisor == 0) ? 0 : dividend % divisor;
+               }
+            };
+      }
+      return fold(e, a, b);
+   }
+
+   // Replaces an expression whose operands are constants with its value.
+   private static Expr fold(Expr e, Expr a, Expr b){
+      if (a instanceof Constant && b instanceof Constant){
+         try {
+            return new Constant(e.eval(null, null, null));
+         } catch(ProcessingException pe){
+            // Constants cannot throw.
+         }
+      }
+      return e;
+   }
+
+   private int operandIndex(String name){
+      for (int i = 0; i < operandNames.length; i++){
+         if (operandNames[i].equals(name)){
+            return i;
+         }
+      }
+      return -1;
+   }
+
+   private static int register(String name){
+      Register r = RegisterFile.getUserRegister(name);
+      if (r == null){
+         throw new IllegalArgumentException("\"" + name + "\" is not a register");
+      }
+      return r.getNumber();
+   }
+
+   private static boolean isMemory(String token){
+      return token.equals("word") || token.equals("half") || token.equals("byte");
+   }
+
+   private static int memorySize(String token){
+      return token.equals("word") ? 4 : token.equals("half") ? 2 : 1;
+   }
+
+   private static boolean isReserved(String token){
+      return isMemory(token) || token.equals("if") || token.equals("branch") || token.equals("jump") || token.equals("print")
+         || token.equals("trap") || token.equals("pc") || token.equals("sext8") || token.equals("sext16") || token.equals("ltu");
+   }
+
+   private static boolean isName(String token){
+      if (!Character.isLetter(token.charAt(0)) && token.charAt(0) != '_'){
+         return false;
+      }
+      for (int i = 1; i < token.length(); i++){
+         if (!Character.isLetterOrDigit(token.charAt(i)) && token.charAt(i) != '_'){
+            return false;
+         }
+      }
+      return true;
+   }
+
+   ///////////////////////////////  Tokens  ///////////////////////////////
+
+   private static ArrayList<String> tokenize(String text){
+      ArrayList<String> result = new ArrayList<String>();
+      String[] operators = OPERATORS.split(" ");
+      int i = 0;
+      while (i < text.length()){
+         char c = text.charAt(i);
+         if (Character.isWhitespace(c)){
+            i++;
+            continue;
+         }
+         int start = i;
+         if (c == '"'){
+            i++;
+            while (i < text.length() && text.charAt(i) != '"'){
+               i += (text.charAt(i) == '\\') ? 2 : 1;
+            }
+            if (i >= text.length()){
+               throw new IllegalArgumentException("unterminated string");
+            }
+            i++;
+         } else if (Character.isLetterOrDigit(c) || c == '_' || c == '$'){
+            i++;
+            while (i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_')){
+               i++;
+            }
+         } else{
+            for (String operator : operators){
+               if (text.startsWith(operator, i)){
+                  i += operator.length();
+                  break;
+               }
+            }
+            if (i == start){
+               throw new IllegalArgumentException("unexpected character '" + c + "'");
+            }
+         }
+         result.add(text.substring(start, i));
+      }
+      return result;
+   }
+
+   // Removes the quotes of a string literal and replaces its escapes.
+   private static String string(String token){
+      if (!token.startsWith("\"")){
+         throw new IllegalArgumentException("expected a string in quotes, not \"" + token + "\"");
+      }
+      StringBuilder result = new StringBuilder();
+      for (int i = 1; i < token.length() - 1; i++){
+         char c = token.charAt(i);
+         if (c == '\\'){
+            c = token.charAt(++i);
+            c = (c == 'n') ? '\n' : (c == 't') ? '\t' : c;
+         }
+         result.append(c);
+      }
+      return result.toString();
+   }
+
+   private String peek(){
+      return (position < tokens.size()) ? tokens.get(position) : "";
+   }
+
+   private String next(){
+      if (position >= tokens.size()){
+         throw new IllegalArgumentException("unexpected end of statement");
+      }
+      return tokens.get(position++);
+   }
+
+   private boolean accept(String token){
+      if (peek().equals(token)){
+         position++;
+         return true;
+      }
+      return false;
+   }
+
+   private void expect(String token){
+      if (!accept(token)){
+         throw new IllegalArgumentException("expected \"" + token + "\"" + (position < tokens.size() ? " before \"" + peek() + "\"" : " at end"));
+      }
+   }
+
+   ///////////////////////////////  Compiled code  ///////////////////////////////
+
+   private abstract static class Expr{
+      abstract int eval(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException;
+   }
+
+   private static class Constant extends Expr{
+      private int value;
+
+      private Constant(int value){
+         this.value = value;
+      }
+
+      int eval(ProgramStatement s, int[] ops, int[] loc){
+         return value;
+      }
+   }
+
+   private abstract static class Stmt{
+      abstract void exec(ProgramStatement s, int[] ops, int[] loc) throws ProcessingException;
+   }
+}
@@ -36,6 +36,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  * 
  * @author Pete Sanderson 
  * @version August 2003
+ * @see RTypeSimulationCode
+ * @see ITypeSimulationCode
+ * @see JTypeSimulationCode
  * 
  */
 
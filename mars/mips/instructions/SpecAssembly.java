@@ -0,0 +1,227 @@
+package mars.mips.instructions;
+import mars.mips.hardware.*;
+import java.util.*;
+import java.io.*;
+
+/**
+ * A custom language read from a specification file in the customlangs folder instead of compiled
+ * Java code, so a language can be written and changed without running javac.  Each line of the
+ * file is "key: value", and lines starting with # are comments.  For example:
+ * <pre>
+ * name: Tiny
+ * description: A language with two instructions
+ *
+ * instruction: plus $t1,$t2,$t3
+ * description: Addition : set $t1 to ($t2 plus $t3)
+ * format: R
+ * mask: 000000 sssss ttttt fffff 00000 100000
+ * do: rd = rs + rt
+ *
+ * instruction: beq $t1,$t2,label
+ * format: I_BRANCH
+ * mask: 000100 fffff sssss tttttttttttttttt
+ * do: if rs == rt branch imm
+ * </pre>
+ * An instruction's format is R, I, I_BRANCH or J.  Its semantics, given by one or more "do" lines,
+ * refer to the operands of the example by name.  The names are rd, rs, rt for R format; rt, rs, imm
+ * for I format; rs, rt, imm for I_BRANCH format; and target for J format, unless given in order by
+ * an "operands" line such as "operands: rt, offset, base" for "lw $t1,-100($t2)".  The statements
+ * that can be used are described in SemanticsCompiler.  Each instruction is compiled when the language
+ * is first selected; an instruction with an error is reported and left out.
+ * @see SemanticsCompiler
+ * @see LanguageLoader
+ */
+public class SpecAssembly extends CustomAssembly{
+   private String fileName;
+   private String name;
+   private String description = "";
+   private ArrayList<String> lines = new ArrayList<String>();
+
+   /**
+    * Reads a language specification file.  Its instructions are not compiled until the
+    * language's instructions are needed.
+    * @param file The specification file.
+    * @throws IOException if the file cannot be read.
+    */
+   public SpecAssembly(File file) throws IOException{
+      fileName = file.getName();
+      name = fileName.contains(".") ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName;
+      BufferedReader in = new BufferedReader(new FileReader(file));
+      try {
+         String line;
+         while ((line = in.readLine()) != null){
+            lines.add(line);
+         }
+      } finally {
+         in.close();
+      }
+      for (String line : lines){
+         String key = key(line);
+         if (key == null){
+            continue;
+         }
+         if (key.equals("instruction")){
+            break;
+         }
+         if (key.equals("name")){
+            name = value(line);
+         } else if (key.equals("description")){
+            description = value(line);
+         }
+      }
+   }
+
+   public String getName(){
+      return name;
+   }
+
+   public String getDescription(){
+      return description;
+   }
+
+   /**
+    * @return The name of the specification file this language was read from.
+    */
+   public String getFileName(){
+      return fileName;
+   }
+
+   protected void populate(){
+      Block block = null;
+      for (int i = 0; i < lines.size(); i++){
+         String key = key(lines.get(i));
+         if (key == null){
+            continue;
+         }
+         String value = value(lines.get(i));
+         if (key.equals("instruction")){
+            addInstruction(block);
+            block = new Block(i + 1, value);
+         } else if (key.length() == 0){
+            error(i + 1, "expected \"key: value\"");
+         } else if (block == null){
+            if (!key.equals("name") && !key.equals("description")){
+               error(i + 1, "\"" + key + "\" must follow an instruction line");
+            }
+         } else if (key.equals("description")){
+            block.description = value;
+         } else if (key.equals("format")){
+            block.format = value;
+         } else if (key.equals("mask")){
+            block.mask = value;
+         } else if (key.equals("operands")){
+            block.operands = value;
+         } else if (key.equals("do")){
+            block.semantics.add(value);
+            block.semanticsLines.add(i + 1);
+         } else{
+            error(i + 1, "unknown key \"" + key + "\"");
+         }
+      }
+      addInstruction(block);
+   }
+
+   // Compiles an instruction and adds it to instructionList, or reports why it cannot.
+   private void addInstruction(Block block){
+      if (block == null){
+         return;
+      }
+      BasicInstructionFormat format;
+      String formatName = (block.format == null) ? "R" : block.format.toUpperCase();
+      String defaultNames;
+      if (formatName.equals("R")){
+         format = BasicInstructionFormat.R_FORMAT;
+         defaultNames = "rd, rs, rt";
+      } else if (formatName.equals("I")){
+         format = BasicInstructionFormat.I_FORMAT;
+         defaultNames = "rt, rs, imm";
+      } else if (formatName.equals("I_BRANCH")){
+         format = BasicInstructionFormat.I_BRANCH_FORMAT;
+         defaultNames = "rs, rt, imm";
+      } else if (formatName.equals("J")){
+         format = BasicInstructionFormat.J_FORMAT;
+         defaultNames = "target";
+      } else{
+         error(block.line, "format must be R, I, I_BRANCH or J, not \"" + block.format + "\"");
+         return;
+      }
+      if (block.mask == null || block.mask.replaceAll(" ", "").length() != Instruction.INSTRUCTION_LENGTH_BITS){
+         error(block.line, "instruction needs a mask of " + Instruction.INSTRUCTION_LENGTH_BITS + " bits");
+         return;
+      }
+
+      // Operands of the example, e.g. "$t1", "-100", "$t2" for "lw $t1,-100($t2)"
+      String example = block.example.trim();
+      String[] exampleOperands = (example.indexOf(' ') < 0) ? new String[0]
+         : example.substring(example.indexOf(' ') + 1).trim().split("[\\s,()]+");
+      if (exampleOperands.length == 1 && exampleOperands[0].length() == 0){
+         exampleOperands = new String[0];
+      }
+      int[] kinds = new int[exampleOperands.length];
+      for (int i = 0; i < exampleOperands.length; i++){
+         if (Coprocessor1.getRegister(exampleOperands[i]) != null){
+            kinds[i] = SemanticsCompiler.FP_REGISTER;
+         } else if (exampleOperands[i].startsWith("$")){
+            kinds[i] = SemanticsCompiler.REGISTER;
+         } else{
+            kinds[i] = SemanticsCompiler.VALUE;
+         }
+      }
+      String[] names = ((block.operands == null) ? defaultNames : block.operands).trim().split("\\s*,\\s*");
+      if (block.operands != null && names.length != exampleOperands.length){
+         error(block.line, "operands line names " + names.length + " operands but the example has " + exampleOperands.length);
+         return;
+      }
+      if (names.length > exampleOperands.length){
+         names = Arrays.copyOf(names, exampleOperands.length);
+      }
+
+      SemanticsCompiler compiler = new SemanticsCompiler(names, kinds);
+      for (int i = 0; i < block.semantics.size(); i++){
+         try {
+            compiler.addStatements(block.semantics.get(i));
+         } catch(IllegalArgumentException e){
+            error(block.semanticsLines.get(i), e.getMessage());
+            return;
+         }
+      }
+      instructionList.add(new BasicInstruction(example, block.description, format, block.mask, compiler.getSimulationCode()));
+   }
+
+   private void error(int line, String message){
+      System.out.println("Error in language file " + fileName + " line " + line + ": " + message);
+   }
+
+   // Key of a "key: value" line, or null for a blank or comment line.
+   private static String key(String line){
+      String trimmed = line.trim();
+      if (trimmed.length() == 0 || trimmed.startsWith("#")){
+         return null;
+      }
+      if (trimmed.indexOf(':') < 0){
+         return "";
+      }
+      return trimmed.substring(0, trimmed.indexOf(':')).trim().toLowerCase();
+   }
+
+   private static String value(String line){
+      return line.substring(line.indexOf(':') + 1).trim();
+   }
+
+   // The lines describing one instruction
+   private static class Block{
+      private int line;
+      private String example;
+      private String description = "";
+      private String format;
+      private String mask;
+      private String operands;
+      private ArrayList<String> semantics = new ArrayList<String>();
+      private ArrayList<Integer> semanticsLines = new ArrayList<Integer>();
+
+      private Block(int line, String example){
+         this.line = line;
+         this.example = example;
+      }
+   }
+}
@@ -43,66 +43,123 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     
     class SyscallLoader {
       
-      private static final String CLASS_PREFIX = "mars.mips.instructions.syscalls.";
       private static final String SYSCALLS_DIRECTORY_PATH = "mars/mips/instructions/syscalls";
-      private static final String SYSCALL_INTERFACE = "Syscall.class";
-      private static final String SYSCALL_ABSTRACT = "AbstractSyscall.class";
-      private static final String CLASS_EXTENSION = "class";
+      
+      // Syscall numbers up to this are looked up in syscallTable, larger or negative ones in syscallOverflow
+      private static final int MAX_TABLE_NUMBER = 1023;
       
       private ArrayList syscallList;
+      private boolean memorySyscallsLoaded; // whether MemCopy, MemSet, MemCompare and StrLen are in syscallList
+      private Syscall[] syscallTable;  // indexed by service number
+      private HashMap syscallOverflow; // Integer service number to Syscall
    	
    /*
       *  Dynamically loads Syscalls into an ArrayList.  This method is adapted from
       *  the loadGameControllers() method in Bret Barker's GameServer class.
       *  Barker (bret@hypefiend.com) is co-author of the book "Developing Games
       *  in Java".  Also see the "loadMarsTools()" method from ToolLoader class.
+      *  Called at startup, so a syscall that cannot be loaded ends MARS.
       */
        void loadSyscalls() {
-         syscallList = new ArrayList();
-         // grab all class files in the same directory as Syscall
-         ArrayList candidates = FilenameFinder.getFilenameList(this.getClass( ).getClassLoader(),
-                                              SYSCALLS_DIRECTORY_PATH, CLASS_EXTENSION);
-		   HashMap syscalls = new HashMap();
-         for( int i = 0; i < candidates.size(); i++) {
-            String file = (String) candidates.get(i); 
-				// Do not add class if already encountered (happens if run in MARS development directory)
-				if (syscalls.containsKey(file)) {
-				  continue;
-				} else {
-				   syscalls.put(file,file);
-				}
-            if ((!file.equals(SYSCALL_INTERFACE)) &&
-               	  (!file.equals(SYSCALL_ABSTRACT)) ) {
-               try {
-                  // grab the class, make sure it implements Syscall, instantiate, add to list
-                  String syscallClassName = CLASS_PREFIX+file.substring(0, file.indexOf(CLASS_EXTENSION)-1);
-                  Class clas = Class.forName(syscallClassName);
-                  if (!Syscall.class.isAssignableFrom(clas)) {
-                     continue;
-                  }
-                  Syscall syscall = (Syscall) clas.newInstance();
-                  if (findSyscall(syscall.getNumber()) == null) {
-                     syscallList.add(syscall);
-                  } 
-                  else {
-                     throw new Exception("Duplicate service number: "+syscall.getNumber()+
-                            " already registered to "+
-                            findSyscall(syscall.getNumber()).getName());
-                  }
+         boolean memorySyscalls = Globals.getSettings().getBooleanSetting(Settings.MEMORY_SYSCALLS_ENABLED);
+         try {
+            useSyscalls(createSyscalls(memorySyscalls), memorySyscalls);
+         } 
+             catch (Exception e) {
+               System.out.println(e.getMessage());
+               System.exit(0);
+            }
+      }
+      
+   /*
+      *  Loads the syscalls again with or without the memory syscalls.  Returns null,
+      *  or the reason they cannot be loaded that way, such as another syscall having
+      *  one of their numbers.  In that case the syscalls are left as they were.
+      */
+       String setMemorySyscalls(boolean enabled) {
+         if (enabled == memorySyscallsLoaded) {
+            return null;
+         }
+         try {
+            useSyscalls(createSyscalls(enabled), enabled);
+         } 
+             catch (Exception e) {
+               return e.getMessage();
+            }
+         return null;
+      }
+      
+       // Creates the syscalls found by the plugin registry, with their numbers overridden
+       // as the config file says.  Throws an Exception saying what is wrong if they cannot
+       // all be created or two have the same number.
+       private ArrayList createSyscalls(boolean memorySyscalls) throws Exception {
+         ArrayList syscalls = new ArrayList();
+         ArrayList omittedNames = new ArrayList(); // names of the syscalls left out because they are not enabled
+         // grab all Syscall classes in the same directory as Syscall, as found by the plugin registry
+         ArrayList syscallClasses = PluginRegistry.getPluginClasses(this.getClass( ).getClassLoader(),
+                                              SYSCALLS_DIRECTORY_PATH, Syscall.class, null);
+         for( int i = 0; i < syscallClasses.size(); i++) {
+            String syscallClassName = ((String[]) syscallClasses.get(i))[0];
+            try {
+               // instantiate, add to list
+               Syscall syscall = (Syscall) Class.forName(syscallClassName).newInstance();
+               if (isMemorySyscall(syscall) && !memorySyscalls) {
+                  omittedNames.add(syscall.getName()); // its number is free for another syscall
                } 
-                   catch (Exception e) {
-                     System.out.println("Error instantiating Syscall from file " + file + ": "+e);
-                     System.exit(0);
-                  }
+               else if (findInList(syscalls, syscall.getNumber()) == null) {
+                  syscalls.add(syscall);
+               } 
+               else {
+                  throw new Exception("Duplicate service number: "+syscall.getNumber()+
+                         " already registered to "+
+                         findInList(syscalls, syscall.getNumber()).getName());
+               }
+            } 
+                catch (Exception e) {
+                  throw new Exception("Error instantiating Syscall " + syscallClassName + ": "+e);
+               }
+         }
+         return processSyscallNumberOverrides(syscalls, omittedNames);
+      }
+      
+       // Makes the given syscalls the ones findSyscall() finds.
+       private void useSyscalls(ArrayList syscalls, boolean memorySyscalls) {
+         syscallList = syscalls;
+         memorySyscallsLoaded = memorySyscalls;
+         buildSyscallTable();
+      }
+      
+       // Builds the table findSyscall() uses from syscallList, whose numbers are final
+       // once overrides have been applied.  Service numbers are small and nearly
+       // consecutive, so most fit in an array indexed by number.
+       private void buildSyscallTable() {
+         int highest = -1;
+         for (int i = 0; i < syscallList.size(); i++) {
+            int number = ((Syscall) syscallList.get(i)).getNumber();
+            if (number >= 0 && number <= MAX_TABLE_NUMBER) {
+               highest = Math.max(highest, number);
+            }
+         }
+         Syscall[] table = new Syscall[highest + 1];
+         HashMap overflow = new HashMap();
+         for (int i = 0; i < syscallList.size(); i++) {
+            Syscall syscall = (Syscall) syscallList.get(i);
+            int number = syscall.getNumber();
+            if (number >= 0 && number <= MAX_TABLE_NUMBER) {
+               table[number] = syscall;
+            } 
+            else {
+               overflow.put(Integer.valueOf(number), syscall);
             }
          }
-         syscallList = processSyscallNumberOverrides(syscallList);
-         return;
+         syscallOverflow = overflow;
+         syscallTable = table;
       }
          
        // Will get any syscall number override specifications from MARS config file and
-       // process them.  This will alter syscallList entry for affected names.
-       private ArrayList processSyscallNumberOverrides(ArrayList syscallList) {
+       // process them.  This will alter syscallList entry for affected names.  Overrides
+       // of syscalls that are left out are ignored.
+       private ArrayList processSyscallNumberOverrides(ArrayList syscallList, ArrayList omittedNames) throws Exception {
          ArrayList overrides = new Globals().getSyscallOverrides();
          SyscallNumberOverride override;
          Syscall syscall;
@@ -117,10 +174,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   match = true;
                } 
             }
-            if (!match) {
-               System.out.println("Error: syscall name '"+override.getName()+
+            if (!match && !omittedNames.contains(override.getName())) {
+               throw new Exception("Error: syscall name '"+override.getName()+
                      "' in config file does not match any name in syscall list");
-               System.exit(0);
             }
          }
          	// Wait until end to check for duplicate numbers.  To do so earlier
@@ -130,40 +186,49 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       		// of a new Syscall subclass to the collection, even if the config file
       		// does not contain any overrides.
          Syscall syscallA, syscallB;
-         boolean duplicates = false;
+         String duplicates = "";
          for (int i = 0; i < syscallList.size(); i++) {
             syscallA = (Syscall)syscallList.get(i);
             for (int j = i+1; j < syscallList.size(); j++) {
                syscallB = (Syscall)syscallList.get(j);
                if ( syscallA.getNumber() == syscallB.getNumber()) {
-                  System.out.println("Error: syscalls "+syscallA.getName()+" and "+
-                        syscallB.getName()+" are both assigned same number "+syscallA.getNumber());
-                  duplicates = true;
+                  duplicates += ((duplicates.length() > 0) ? "\n" : "") + "Error: syscalls "+syscallA.getName()+" and "+
+                        syscallB.getName()+" are both assigned same number "+syscallA.getNumber();
                }
             }
          }
-         if (duplicates) {
-            System.exit(0);
+         if (duplicates.length() > 0) {
+            throw new Exception(duplicates);
          }
          return syscallList;
       }
       
    	/*
    	 * Method to find Syscall object associated with given service number.
-   	 * Returns null if no associated object found.
+   	 * Returns null if no associated object found.  Called for every syscall
+   	 * instruction executed, so it is a table lookup.
    	 */
        Syscall findSyscall(int number) {
-         // linear search is OK since number of syscalls is small.
-         Syscall service, match = null;
-         if (syscallList==null) {
-            loadSyscalls();
+         if (number >= 0 && number < syscallTable.length) {
+            return syscallTable[number];
          }
-         for (int index=0; index < syscallList.size(); index++) {
-            service = (Syscall) syscallList.get(index);
+         return (Syscall) syscallOverflow.get(Integer.valueOf(number));
+      }
+      
+       // MemCopy, MemSet, MemCompare and StrLen are provided only if Settings.MEMORY_SYSCALLS_ENABLED.
+       private static boolean isMemorySyscall(Syscall syscall) {
+         return syscall instanceof SyscallMemCopy || syscall instanceof SyscallMemSet
+             || syscall instanceof SyscallMemCompare || syscall instanceof SyscallStrLen;
+      }
+      
+       // Linear search of a list of syscalls, used while it is being built.
+       private static Syscall findInList(ArrayList syscalls, int number) {
+         for (int index=0; index < syscalls.size(); index++) {
+            Syscall service = (Syscall) syscalls.get(index);
             if (service.getNumber() == number) {
-               match = service;
+               return service;
             }
          }
-         return match;
+         return null;
       }
    }
@@ -10,6 +10,9 @@
  * 
  * The populate() method is where the magic happens - you must specify your instructions to be added here.
  * For more examples regarding the instruction format, you can view the implementation of the MIPS instructions in mars/mips/instructions/MipsAssembly.java.
+ * Instructions whose operands are all registers, registers and an immediate, or a jump target can use
+ * RTypeSimulationCode, ITypeSimulationCode or JTypeSimulationCode to receive their operands as ints, as add,
+ * addi, jump and bne do below; others, like print, use SimulationCode and take what they need from the statement.
  * 
  * Instructions to get your custom language into MARS:
  * Navigate to the MARS folder in your command terminal and build a JAR file from your custom assembly file.
@@ -42,13 +45,12 @@ public class ExampleCustomLanguage extends CustomAssembly{
             	 "Addition with overflow : set $t1 to ($t2 plus $t3)",
                 BasicInstructionFormat.R_FORMAT,
                 "000000 sssss ttttt fffff 00000 100000",
-                new SimulationCode()
+                new RTypeSimulationCode()
                {
-                   public void simulate(ProgramStatement statement) throws ProcessingException
+                   public void simulate(ProgramStatement statement, int rd, int rs, int rt) throws ProcessingException
                   {
-                     int[] operands = statement.getOperands();
-                     int add1 = RegisterFile.getValue(operands[1]);
-                     int add2 = RegisterFile.getValue(operands[2]);
+                     int add1 = RegisterFile.getValue(rs);
+                     int add2 = RegisterFile.getValue(rt);
                      int sum = add1 + add2;
                   // overflow on A+B detected when A and B have same sign and A+B has other sign.
                      if ((add1 >= 0 && add2 >= 0 && sum < 0)
@@ -57,7 +59,7 @@ public class ExampleCustomLanguage extends CustomAssembly{
                         throw new ProcessingException(statement,
                             "arithmetic overflow",Exceptions.ARITHMETIC_OVERFLOW_EXCEPTION);
                      }
-                     RegisterFile.updateRegister(operands[0], sum);
+                     RegisterFile.updateRegister(rd, sum);
                   }
                }));
          instructionList.add(
@@ -65,13 +67,12 @@ public class ExampleCustomLanguage extends CustomAssembly{
             	 "Addition immediate with overflow : set $t1 to ($t2 plus signed 16-bit immediate)",
                 BasicInstructionFormat.I_FORMAT,
                 "001000 sssss fffff tttttttttttttttt",
-                new SimulationCode()
+                new ITypeSimulationCode()
                {
-                   public void simulate(ProgramStatement statement) throws ProcessingException
+                   public void simulate(ProgramStatement statement, int rt, int rs, int imm) throws ProcessingException
                   {
-                     int[] operands = statement.getOperands();
-                     int add1 = RegisterFile.getValue(operands[1]);
-                     int add2 = operands[2] << 16 >> 16;
+                     int add1 = RegisterFile.getValue(rs);
+                     int add2 = imm << 16 >> 16;
                      int sum = add1 + add2;
                   // overflow on A+B detected when A and B have same sign and A+B has other sign.
                      if ((add1 >= 0 && add2 >= 0 && sum < 0)
@@ -80,7 +81,7 @@ public class ExampleCustomLanguage extends CustomAssembly{
                         throw new ProcessingException(statement,
                             "arithmetic overflow",Exceptions.ARITHMETIC_OVERFLOW_EXCEPTION);
                      }
-                     RegisterFile.updateRegister(operands[0], sum);
+                     RegisterFile.updateRegister(rt, sum);
                   }
                }));
         instructionList.add(
@@ -88,15 +89,14 @@ public class ExampleCustomLanguage extends CustomAssembly{
             	 "Jump unconditionally : Jump to statement at target address",
             	 BasicInstructionFormat.J_FORMAT,
                 "000010 ffffffffffffffffffffffffff",
-                new SimulationCode()
+                new JTypeSimulationCode()
                {
-                   public void simulate(ProgramStatement statement) throws ProcessingException
+                   public void simulate(ProgramStatement statement, int target) throws ProcessingException
                   {
-                     int[] operands = statement.getOperands();
-                     RegisterFile.updateRegister("$t1", operands[0]);
+                     RegisterFile.updateRegister("$t1", target);
                      Globals.instructionSet.processJump(
                         ((RegisterFile.getProgramCounter() & 0xF0000000)
-                                | (operands[0] << 2)));            
+                                | (target << 2)));            
                   }
                }));
       instructionList.add(
@@ -140,16 +140,14 @@ public class ExampleCustomLanguage extends CustomAssembly{
                 "Branch if not equal : Branch to statement at label's address if $t1 and $t2 are not equal",
             	 BasicInstructionFormat.I_BRANCH_FORMAT,
                 "000100 fffff sssss tttttttttttttttt",
-                new SimulationCode()
+                new ITypeSimulationCode()
                {
-                   public void simulate(ProgramStatement statement) throws ProcessingException
+                   public void simulate(ProgramStatement statement, int rt, int rs, int offset) throws ProcessingException
                   {
-                     int[] operands = statement.getOperands();
-                  
-                     if (RegisterFile.getValue(operands[0])
-                        != RegisterFile.getValue(operands[1]))
+                     if (RegisterFile.getValue(rt)
+                        != RegisterFile.getValue(rs))
                      {
-                        Globals.instructionSet.processBranch(operands[2]);
+                        Globals.instructionSet.processBranch(offset);
                      }
                   }
                }));
@@ -0,0 +1,372 @@
+   package mars.mips.instructions.syscalls;
+
+   import mars.Globals;
+   import mars.mips.hardware.AddressErrorException;
+   import mars.mips.hardware.Memory;
+
+/**
+ * The heap allocator behind the Malloc and Free syscalls.  It takes memory from the
+ * same heap as Sbrk, through Memory.allocateBytesFromHeap(), and keeps all of its
+ * bookkeeping in simulated memory as a C library's malloc would, so that backstepping
+ * undoes an allocation or free along with everything else but the statistics.
+ * <br><br>
+ * Each block has a header and a footer word holding its size in bytes, which includes
+ * them, and whether it is allocated.  Blocks start 4 bytes before an 8-byte boundary,
+ * so every address returned is 8-byte aligned.  Free blocks are kept in doubly-linked
+ * lists, one per power of two of their sizes, whose heads are in a control block at
+ * the start of the allocator's memory.  Malloc takes the first block big enough from
+ * the smallest list that may hold one, splitting off any usable remainder.  Free joins
+ * a block with free neighbours before putting it back on a list.  Memory the heap
+ * grows by is joined to the last block if Sbrk has not been called in between.
+ * <br><br>
+ * Statistics for the run (allocations, live and peak bytes, and fragmentation of the
+ * free memory) are kept here, for the "hs" command-line option and the Heap Statistics tool.
+ **/
+
+   public class HeapAllocator {
+      private static final int MAGIC = 0x48454150; // "HEAP", marks an initialized control block
+      private static final int BINS = 20;          // free lists for sizes 16 to 16 << 20
+      private static final int CONTROL_BYTES = 4 * (2 + BINS); // magic, heap end, free list heads
+      private static final int HEAP_END = 4;       // offset in the control block of the end of the last region
+      private static final int FIRST_BIN = 8;      // offset in the control block of the first list head
+      private static final int MINIMUM_BLOCK = 16; // header, next and previous links, footer
+      private static final int MINIMUM_GROWTH = 4096; // fewest bytes to take from the heap at once
+      private static final int ALLOCATED = 1;      // header and footer flag
+
+      private static int control = 0; // address of the control block, 0 if there is none yet
+      private static int allocations = 0;
+      private static int frees = 0;
+      private static int liveBytes = 0;      // bytes usable in allocated blocks
+      private static int peakLiveBytes = 0;
+      private static int heapBytes = 0;      // bytes taken from the heap, including bookkeeping
+      private static int freeBytes = 0;      // bytes in free blocks, including their header and footer
+      private static int changes = 0;        // count of calls that changed the statistics
+
+   /**
+    * Starts over for a new run of the program: no memory allocated and no statistics.
+    * Called when the program is assembled or reset, which also empties the heap.
+    */
+       public static synchronized void reset() {
+         control = 0;
+         allocations = frees = liveBytes = peakLiveBytes = heapBytes = freeBytes = 0;
+         changes++;
+      }
+
+   /**
+    * Allocates a block of memory.
+    *
+    * @param numBytes number of bytes wanted.
+    * @return address of the block, a multiple of 8, or 0 if the heap is too full to hold it.
+    * @throws IllegalArgumentException if the number of bytes is negative.
+    * @throws AddressErrorException if the allocator's memory cannot be read or written.
+    */
+       public static synchronized int malloc(int numBytes) throws AddressErrorException {
+         if (numBytes < 0) {
+            throw new IllegalArgumentException("request (" + numBytes + ") is negative heap amount");
+         }
+         if (numBytes > Memory.dataSegmentLimitAddress - Memory.heapBaseAddress || !hasControlBlock()) {
+            return 0;
+         }
+         try {
+            int size = Math.max(MINIMUM_BLOCK, roundUp(numBytes + 8));
+            int block = findFit(size);
+            if (block == 0) {
+               block = grow(size);
+               if (block == 0) {
+                  return 0;
+               }
+            }
+            unlink(block);
+            int remainder = sizeOf(block) - size;
+            if (remainder >= MINIMUM_BLOCK) {
+               setTags(block + size, remainder, 0);
+               link(block + size);
+            }
+            else {
+               size = sizeOf(block);
+            }
+            setTags(block, size, ALLOCATED);
+            allocations++;
+            liveBytes += size - 8;
+            peakLiveBytes = Math.max(peakLiveBytes, liveBytes);
+            return block + 4;
+         }
+         finally {
+            changes++;
+         }
+      }
+
+   /**
+    * Frees a block of memory allocated by malloc().
+    *
+    * @param address address of the block, or 0 to do nothing.
+    * @throws IllegalArgumentException if the address is not that of an allocated block.
+    * @throws AddressErrorException if the allocator's memory cannot be read or written.
+    */
+       public static synchronized void free(int address) throws AddressErrorException {
+         if (address == 0) {
+            return;
+         }
+         int block = address - 4;
+         if (control == 0 || !isAllocatedBlock(block)) {
+            throw new IllegalArgumentException("address 0x" + Integer.toHexString(address)
+               + " is not that of an allocated block");
+         }
+         try {
+            int size = sizeOf(block);
+            frees++;
+            liveBytes -= size - 8;
+            setTags(block, size, 0); // so the tags left inside a merged block cannot pass for an allocated one
+            int next = Globals.memory.getWord(block + size);
+            if ((next & ALLOCATED) == 0) {
+               unlink(block + size);
+               size += next & ~7;
+            }
+            int previous = Globals.memory.getWord(block - 4);
+            if ((previous & ALLOCATED) == 0) {
+               block -= previous & ~7;
+               unlink(block);
+               size += previous & ~7;
+            }
+            setTags(block, size, 0);
+            link(block);
+         }
+         finally {
+            changes++;
+         }
+      }
+
+   /** @return number of blocks allocated in this run. */
+       public static synchronized int getAllocations() {
+         return allocations;
+      }
+
+   /** @return number of blocks freed in this run. */
+       public static synchronized int getFrees() {
+         return frees;
+      }
+
+   /** @return bytes usable in the blocks now allocated. */
+       public static synchronized int getLiveBytes() {
+         return liveBytes;
+      }
+
+   /** @return greatest number of live bytes at any time in this run. */
+       public static synchronized int getPeakLiveBytes() {
+         return peakLiveBytes;
+      }
+
+   /** @return bytes the allocator has taken from the heap, including its bookkeeping. */
+       public static synchronized int getHeapBytes() {
+         return heapBytes;
+      }
+
+   /** @return bytes in free blocks, including their headers and footers. */
+       public static synchronized int getFreeBytes() {
+         return freeBytes;
+      }
+
+   /** @return size of the largest free block, including its header and footer. */
+       public static synchronized int getLargestFreeBlock() {
+         try {
+            for (int bin = BINS - 1; bin >= 0 && control != 0; bin--) {
+               int largest = 0;
+               for (int block = Globals.memory.getWordNoNotify(control + FIRST_BIN + 4 * bin); block != 0;
+                    block = Globals.memory.getWordNoNotify(block + 4)) {
+                  largest = Math.max(largest, Globals.memory.getWordNoNotify(block) & ~7);
+               }
+               if (largest > 0) {
+                  return largest;
+               }
+            }
+         }
+             catch (AddressErrorException e) {
+               // the program has overwritten the lists; report no free block
+            }
+         return 0;
+      }
+
+   /**
+    * @return percentage of free memory outside the largest free block: 0 when all free
+    * memory could satisfy one request, approaching 100 as it is broken into small pieces.
+    */
+       public static synchronized double getFragmentation() {
+         return (freeBytes == 0) ? 0.0 : 100.0 * (freeBytes - getLargestFreeBlock()) / freeBytes;
+      }
+
+   /**
+    * @return number that changes whenever the statistics do, so a display can tell whether
+    * it needs updating.
+    */
+       public static synchronized int getChangeCount() {
+         return changes;
+      }
+
+   /**
+    * @return the statistics as lines of text, for display at the end of a run.
+    */
+       public static synchronized String getReport() {
+         return "Heap allocations: " + allocations + ", frees: " + frees + "\n"
+            + "Live bytes: " + liveBytes + ", peak: " + peakLiveBytes + "\n"
+            + "Heap bytes: " + heapBytes + ", free: " + freeBytes + ", largest free block: " + getLargestFreeBlock() + "\n"
+            + "Fragmentation: " + Math.round(getFragmentation()) + "%";
+      }
+
+      // Makes sure the control block exists, taking it from the heap the first time and
+      // again whenever the heap has been emptied.  Returns false if the heap is full.
+       private static boolean hasControlBlock() throws AddressErrorException {
+         if (control != 0 && control + CONTROL_BYTES <= Memory.heapAddress
+               && Globals.memory.getWord(control) == MAGIC) {
+            return true;
+         }
+         reset();
+         try {
+            control = Globals.memory.allocateBytesFromHeap(CONTROL_BYTES);
+         }
+             catch (IllegalArgumentException e) {
+               return false;
+            }
+         heapBytes = CONTROL_BYTES;
+         Globals.memory.setWord(control, MAGIC);
+         for (int offset = 4; offset < CONTROL_BYTES; offset += 4) {
+            Globals.memory.setWord(control + offset, 0);
+         }
+         return true;
+      }
+
+      // First free block of at least the given size in the smallest list that may hold one, or 0.
+       private static int findFit(int size) throws AddressErrorException {
+         for (int bin = binOf(size); bin < BINS; bin++) {
+            for (int block = Globals.memory.getWord(control + FIRST_BIN + 4 * bin); block != 0;
+                 block = Globals.memory.getWord(block + 4)) {
+               if (sizeOf(block) >= size) {
+                  return block;
+               }
+            }
+         }
+         return 0;
+      }
+
+      // Takes memory from the heap for a free block of at least the given size, and links
+      // it in.  Returns the block, or 0 if the heap is full.
+       private static int grow(int size) throws AddressErrorException {
+         int heapEnd = Globals.memory.getWord(control + HEAP_END);
+         if (heapEnd != 0 && heapEnd == Memory.heapAddress) {
+            // Extend the last region: its end marker becomes the new block's header.
+            int last = Globals.memory.getWord(heapEnd - 8);
+            int needed = size - (((last & ALLOCATED) == 0) ? last & ~7 : 0);
+            int growth = take(needed, 0);
+            if (growth == 0) {
+               return 0;
+            }
+            return addRegion(heapEnd - 4, growth, heapEnd + growth);
+         }
+         // Start a new region between two allocated markers, aligned so that blocks
+         // start 4 bytes before an 8-byte boundary.
+         int pad = (Memory.heapAddress % 8 == 0) ? 0 : 4;
+         int start = Memory.heapAddress + pad;
+         int growth = take(size, pad + 8);
+         if (growth == 0) {
+            return 0;
+         }
+         Globals.memory.setWord(start, ALLOCATED); // footer of nothing before the region
+         return addRegion(start + 4, growth, start + 8 + growth);
+      }
+
+      // Takes a multiple of 8 bytes, at least the given number, plus the overhead, from the
+      // heap.  Takes MINIMUM_GROWTH if it can, so the heap grows less often.  Returns the
+      // number of bytes excluding the overhead, or 0 if the heap is full.
+       private static int take(int bytes, int overhead) {
+         int wanted = roundUp(Math.max(bytes, MINIMUM_GROWTH));
+         int needed = roundUp(Math.max(bytes, 0));
+         for (int growth = wanted; ; growth = needed) {
+            try {
+               Globals.memory.allocateBytesFromHeap(growth + overhead);
+               heapBytes += growth + overhead;
+               return growth;
+            }
+                catch (IllegalArgumentException e) {
+                  if (growth == needed) {
+                     return 0;
+                  }
+               }
+         }
+      }
+
+      // Makes the given bytes at the end of the heap a free block, followed by an allocated
+      // marker ending the region, joins it with a free block before it, and links it in.
+       private static int addRegion(int block, int size, int heapEnd) throws AddressErrorException {
+         Globals.memory.setWord(heapEnd - 4, ALLOCATED); // header of nothing after the region
+         Globals.memory.setWord(control + HEAP_END, heapEnd);
+         int previous = Globals.memory.getWord(block - 4);
+         if ((previous & ALLOCATED) == 0) {
+            block -= previous & ~7;
+            unlink(block);
+            size += previous & ~7;
+         }
+         setTags(block, size, 0);
+         link(block);
+         return block;
+      }
+
+      // True if the given address is the header of an allocated block.
+       private static boolean isAllocatedBlock(int block) throws AddressErrorException {
+         int heapEnd = Globals.memory.getWord(control + HEAP_END);
+         if ((block + 4) % 8 != 0 || block < control + CONTROL_BYTES || block >= heapEnd - 4) {
+            return false;
+         }
+         int header = Globals.memory.getWord(block);
+         int size = header & ~7;
+         return (header & ALLOCATED) != 0 && size >= MINIMUM_BLOCK && size <= heapEnd - 4 - block
+            && Globals.memory.getWord(block + size - 4) == header;
+      }
+
+       private static int sizeOf(int block) throws AddressErrorException {
+         return Globals.memory.getWord(block) & ~7;
+      }
+
+       private static void setTags(int block, int size, int flags) throws AddressErrorException {
+         Globals.memory.setWord(block, size | flags);
+         Globals.memory.setWord(block + size - 4, size | flags);
+      }
+
+      // Puts a free block at the head of the list for its size.
+       private static void link(int block) throws AddressErrorException {
+         int size = sizeOf(block);
+         int head = control + FIRST_BIN + 4 * binOf(size);
+         int first = Globals.memory.getWord(head);
+         Globals.memory.setWord(block + 4, first);
+         Globals.memory.setWord(block + 8, 0);
+         if (first != 0) {
+            Globals.memory.setWord(first + 8, block);
+         }
+         Globals.memory.setWord(head, block);
+         freeBytes += size;
+      }
+
+      // Takes a free block off the list for its size.
+       private static void unlink(int block) throws AddressErrorException {
+         int size = sizeOf(block);
+         int next = Globals.memory.getWord(block + 4);
+         int previous = Globals.memory.getWord(block + 8);
+         if (previous != 0) {
+            Globals.memory.setWord(previous + 4, next);
+         }
+         else {
+            Globals.memory.setWord(control + FIRST_BIN + 4 * binOf(size), next);
+         }
+         if (next != 0) {
+            Globals.memory.setWord(next + 8, previous);
+         }
+         freeBytes -= size;
+      }
+
+      // List for blocks of the given size: n holds sizes from 16 << n up to 16 << (n + 1).
+       private static int binOf(int size) {
+         return Math.min(BINS - 1, 31 - Integer.numberOfLeadingZeros(size >> 4));
+      }
+
+       private static int roundUp(int bytes) {
+         return (bytes + 7) & ~7;
+      }
+   }
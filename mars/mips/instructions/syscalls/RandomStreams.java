@@ -1,5 +1,6 @@
    package mars.mips.instructions.syscalls;
 	import java.util.HashMap;
+	import java.util.SplittableRandom;
 
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
@@ -31,13 +32,77 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 
 /** 
- * This small class serves only to hold a static HashMap for storing
- * random number generators for use by all the random number generator
- * syscalls.
+ * Holds the pseudorandom number streams used by the random number generator
+ * syscalls.  Streams are identified by the index the MIPS program gives, and are
+ * created when first used.  They belong to the current run of the program: all
+ * are discarded when the program is assembled or reset.
+ * <br><br>
+ * Without a seed, a stream that the program does not seed itself is seeded
+ * unpredictably, as before.  With a seed (the "rs" command-line option), each such
+ * stream is seeded from it and its index, so every run gives the same numbers.
  */
  
     public class RandomStreams {
-      /** Collection of pseudorandom number streams available for use in Rand-type syscalls.
-       * The streams are by default not seeded. */
-		 static final HashMap randomStreams = new HashMap();
-   }
\ No newline at end of file
+      // Index (Integer) to SplittableRandom.  Used only by the simulator thread.
+      private static final HashMap randomStreams = new HashMap();
+      private static boolean seeded = false;
+      private static long seed;
+   
+   /**
+    * Sets the seed from which streams the program does not seed itself are seeded.
+    *
+    * @param newSeed the seed.
+    */
+       public static void setSeed(long newSeed) {
+         seed = newSeed;
+         seeded = true;
+      }
+   
+   /**
+    * Discards all streams, so that the next run of the program starts them over.
+    */
+       public static void reset() {
+         randomStreams.clear();
+      }
+   
+   /**
+    * Gets the stream with the given index, creating it if it does not exist yet.
+    *
+    * @param index index of the stream, as given by the MIPS program.
+    * @return the stream.
+    */
+       static SplittableRandom get(int index) {
+         Integer key = Integer.valueOf(index);
+         SplittableRandom stream = (SplittableRandom) randomStreams.get(key);
+         if (stream == null) {
+            stream = seeded ? new SplittableRandom(mix(seed + 0x9E3779B97F4A7C15L * index)) : new SplittableRandom();
+            randomStreams.put(key, stream);
+         }
+         return stream;
+      }
+   
+   /**
+    * Starts the stream with the given index over from the given seed.
+    *
+    * @param index index of the stream, as given by the MIPS program.
+    * @param streamSeed the seed.
+    */
+       static void seed(int index, long streamSeed) {
+         randomStreams.put(Integer.valueOf(index), new SplittableRandom(streamSeed));
+      }
+   
+   /**
+    * Returns the next float from a stream, uniformly distributed between 0.0 (inclusive)
+    * and 1.0 (exclusive), computed as java.util.Random computes it.
+    */
+       static float nextFloat(SplittableRandom stream) {
+         return (stream.nextInt() >>> 8) / ((float) (1 << 24));
+      }
+   
+      // Spreads the bits of a value, so that streams for neighbouring indexes begin far apart.
+       private static long mix(long value) {
+         value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+         value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+         return value ^ (value >>> 33);
+      }
+   }
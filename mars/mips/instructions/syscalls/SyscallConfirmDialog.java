@@ -58,16 +58,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
          String message = new String(); // = "";
          int byteAddress = RegisterFile.getValue(4);
-         char ch[] = { ' '}; // Need an array to convert to String
          try
          {
-            ch[0] = (char) Globals.memory.getByte(byteAddress);
-            while (ch[0] != 0) // only uses single location ch[0]
-            {
-               message = message.concat(new String(ch)); // parameter to String constructor is a char[] array
-               byteAddress++;
-               ch[0] = (char) Globals.memory.getByte(byteAddress);
-            }
+            message = Globals.memory.readCString(byteAddress, Integer.MAX_VALUE);
          }
              catch (AddressErrorException e)
             {
@@ -79,8 +72,31 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             //    0 ---> meaning Yes
             //    1 ---> meaning No
             //    2 ---> meaning Cancel
-            RegisterFile.updateRegister(4, JOptionPane.showConfirmDialog(null, message) );
+            if (SystemIO.readsDialogResponses()) {
+               // Command line with no display, or with input from "in": the message is printed
+               // as a prompt and the response is the next line of input.
+               RegisterFile.updateRegister(4, confirmResponse(SystemIO.readDialogResponse(message)) );
+            }
+            else {
+               RegisterFile.updateRegister(4, JOptionPane.showConfirmDialog(null, message) );
+            }
 
        }
 
+      // Value for a response read as input: "yes" or "y" (any case) or 0 for Yes, "no" or "n" or 1
+      // for No, and anything else, including end of input, for Cancel.
+       private static int confirmResponse(String response) {
+         if (response == null) {
+            return 2;
+         }
+         response = response.trim().toLowerCase();
+         if (response.equals("yes") || response.equals("y") || response.equals("0")) {
+            return 0;
+         }
+         if (response.equals("no") || response.equals("n") || response.equals("1")) {
+            return 1;
+         }
+         return 2;
+      }
+
    }
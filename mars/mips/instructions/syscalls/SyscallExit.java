@@ -49,6 +49,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    * Performs syscall function to exit the MIPS program.
    */
        public void simulate(ProgramStatement statement) throws ProcessingException {
+         SystemIO.flushConsoleOutput();
          throw new ProcessingException();  // empty exception list.
       }
    }
\ No newline at end of file
@@ -55,6 +55,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (Globals.getGui()==null) {
             Globals.exitCode = RegisterFile.getValue(4);
          }
+         SystemIO.flushConsoleOutput();
          throw new ProcessingException(); // empty error list
       }
    }
\ No newline at end of file
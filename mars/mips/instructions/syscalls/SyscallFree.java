@@ -0,0 +1,37 @@
+   package mars.mips.instructions.syscalls;
+   import mars.mips.hardware.*;
+   import mars.simulator.*;
+   import mars.*;
+
+/** 
+ * Service to give back the heap block at the address in $a0, which Malloc returned.
+ * An address of 0 does nothing.  See HeapAllocator.
+ *
+ */
+ 
+    public class SyscallFree extends AbstractSyscall {
+   /**
+    * Build an instance of the Free syscall.  Default service number
+    * is 65 and name is "Free".
+    */
+       public SyscallFree() {
+         super(65, "Free");
+      }
+      
+   /**
+   * Performs syscall function to free the heap block at address $a0.
+   */
+       public void simulate(ProgramStatement statement) throws ProcessingException {
+         try {
+            HeapAllocator.free(RegisterFile.getValue(4));
+         } 
+             catch (IllegalArgumentException iae) {
+               throw new ProcessingException(statement,
+                                       iae.getMessage()+" (syscall "+this.getNumber()+")",
+                                       Exceptions.SYSCALL_EXCEPTION);
+            }
+             catch (AddressErrorException e) {
+               throw new ProcessingException(statement, e);
+            }
+      }
+   }
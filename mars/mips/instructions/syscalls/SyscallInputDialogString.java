@@ -64,16 +64,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       
          String message = new String(); // = "";
          int byteAddress = RegisterFile.getValue(4); // byteAddress of string is in $a0
-         char ch[] = { ' '}; // Need an array to convert to String
          try
          {
-            ch[0] = (char) Globals.memory.getByte(byteAddress);
-            while (ch[0] != 0) // only uses single location ch[0]
-            {
-               message = message.concat(new String(ch)); // parameter to String constructor is a char[] array
-               byteAddress++;
-               ch[0] = (char) Globals.memory.getByte(byteAddress);
-            }
+            message = Globals.memory.readCString(byteAddress, Integer.MAX_VALUE);
          }
              catch (AddressErrorException e)
             {
@@ -85,7 +78,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             // An empty string returned (that is, inputString.length() of zero)
             // means that OK was chosen but no string was input.
          String inputString = null;
-         inputString = JOptionPane.showInputDialog(message);
+         if (SystemIO.readsDialogResponses()) {
+            // Command line with no display, or with input from "in": the message is printed
+            // as a prompt and the response is the next line of input.  End of input is Cancel.
+            inputString = SystemIO.readDialogResponse(message);
+         }
+         else {
+            inputString = JOptionPane.showInputDialog(message);
+         }
          byteAddress = RegisterFile.getValue(5); // byteAddress of string is in $a1
          int maxLength = RegisterFile.getValue(6); // input buffer size for input string is in $a2
       
@@ -0,0 +1,40 @@
+   package mars.mips.instructions.syscalls;
+   import mars.mips.hardware.*;
+   import mars.simulator.*;
+   import mars.*;
+
+/** 
+ * Service to allocate a block of at least the number of bytes in $a0 from the heap,
+ * putting its address into $v0, or 0 if the heap is too full.  Unlike memory from
+ * Sbrk, the block can be given back with Free.  See HeapAllocator.
+ *
+ */
+ 
+    public class SyscallMalloc extends AbstractSyscall {
+   /**
+    * Build an instance of the Malloc syscall.  Default service number
+    * is 64 and name is "Malloc".
+    */
+       public SyscallMalloc() {
+         super(64, "Malloc");
+      }
+      
+   /**
+   * Performs syscall function to allocate $a0 bytes of heap memory, putting the address into $v0.
+   */
+       public void simulate(ProgramStatement statement) throws ProcessingException {
+         int address = 0;
+         try {
+            address = HeapAllocator.malloc(RegisterFile.getValue(4));
+         } 
+             catch (IllegalArgumentException iae) {
+               throw new ProcessingException(statement,
+                                       iae.getMessage()+" (syscall "+this.getNumber()+")",
+                                       Exceptions.SYSCALL_EXCEPTION);
+            }
+             catch (AddressErrorException e) {
+               throw new ProcessingException(statement, e);
+            }
+         RegisterFile.updateRegister(2, address);
+      }
+   }
@@ -0,0 +1,34 @@
+   package mars.mips.instructions.syscalls;
+   import mars.mips.hardware.*;
+   import mars.*;
+
+/** 
+ * Service to compare the number of bytes given in $a2 at the addresses in $a0 and $a1,
+ * as the C library's memcmp() does.  $v0 is set to 0 if they are the same, otherwise
+ * to the first differing byte at $a0 minus the one at $a1, both unsigned.
+ *
+ */
+ 
+    public class SyscallMemCompare extends AbstractSyscall {
+   /**
+    * Build an instance of the MemCompare syscall.  Default service number
+    * is 62 and name is "MemCompare".
+    */
+       public SyscallMemCompare() {
+         super(62, "MemCompare");
+      }
+      
+   /**
+   * Performs syscall function to compare $a2 bytes at addresses $a0 and $a1, putting the result into $v0.
+   */
+       public void simulate(ProgramStatement statement) throws ProcessingException {
+         int result = 0;
+         try {
+            result = Globals.memory.compareBytes(RegisterFile.getValue(4), RegisterFile.getValue(5), RegisterFile.getValue(6));
+         } 
+             catch (AddressErrorException e) {
+               throw new ProcessingException(statement, e);
+            }
+         RegisterFile.updateRegister(2, result);
+      }
+   }
@@ -0,0 +1,34 @@
+   package mars.mips.instructions.syscalls;
+   import mars.mips.hardware.*;
+   import mars.*;
+
+/** 
+ * Service to copy the number of bytes given in $a2 from the address in $a1 to the
+ * address in $a0, as the C library's memmove() does: the ranges may overlap.  $v0 is
+ * set to the destination address.
+ *
+ */
+ 
+    public class SyscallMemCopy extends AbstractSyscall {
+   /**
+    * Build an instance of the MemCopy syscall.  Default service number
+    * is 60 and name is "MemCopy".
+    */
+       public SyscallMemCopy() {
+         super(60, "MemCopy");
+      }
+      
+   /**
+   * Performs syscall function to copy $a2 bytes from address $a1 to address $a0, putting $a0 into $v0.
+   */
+       public void simulate(ProgramStatement statement) throws ProcessingException {
+         int destination = RegisterFile.getValue(4);
+         try {
+            Globals.memory.copyBytes(destination, RegisterFile.getValue(5), RegisterFile.getValue(6));
+         } 
+             catch (AddressErrorException e) {
+               throw new ProcessingException(statement, e);
+            }
+         RegisterFile.updateRegister(2, destination);
+      }
+   }
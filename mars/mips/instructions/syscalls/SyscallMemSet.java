@@ -0,0 +1,34 @@
+   package mars.mips.instructions.syscalls;
+   import mars.mips.hardware.*;
+   import mars.*;
+
+/** 
+ * Service to set the number of bytes given in $a2, starting at the address in $a0,
+ * to the low order byte of $a1, as the C library's memset() does.  $v0 is set to the
+ * address in $a0.
+ *
+ */
+ 
+    public class SyscallMemSet extends AbstractSyscall {
+   /**
+    * Build an instance of the MemSet syscall.  Default service number
+    * is 61 and name is "MemSet".
+    */
+       public SyscallMemSet() {
+         super(61, "MemSet");
+      }
+      
+   /**
+   * Performs syscall function to set $a2 bytes from address $a0 to the byte in $a1, putting $a0 into $v0.
+   */
+       public void simulate(ProgramStatement statement) throws ProcessingException {
+         int address = RegisterFile.getValue(4);
+         try {
+            Globals.memory.fillBytes(address, RegisterFile.getValue(5), RegisterFile.getValue(6));
+         } 
+             catch (AddressErrorException e) {
+               throw new ProcessingException(statement, e);
+            }
+         RegisterFile.updateRegister(2, address);
+      }
+   }
@@ -67,7 +67,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       
    /**
    * Performs syscall function to send MIDI output to sound card.  The syscall does not
-   * return until after the duration period ($a1) has elapsed.  This requires
+   * return until after the duration period ($a1) has elapsed (in simulated time, with virtual time).  This requires
    * four arguments in registers $a0 through $a3.<br>
    * $a0 - pitch (note).  Integer value from 0 to 127, with 60 being middle-C on a piano.<br>
    * $a1 - duration. Integer value in milliseconds.<br>
@@ -88,7 +88,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (duration < 0) duration = ToneGenerator.DEFAULT_DURATION;
          if (instrument < rangeLowEnd || instrument > rangeHighEnd) instrument = ToneGenerator.DEFAULT_INSTRUMENT;
          if (volume < rangeLowEnd || volume > rangeHighEnd) volume = ToneGenerator.DEFAULT_VOLUME;
-         new ToneGenerator().generateToneSynchronously( (byte) pitch, duration, (byte) instrument, (byte) volume);
+         if (SimulatedClock.isVirtual()) {
+            // Play without waiting; the duration passes in simulated time instead.
+            new ToneGenerator().generateTone( (byte) pitch, duration, (byte) instrument, (byte) volume);
+            SimulatedClock.sleep(duration);
+         } 
+         else {
+            new ToneGenerator().generateToneSynchronously( (byte) pitch, duration, (byte) instrument, (byte) volume);
+         }
       }
    
    }
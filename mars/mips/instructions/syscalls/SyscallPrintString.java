@@ -50,17 +50,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    */
        public void simulate(ProgramStatement statement) throws ProcessingException {
          int byteAddress = RegisterFile.getValue(4);
-         char ch = 0;
          try
          {
-            ch = (char) Globals.memory.getByte(byteAddress);
                               // won't stop until NULL byte reached!
-            while (ch != 0)
-            {
-               SystemIO.printString(new Character(ch).toString());
-               byteAddress++;
-               ch = (char) Globals.memory.getByte(byteAddress);
-            }
+            SystemIO.printString(Globals.memory.readCString(byteAddress, Integer.MAX_VALUE));
          } 
              catch (AddressErrorException e)
             {
@@ -50,18 +50,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    /**
    * System call to cause the MARS Java thread to sleep for (at least) the specified number of milliseconds.
    * This timing will not be precise as the Java implementation will add some overhead.
+   * With virtual time, the simulated clock is advanced instead and the thread does not sleep.
    */
        public void simulate(ProgramStatement statement) throws ProcessingException {
           // Input arguments: $a0 is the length of time to sleep in milliseconds.
 
-               try
-               {
-                  Thread.sleep(RegisterFile.getValue(4)); // units of milliseconds  1000 millisec = 1 sec.
-               }
-               catch (InterruptedException e)
-               {
-                   return; // no exception handling
-               }
+               SimulatedClock.sleep(RegisterFile.getValue(4)); // units of milliseconds  1000 millisec = 1 sec.
        }
 
    }
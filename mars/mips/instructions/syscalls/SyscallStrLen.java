@@ -0,0 +1,33 @@
+   package mars.mips.instructions.syscalls;
+   import mars.mips.hardware.*;
+   import mars.*;
+
+/** 
+ * Service to find the length of the null-terminated string at the address in $a0,
+ * as the C library's strlen() does, putting it into $v0.
+ *
+ */
+ 
+    public class SyscallStrLen extends AbstractSyscall {
+   /**
+    * Build an instance of the StrLen syscall.  Default service number
+    * is 63 and name is "StrLen".
+    */
+       public SyscallStrLen() {
+         super(63, "StrLen");
+      }
+      
+   /**
+   * Performs syscall function to put the length of the string at address $a0 into $v0.
+   */
+       public void simulate(ProgramStatement statement) throws ProcessingException {
+         int length = 0;
+         try {
+            length = Globals.memory.readCString(RegisterFile.getValue(4), Integer.MAX_VALUE).length();
+         } 
+             catch (AddressErrorException e) {
+               throw new ProcessingException(statement, e);
+            }
+         RegisterFile.updateRegister(2, length);
+      }
+   }
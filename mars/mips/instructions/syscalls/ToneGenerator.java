@@ -3,10 +3,7 @@
 	
 
    import javax.sound.midi.*;
-   import java.util.concurrent.locks.Lock;
-   import java.util.concurrent.locks.ReentrantLock;
-   import java.util.concurrent.Executor;
-   import java.util.concurrent.Executors;
+   import java.util.PriorityQueue;
 
 /*
 Copyright (c) 2003-2007,  Pete Sanderson and Kenneth Vollmar
@@ -54,14 +51,26 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
   //      pool executor, and
   //  (3) simplify the interface by removing all the unused versions
   //       that provided default values for various parameters
+  //
+  //  Tones are now scheduled as note on and note off events on a single
+  //  thread and played on one synthesizer that stays open, rather than
+  //  each opening a sequencer on a thread of its own.
   /////////////////////////////////////////////////////////////////////////
   //////////////////////////////////////////////////////////////////////////
   
   
    /*
-    * Creates a Tone object and passes it to a thread to "play" it using MIDI.
+    * Plays MIDI tones for the MIDI syscalls.  Every tone becomes two events, note on
+    * and note off, in one queue ordered by System.nanoTime().  A single thread plays
+    * the events when they fall due on one synthesizer, opened the first time a tone is
+    * played and kept open.  Tones take turns on the synthesizer's channels, so tones
+    * that overlap can use different instruments.
+    *
+    * With the null sink, or when no synthesizer can be opened or it fails, events are
+    * played to nothing: a tone costs a queue insert, and a synchronous tone still lasts
+    * its duration.
     */
-    class ToneGenerator {
+    public class ToneGenerator {
       
       /**
       * The default pitch value for the tone: 60 / middle C.
@@ -82,8 +91,32 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       * The default volume of the tone: 100 (of 127).
       */          
       public final static byte DEFAULT_VOLUME = 100;
-
-       private static Executor threadPool = Executors.newCachedThreadPool();
+      
+      private static final int PERCUSSION_CHANNEL = 9; // plays drums whatever the instrument
+      
+      // Events waiting to be played, earliest first.  Also the lock for everything below.
+      private static final PriorityQueue events = new PriorityQueue();
+      private static Thread scheduler = null;
+      private static long eventCount = 0;     // orders events due at the same time
+      private static int nextChannel = 0;
+      private static boolean nullSink = false;
+      
+      // Synthesizer channels, used only by the scheduler thread.  null until opened, and
+      // also if there is no synthesizer or the null sink is used.
+      private static MidiChannel[] channels = null;
+      private static boolean opened = false;
+      
+      /**
+      * Selects whether tones are played to nothing instead of the synthesizer, as when
+      * running without sound from the command line.
+      *
+      * @param useNullSink true to play tones to nothing.
+      */
+       public static void setNullSink(boolean useNullSink) {
+         synchronized (events) {
+            nullSink = useNullSink;
+         }
+      }
       
       /**
       * Produces a Tone with the specified pitch, duration, and instrument,
@@ -102,8 +135,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       */   
        public void generateTone(byte pitch, int duration,
 				byte instrument, byte volume) {
-         Runnable tone = new Tone(pitch, duration, instrument, volume);
-         threadPool.execute(tone);
+         schedule(pitch, duration, instrument, volume);
       }
 
       /**
@@ -123,161 +155,156 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       */   
        public void generateToneSynchronously(byte pitch, int duration,
 					     byte instrument, byte volume) {
-         Runnable tone = new Tone(pitch, duration, instrument, volume);
-         tone.run();
+         NoteEvent off = schedule(pitch, duration, instrument, volume);
+         try {
+            off.awaitPlayed();
+         } 
+             catch (InterruptedException e) {
+            }
       }
       
-   }
-   
-   
-   /**
-    * Contains important variables for a MIDI Tone: pitch, duration
-    * instrument (patch), and volume.  The tone can be passed to a thread
-    * and will be played using MIDI.
-    */
-    class Tone implements Runnable {
+      // Queues the note on and note off events of a tone.  Returns the note off event.
+       private static NoteEvent schedule(byte pitch, int duration, byte instrument, byte volume) {
+         long now = System.nanoTime();
+         synchronized (events) {
+            if (scheduler == null) {
+               scheduler = new Thread(new Scheduler(), "MIDI");
+               scheduler.setDaemon(true);
+               scheduler.start();
+            }
+            int channel = nextChannel;
+            nextChannel = (nextChannel + 1) % 16;
+            if (nextChannel == PERCUSSION_CHANNEL) {
+               nextChannel++;
+            }
+            NoteEvent on = new NoteEvent(now, eventCount++, true, channel, pitch, instrument, volume, nullSink);
+            NoteEvent off = new NoteEvent(now + duration * 1000000L, eventCount++, false, channel, pitch, instrument, volume, nullSink);
+            events.add(on);
+            events.add(off);
+            if (events.peek() == on) {
+               events.notifyAll(); // the scheduler may be waiting for a later event
+            }
+            return off;
+         }
+      }
       
-      /**
-      * Tempo of the tone is in milliseconds: 1000 beats per second.
-      */
+      // Opens the synthesizer.  Called by the scheduler thread only.
+       private static void open() {
+         opened = true;
+         try {
+            Synthesizer synthesizer = MidiSystem.getSynthesizer();
+            synthesizer.open();
+            channels = synthesizer.getChannels();
+         } 
+             catch (MidiUnavailableException mue) {
+               mue.printStackTrace(); // once; tones are played to nothing from now on
+            }
+      }
       
-      public final static int TEMPO = 1000;
-      /**
-      * The default MIDI channel of the tone: 0 (channel 1).
-      */      
-      public final static int DEFAULT_CHANNEL = 0;
+      /*
+       * Plays events from the queue as they fall due.
+       */
+       private static class Scheduler implements Runnable {
+          public void run() {
+            while (true) {
+               NoteEvent event;
+               try {
+                  synchronized (events) {
+                     while (true) {
+                        event = (NoteEvent) events.peek();
+                        if (event == null) {
+                           events.wait();
+                           continue;
+                        }
+                        long delay = event.time - System.nanoTime();
+                        if (delay <= 0) {
+                           events.poll();
+                           break;
+                        }
+                        events.wait(delay / 1000000L, (int) (delay % 1000000L));
+                     }
+                  }
+               } 
+                   catch (InterruptedException e) {
+                     continue;
+                  }
+               // A synthesizer that fails is given up, so that later tones play to nothing
+               // and a synchronous tone still comes to an end.
+               try {
+                  if (!event.toNullSink && !opened) {
+                     open();
+                  }
+                  event.play();
+               } 
+                   catch (Throwable t) {
+                     t.printStackTrace(); // once; tones are played to nothing from now on
+                     opened = true;
+                     channels = null;
+                  }
+               finally {
+                  event.markPlayed();
+               }
+            }
+         }
+      }
       
-      private byte pitch;
-      private int duration;
-      private byte instrument;
-      private byte volume;
+      /*
+       * A note on or note off event of a tone.
+       */
+       private static class NoteEvent implements Comparable {
+         private final long time;       // System.nanoTime() at which to play
+         private final long sequence;   // order among events at the same time
+         private final boolean noteOn;
+         private final int channel;
+         private final byte pitch;
+         private final byte instrument;
+         private final byte volume;
+         private final boolean toNullSink;
+         private boolean played = false;
       
-      /**
-      * Instantiates a new Tone object, initializing the tone's pitch,
-      * duration, instrument (patch), and volume.
-      *
-      * @param pitch the pitch in semitones.  Pitch is represented by 
-      * a positive byte value - 0-127 where 60 is middle C.
-      * @param duration the duration of the tone in milliseconds.
-      * @param instrument a positive byte value (0-127) which represents
-      * the instrument (or patch) of the tone.  See the <a href=
-      * http://www.midi.org/about-midi/gm/gm1sound.shtml#instrument>general 
-      * MIDI instrument patch map</a> for more instruments associated with
-      * each value.
-      * @param volume a positive byte value (0-127) which represents the
-      * volume of the initial attack of the note (MIDI velocity).  127 being
-      * loud, and 0 being silent.
-      */ 
-       public Tone(byte pitch, int duration, byte instrument, byte volume) {
-         this.pitch = pitch;
-         this.duration = duration;
-         this.instrument = instrument;
-         this.volume = volume;
-      }
+          private NoteEvent(long time, long sequence, boolean noteOn, int channel,
+                          byte pitch, byte instrument, byte volume, boolean toNullSink) {
+            this.time = time;
+            this.sequence = sequence;
+            this.noteOn = noteOn;
+            this.channel = channel;
+            this.pitch = pitch;
+            this.instrument = instrument;
+            this.volume = volume;
+            this.toNullSink = toNullSink;
+         }
       
-      /**
-      * Plays the tone.
-      */
-       public void run() {
-         playTone();
-      }
+          public int compareTo(Object other) {
+            NoteEvent event = (NoteEvent) other;
+            if (time != event.time) {
+               return (time - event.time < 0) ? -1 : 1;
+            }
+            return (sequence < event.sequence) ? -1 : (sequence > event.sequence) ? 1 : 0;
+         }
       
-       /* The following lock and the code which locks and unlocks it
-	* around the opening of the Sequencer were added 2009-10-19 by
-	* Max Hailperin <max@gustavus.edu> in order to work around a
-	* bug in Sun's JDK which causes crashing if two threads race:
-	* http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6888117 .
-	* This routinely manifested native-code crashes when tones
-	* were played asynchronously, on dual-core machines with Sun's
-	* JDK (but not on one core or with OpenJDK).  Even when tones
-	* were played only synchronously, crashes sometimes occurred.
-	* This is likely due to the fact that Thread.sleep was used
-	* for synchronization, a role it cannot reliably serve.  In
-	* any case, this one lock seems to make all the crashes go
-	* away, and the sleeps are being eliminated (since they can
-	* cause other, less severe, problems), so that case should be
-	* double covered. */ 
-
-       private static Lock openLock = new ReentrantLock();
-
-       private void playTone() {
-         
-         try {
-	    Sequencer player = null;
-	    openLock.lock();
-	    try {
-	       player = MidiSystem.getSequencer();
-	       player.open();
-	    } finally {
-	       openLock.unlock();
-	    }
-            
-            Sequence seq = new Sequence(Sequence.PPQ, 1);
-            player.setTempoInMPQ(TEMPO);
-            Track	t = seq.createTrack();
-            
-            //select instrument
-            ShortMessage inst = new ShortMessage();
-            inst.setMessage(ShortMessage.PROGRAM_CHANGE, DEFAULT_CHANNEL, instrument, 0);
-            MidiEvent instChange = new MidiEvent(inst, 0);
-            t.add(instChange);
-              
-            ShortMessage on = new ShortMessage();
-            on.setMessage(ShortMessage.NOTE_ON, DEFAULT_CHANNEL, pitch, volume);
-            MidiEvent noteOn = new MidiEvent(on, 0);
-            t.add(noteOn);
-               
-            ShortMessage off = new ShortMessage();
-            off.setMessage(ShortMessage.NOTE_OFF, DEFAULT_CHANNEL, pitch, volume);
-            MidiEvent noteOff = new MidiEvent(off, duration);
-            t.add(noteOff);
-            
-            player.setSequence(seq);
-
-	    /* The EndOfTrackListener was added 2009-10-19 by Max
-	     * Hailperin <max@gustavus.edu> so that its
-	     * awaitEndOfTrack method could be used as a more reliable
-	     * replacement for Thread.sleep.  (Given that the tone
-	     * might not start playing right away, the sleep could end
-	     * before the tone, clipping off the end of the tone.) */
-	    EndOfTrackListener eot = new EndOfTrackListener();
-	    player.addMetaEventListener(eot);
-            
-            player.start();
-            
-            try {
-               eot.awaitEndOfTrack();
-            } 
-                catch (InterruptedException ex) {
+         // Plays the event.  Called by the scheduler thread only.
+          private void play() {
+            if (!toNullSink && channels != null && channel < channels.length && channels[channel] != null) {
+               if (noteOn) {
+                  channels[channel].programChange(instrument);
+                  channels[channel].noteOn(pitch, volume);
+               } 
+               else {
+                  channels[channel].noteOff(pitch, volume);
                }
-            finally {
-               player.close();
             }
-            
-         } 
-             catch (MidiUnavailableException mue) {
-               mue.printStackTrace();   
-            } 
-             catch (InvalidMidiDataException imde) {
-               imde.printStackTrace();
+         }
+      
+         // Wakes whoever waits for the event, whether or not it could be played.
+          private synchronized void markPlayed() {
+            played = true;
+            notifyAll();
+         }
+      
+          private synchronized void awaitPlayed() throws InterruptedException {
+            while (!played) {
+               wait();
             }
+         }
       }
    }
-
-class EndOfTrackListener implements javax.sound.midi.MetaEventListener {
-
-   private boolean endedYet = false;
-   
-   public synchronized void meta(javax.sound.midi.MetaMessage m){
-      if(m.getType() == 47){
-	 endedYet = true;
-	 notifyAll();
-      }
-   }
-
-   public synchronized void awaitEndOfTrack() throws InterruptedException {
-      while(!endedYet){
-	 wait();
-      }
-   }
-}
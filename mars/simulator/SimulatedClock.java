@@ -0,0 +1,85 @@
+   package mars.simulator;
+
+   import mars.Globals;
+   import mars.Settings;
+
+/**
+ * Time as seen by the running MIPS program: the Time and Sleep syscalls, and devices
+ * such as the Keyboard and Display MMIO Simulator whose delays are measured in
+ * executed instructions.
+ * <br><br>
+ * Normally time is the computer's own and sleeping really waits.  With virtual time
+ * (Settings.VIRTUAL_TIME_ENABLED, the "vt" command-line option), time starts at 0 when
+ * the program is assembled or reset and advances by one millisecond for every
+ * Globals.virtualTimeInstructionsPerMillisecond instructions executed, and by the length
+ * of each sleep, which returns at once.  A run then takes as long as its instructions
+ * take to simulate, and the times it sees are the same on every run.
+ **/
+
+   public class SimulatedClock {
+      // Written only by the simulator thread
+      private static long instructionCount = 0;
+      private static long sleptMilliseconds = 0;
+
+   /**
+    * Starts the clock over for a new run of the program: no instructions executed and,
+    * with virtual time, time 0.
+    */
+       public static void reset() {
+         instructionCount = 0;
+         sleptMilliseconds = 0;
+      }
+
+   /**
+    * Records the execution of one instruction.  Called by the simulator only.
+    */
+       static void tick() {
+         instructionCount++;
+      }
+
+   /**
+    * @return number of instructions executed since the clock was last reset.
+    */
+       public static long getInstructionCount() {
+         return instructionCount;
+      }
+
+   /**
+    * @return true if the program sees virtual time rather than the computer's time.
+    */
+       public static boolean isVirtual() {
+         return Globals.getSettings().getBooleanSetting(Settings.VIRTUAL_TIME_ENABLED);
+      }
+
+   /**
+    * @return current time in milliseconds: since January 1, 1970 UTC, or with virtual
+    * time, since the clock was last reset.
+    */
+       public static long currentTimeMillis() {
+         if (isVirtual()) {
+            return instructionCount / Math.max(Globals.virtualTimeInstructionsPerMillisecond, 1) + sleptMilliseconds;
+         }
+         return System.currentTimeMillis();
+      }
+
+   /**
+    * Waits for the given time, or with virtual time advances the clock by it and returns at once.
+    *
+    * @param milliseconds time to sleep.  0 or less does not sleep.
+    */
+       public static void sleep(int milliseconds) {
+         if (milliseconds <= 0) {
+            return;
+         }
+         if (isVirtual()) {
+            sleptMilliseconds += milliseconds;
+            return;
+         }
+         try {
+            Thread.sleep(milliseconds);
+         }
+             catch (InterruptedException e) {
+               // no exception handling
+            }
+      }
+   }
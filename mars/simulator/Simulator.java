@@ -121,6 +121,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             Object dun = simulatorThread.get(); // this should emulate join()
             ProcessingException pe = simulatorThread.pe;
             boolean done = simulatorThread.done;
+            SystemIO.flushConsoleOutput();
             if (done) SystemIO.resetFiles(); // close any files opened in MIPS progra
             this.simulatorThread = null;
             if (pe != null) {
@@ -142,6 +143,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public void stopExecution(AbstractAction actor) {
       
          if (simulatorThread != null) {
+            SystemIO.flushConsoleOutput();
             simulatorThread.setStop(actor);
             for (StopListener l : stopListeners) {
                l.stopped(this);
@@ -383,6 +385,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                         }
                      }
                }// end synchronized block
+               SimulatedClock.tick();
             	
             	///////// DPS 15 June 2007.  Handle delayed branching if it occurs./////
                if (DelayedBranch.isTriggered()) {
@@ -398,6 +401,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                if (stop == true) { 
                   this.constructReturnReason = PAUSE_OR_STOP;
                   this.done = false;
+                  SystemIO.flushFiles(); // write out what the MIPS program wrote to its files
                   Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
                   return new Boolean(done);
                }
@@ -406,6 +410,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                (Arrays.binarySearch(breakPoints,RegisterFile.getProgramCounter()) >= 0)) {
                   this.constructReturnReason = BREAKPOINT;
                   this.done = false;
+                  SystemIO.flushFiles(); // write out what the MIPS program wrote to its files
                   Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
                   return new Boolean(done); // false;
                }
@@ -415,6 +420,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   if (steps >= maxSteps) {
                      this.constructReturnReason = MAX_STEPS;
                      this.done = false;
+                     SystemIO.flushFiles(); // write out what the MIPS program wrote to its files
                      Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
                      return new Boolean(done);// false;
                   }
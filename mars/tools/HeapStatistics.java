@@ -0,0 +1,159 @@
+   package mars.tools;
+
+   import java.awt.GridBagConstraints;
+   import java.awt.GridBagLayout;
+   import java.awt.Insets;
+   import java.awt.event.ActionEvent;
+   import java.awt.event.ActionListener;
+   import java.util.Observable;
+
+   import javax.swing.JComponent;
+   import javax.swing.JLabel;
+   import javax.swing.JPanel;
+   import javax.swing.JProgressBar;
+   import javax.swing.JTextField;
+   import javax.swing.Timer;
+
+   import mars.mips.hardware.AccessNotice;
+   import mars.mips.hardware.Memory;
+   import mars.mips.instructions.syscalls.HeapAllocator;
+
+/**
+ * Shows the statistics the heap allocator behind the Malloc and Free syscalls keeps
+ * for the current run: blocks allocated and freed, bytes live now and at the peak,
+ * bytes taken from the heap and free in it, and how fragmented the free memory is.
+ * <br><br>
+ * The display is brought up to date a few times a second while the tool is connected,
+ * on the event dispatch thread.  It is not updated on the heap accesses themselves:
+ * those the allocator makes all come during a call, before its statistics are final.
+ **/
+
+   public class HeapStatistics extends AbstractMarsToolAndApplication {
+      private static String name    = "Heap Statistics";
+      private static String version = "Version 1.0";
+      private static String heading = "Statistics of the Malloc and Free syscalls";
+
+      private JTextField allocationsField;
+      private JTextField freesField;
+      private JTextField liveBytesField;
+      private JTextField peakLiveBytesField;
+      private JTextField heapBytesField;
+      private JTextField freeBytesField;
+      private JTextField largestFreeBlockField;
+      private JProgressBar fragmentationBar;
+      private int shownChangeCount = -1; // HeapAllocator change count of the values shown
+      private Timer refreshTimer;
+      private static final int REFRESH_MILLISECONDS = 200;
+
+   /**
+    * Simple constructor, likely used to run a stand-alone heap statistics display.
+    * @param title String containing title for title bar
+    * @param heading String containing text for heading shown in upper part of window.
+    */
+       public HeapStatistics(String title, String heading) {
+         super(title, heading);
+      }
+
+   /**
+    * Simple constructor, likely used by the MARS Tools menu mechanism.
+    */
+       public HeapStatistics() {
+         super(name + ", " + version, heading);
+      }
+
+       public String getName() {
+         return name;
+      }
+
+       protected JComponent buildMainDisplayArea() {
+         JPanel panel = new JPanel(new GridBagLayout());
+         GridBagConstraints c = new GridBagConstraints();
+         c.gridy = 0;
+         allocationsField = addRow(panel, c, "Allocations: ");
+         freesField = addRow(panel, c, "Frees: ");
+         liveBytesField = addRow(panel, c, "Live bytes: ");
+         peakLiveBytesField = addRow(panel, c, "Peak live bytes: ");
+         heapBytesField = addRow(panel, c, "Heap bytes: ");
+         freeBytesField = addRow(panel, c, "Free bytes: ");
+         largestFreeBlockField = addRow(panel, c, "Largest free block: ");
+         fragmentationBar = new JProgressBar(JProgressBar.HORIZONTAL, 0, 100);
+         fragmentationBar.setStringPainted(true);
+         fragmentationBar.setToolTipText("Percentage of free bytes outside the largest free block");
+         c.anchor = GridBagConstraints.LINE_END;
+         c.gridx = 0;
+         panel.add(new JLabel("Fragmentation: "), c);
+         c.anchor = GridBagConstraints.LINE_START;
+         c.gridx = 1;
+         panel.add(fragmentationBar, c);
+         return panel;
+      }
+
+       protected void initializePostGUI() {
+         refresh();
+         refreshTimer = new Timer(REFRESH_MILLISECONDS,
+                new ActionListener() {
+                   public void actionPerformed(ActionEvent e) {
+                     if (isObserving()) {
+                        refresh();
+                     }
+                  }
+               });
+         refreshTimer.start();
+      }
+
+       protected void performSpecialClosingDuties() {
+         if (refreshTimer != null) {
+            refreshTimer.stop();
+         }
+      }
+
+       protected void addAsObserver() {
+         addAsObserver(Memory.heapBaseAddress, Memory.dataSegmentLimitAddress);
+      }
+
+       protected void processMIPSUpdate(Observable resource, AccessNotice notice) {
+         // Nothing to record: the allocator keeps the statistics.
+      }
+
+   /**
+    * Shows the allocator's statistics afresh.  They belong to the program run, so
+    * they are not cleared.
+    */
+       protected void reset() {
+         shownChangeCount = -1;
+         refresh();
+      }
+
+      // Shows the statistics if they changed since last shown.
+       private void refresh() {
+         if (HeapAllocator.getChangeCount() == shownChangeCount) {
+            return;
+         }
+         shownChangeCount = HeapAllocator.getChangeCount();
+         allocationsField.setText(String.valueOf(HeapAllocator.getAllocations()));
+         freesField.setText(String.valueOf(HeapAllocator.getFrees()));
+         liveBytesField.setText(String.valueOf(HeapAllocator.getLiveBytes()));
+         peakLiveBytesField.setText(String.valueOf(HeapAllocator.getPeakLiveBytes()));
+         heapBytesField.setText(String.valueOf(HeapAllocator.getHeapBytes()));
+         freeBytesField.setText(String.valueOf(HeapAllocator.getFreeBytes()));
+         largestFreeBlockField.setText(String.valueOf(HeapAllocator.getLargestFreeBlock()));
+         int fragmentation = (int) Math.round(HeapAllocator.getFragmentation());
+         fragmentationBar.setValue(fragmentation);
+         fragmentationBar.setString(fragmentation + "%");
+      }
+
+      // Adds a labelled read-only field as the next row of the panel.
+       private JTextField addRow(JPanel panel, GridBagConstraints c, String label) {
+         JTextField field = new JTextField("0", 10);
+         field.setEditable(false);
+         c.insets = new Insets(0, 0, 3, 0);
+         c.anchor = GridBagConstraints.LINE_END;
+         c.gridx = 0;
+         panel.add(new JLabel(label), c);
+         c.anchor = GridBagConstraints.LINE_START;
+         c.gridx = 1;
+         panel.add(field, c);
+         c.gridy++;
+         return field;
+      }
+   }
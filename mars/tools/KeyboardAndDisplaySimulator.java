@@ -11,6 +11,7 @@
    import mars.venus.RunSpeedPanel;
    import mars.mips.hardware.*;
    import mars.simulator.Exceptions;
+   import mars.simulator.SimulatedClock;
    import javax.swing.text.DefaultCaret;
 
 
@@ -88,8 +89,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       public static int TRANSMITTER_CONTROL; // display Ready in low-order bit
       public static int TRANSMITTER_DATA;    // display character in low-order byte
    	// These are used to track instruction counts to simulate driver delay of Transmitter Data
+      // The count is kept by the simulated clock, so that delays are in the same time as the Time and Sleep syscalls.
       private boolean countingInstructions;
-      private int instructionCount;
+      private long delayStartInstructionCount;
       private int transmitDelayInstructionCountLimit;
       private int currentDelayInstructionLimit;
    
@@ -252,19 +254,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             intWithCharacterToDisplay = notice.getValue();
             if (!displayAfterDelay) displayCharacter(intWithCharacterToDisplay); 
             this.countingInstructions = true;
-            this.instructionCount = 0;
+            this.delayStartInstructionCount = SimulatedClock.getInstructionCount();
             this.transmitDelayInstructionCountLimit = generateDelay();
          }
       	// We have been notified of a MIPS instruction execution.
-      	// If we are in transmit delay period, increment instruction count and if limit
-      	// has been reached, set the transmitter Ready flag to indicate the MIPS program
+      	// If we are in transmit delay period and enough instructions have been executed
+      	// since it began, set the transmitter Ready flag to indicate the MIPS program
       	// can write another character to the transmitter data register.  If the Interrupt-Enabled
       	// bit had been set by the MIPS program, generate an interrupt!
          if (   this.countingInstructions &&
                 notice.getAccessType()==AccessNotice.READ &&
                 (Memory.inTextSegment(notice.getAddress()) || Memory.inKernelTextSegment(notice.getAddress()))) {
-            this.instructionCount++;
-            if (this.instructionCount >= this.transmitDelayInstructionCountLimit) {
+            // The clock starts over when the program is assembled or reset, which does not reset
+            // this tool.  The delay then starts over too, rather than waiting for the old count.
+            if (SimulatedClock.getInstructionCount() < this.delayStartInstructionCount) {
+               this.delayStartInstructionCount = SimulatedClock.getInstructionCount();
+            }
+            if (SimulatedClock.getInstructionCount() - this.delayStartInstructionCount >= this.transmitDelayInstructionCountLimit) {
                if (displayAfterDelay) displayCharacter(intWithCharacterToDisplay);
                this.countingInstructions = false;
                int updatedTransmitterControl =  readyBitSet(TRANSMITTER_CONTROL);
@@ -774,7 +780,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	// Here we simly initialize (or reset) the variables.
       private void initializeTransmitDelaySimulator() {
          this.countingInstructions = false;
-         this.instructionCount = 0;
+         this.delayStartInstructionCount = 0;
          this.transmitDelayInstructionCountLimit = this.generateDelay();
       }
    
@@ -4,6 +4,7 @@
    import java.awt.*;
    import java.awt.event.*;
    import javax.swing.*;
+   import javax.swing.event.*;
    import mars.mips.instructions.*;
 
 public class LanguageSwitcher implements MarsTool{
@@ -15,17 +16,26 @@ public class LanguageSwitcher implements MarsTool{
         JFrame frame = new JFrame("Language Switcher");
         JMenu menu = new JMenu("Select Language");
         JMenuBar test = new JMenuBar();
-        for (CustomAssembly c : LanguageLoader.assemblyList){
-              JMenuItem assemblyAction = new JMenuItem(new LanguageAction(c.getName(),
-                                            null,
-               									  c.getDescription(),
-               									  null,null,
-               									  Globals.getGui(), c, LanguageLoader.assemblyList, menu, (EditTabbedPane) Globals.getGui().getMainPane().getEditTabbedPane(), frame));
-            if (c.enabled){
-               assemblyAction.setBackground(new Color(200, 221, 242));
-            }
-            menu.add(assemblyAction);
-         }
+        addLanguages(menu, frame);
+        // Languages are added, removed and replaced when their files change (see
+        // LanguageLoader.watchForChanges()), so the items are rebuilt each time the menu opens.
+        menu.addMenuListener(
+                new MenuListener()
+                {
+                    public void menuSelected(MenuEvent e)
+                    {
+                    menu.removeAll();
+                    addLanguages(menu, frame);
+                    }
+
+                    public void menuDeselected(MenuEvent e)
+                    {
+                    }
+
+                    public void menuCanceled(MenuEvent e)
+                    {
+                    }
+                });
         JPanel buttonPanel = new JPanel();
         JButton clearButton = new JButton("Clear");
         buttonPanel.add(clearButton);
@@ -49,4 +59,19 @@ public class LanguageSwitcher implements MarsTool{
         frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE); // changed 12/12/09 DPS (was EXIT)
         frame.setVisible(true); // show();
     }
+
+    // Adds an item to the menu for each language in LanguageLoader.assemblyList.
+    private void addLanguages(JMenu menu, JFrame frame){
+        for (CustomAssembly c : LanguageLoader.assemblyList){
+              JMenuItem assemblyAction = new JMenuItem(new LanguageAction(c.getName(),
+                                            null,
+               									  c.getDescription(),
+               									  null,null,
+               									  Globals.getGui(), c, LanguageLoader.assemblyList, menu, (EditTabbedPane) Globals.getGui().getMainPane().getEditTabbedPane(), frame));
+            if (c.enabled){
+               assemblyAction.setBackground(new Color(200, 221, 242));
+            }
+            menu.add(assemblyAction);
+         }
+    }
 }
\ No newline at end of file
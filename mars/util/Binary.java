@@ -566,6 +566,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return value << ((3-bite)<<3) >>> 24;
       }
      
+   /**
+    * Quick test of whether a string starting with the given character could be
+    * accepted by stringToInt(): only a digit, sign or '#' can begin one.  Lets callers
+    * avoid the cost of a NumberFormatException for strings that are clearly not numbers.
+    * Note that Integer.decode() accepts any Unicode digit, not only 0-9.
+    *
+    * @param c first character of the string
+    *
+    * @return Returns <tt>false</tt> if stringToInt() would certainly reject the string.
+    **/
+       public static boolean mayStartNumber(char c) {
+         return Character.isDigit(c) || c == '+' || c == '-' || c == '#';
+      }
+     
            // KENV 1/4/05
    /**
     * Parsing method to see if a string represents a hex number.
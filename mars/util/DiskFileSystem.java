@@ -0,0 +1,41 @@
+   package mars.util;
+
+   import java.io.FileNotFoundException;
+   import java.io.IOException;
+   import java.nio.channels.FileChannel;
+   import java.nio.channels.SeekableByteChannel;
+   import java.nio.file.Files;
+   import java.nio.file.InvalidPathException;
+   import java.nio.file.Path;
+   import java.nio.file.Paths;
+   import java.nio.file.StandardOpenOption;
+
+/**
+ * The computer's own files, named relative to the directory MARS was started in.
+ * This is the file system MIPS programs see unless another is set.
+ **/
+
+   public class DiskFileSystem implements ProgramFileSystem {
+
+       public SeekableByteChannel openForReading(String filename) throws IOException {
+         Path path = getPath(filename);
+         if (Files.isDirectory(path)) {
+            throw new FileNotFoundException(filename); // as FileInputStream does
+         }
+         return FileChannel.open(path, StandardOpenOption.READ);
+      }
+
+       public SeekableByteChannel openForWriting(String filename, boolean append) throws IOException {
+         return FileChannel.open(getPath(filename), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+            append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+      }
+
+       private static Path getPath(String filename) throws IOException {
+         try {
+            return Paths.get(filename);
+         }
+             catch (InvalidPathException e) {
+               throw new FileNotFoundException(filename);
+            }
+      }
+   }
@@ -0,0 +1,175 @@
+   package mars.util;
+
+   import java.io.ByteArrayInputStream;
+   import java.io.ByteArrayOutputStream;
+   import java.io.FileInputStream;
+   import java.io.IOException;
+   import java.io.InputStream;
+
+/**
+ * Where a MIPS program run from the command line gets its input: the read syscalls,
+ * reads from file descriptor 0, and the input and confirm dialog syscalls, which have
+ * no dialog to show.  Input is read ahead into a buffer shared by line and byte reads,
+ * so the two can be mixed without either losing input the other has buffered.
+ * <br><br>
+ * Input normally comes from standard input, but can come from a file (the "in"
+ * command-line option), an array of bytes, or a list of responses, one per read.
+ **/
+
+   public class InputSource {
+      private static final int BUFFER_SIZE = 65536;
+
+      private InputStream in;
+      private byte[] buffer;
+      private int position = 0; // next byte to return
+      private int limit = 0;    // end of bytes read into the buffer
+      private boolean endOfInput = false;
+      private boolean skipLineFeed = false; // the last line ended in '\r', which may be followed by '\n'
+
+   /**
+    * Creates a source that reads ahead from a stream.
+    *
+    * @param in the stream.
+    */
+       public InputSource(InputStream in) {
+         this.in = in;
+         this.buffer = new byte[BUFFER_SIZE];
+      }
+
+      // Source whose input is all in the buffer already
+       private InputSource(byte[] bytes) {
+         this.in = new ByteArrayInputStream(new byte[0]);
+         this.buffer = bytes;
+         this.limit = bytes.length;
+      }
+
+   /**
+    * @param filename name of a file to take input from.
+    * @return a source reading the file.
+    * @throws IOException if the file cannot be opened.
+    */
+       public static InputSource fromFile(String filename) throws IOException {
+         return new InputSource(new FileInputStream(filename));
+      }
+
+   /**
+    * @param bytes input bytes.  The array is used as is, not copied.
+    * @return a source reading the bytes.
+    */
+       public static InputSource fromBytes(byte[] bytes) {
+         return new InputSource(bytes);
+      }
+
+   /**
+    * @param responses responses to give, one per line read or dialog answered.
+    * @return a source giving the responses, each followed by a newline for byte reads.
+    */
+       public static InputSource fromResponses(String[] responses) {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         for (int i = 0; i < responses.length; i++) {
+            byte[] response = (responses[i] + "\n").getBytes();
+            bytes.write(response, 0, response.length);
+         }
+         return fromBytes(bytes.toByteArray());
+      }
+
+   /**
+    * Reads a line of input, as BufferedReader does: the line ends with '\n', '\r'
+    * or "\r\n", which is not returned.
+    *
+    * @return the line, or null at end of input.
+    * @throws IOException if the input cannot be read.
+    */
+       public synchronized String readLine() throws IOException {
+         ByteArrayOutputStream line = null;
+         while (true) {
+            if (position == limit && !fill()) {
+               if (line == null) {
+                  return null;
+               }
+               return line.toString(); // last line had no line end
+            }
+            if (skipLineFeed) {
+               skipLineFeed = false;
+               if (buffer[position] == '\n') {
+                  position++;
+                  continue;
+               }
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '\n' && buffer[position] != '\r') {
+               position++;
+            }
+            if (position < limit) {
+               // Found the line end
+               skipLineFeed = (buffer[position] == '\r');
+               String result;
+               if (line == null) {
+                  result = new String(buffer, start, position - start);
+               }
+               else {
+                  line.write(buffer, start, position - start);
+                  result = line.toString();
+               }
+               position++;
+               return result;
+            }
+            if (line == null) {
+               line = new ByteArrayOutputStream();
+            }
+            line.write(buffer, start, position - start);
+         }
+      }
+
+   /**
+    * Reads up to the given number of bytes, waiting only until some are available.
+    *
+    * @param bytes array to read into, from index 0.
+    * @param length maximum number of bytes to read.
+    * @return number of bytes read, or -1 at end of input.
+    * @throws IOException if the input cannot be read.
+    */
+       public synchronized int read(byte[] bytes, int length) throws IOException {
+         if (length <= 0) {
+            return 0;
+         }
+         if (skipLineFeed) {
+            skipLineFeed = false;
+            if ((position < limit || fill()) && buffer[position] == '\n') {
+               position++;
+            }
+         }
+         if (position == limit) {
+            if (length >= buffer.length) {
+               // Too long to gain from the buffer
+               int count = in.read(bytes, 0, length);
+               if (count < 0) {
+                  endOfInput = true;
+               }
+               return count;
+            }
+            if (!fill()) {
+               return -1;
+            }
+         }
+         int count = Math.min(length, limit - position);
+         System.arraycopy(buffer, position, bytes, 0, count);
+         position += count;
+         return count;
+      }
+
+      // Reads what is available into the empty buffer.  Returns false at end of input.
+       private boolean fill() throws IOException {
+         if (endOfInput) {
+            return false;
+         }
+         int count = in.read(buffer, 0, buffer.length);
+         if (count <= 0) {
+            endOfInput = true;
+            return false;
+         }
+         position = 0;
+         limit = count;
+         return true;
+      }
+   }
@@ -0,0 +1,340 @@
+   package mars.util;
+
+   import java.io.ByteArrayOutputStream;
+   import java.io.File;
+   import java.io.FileInputStream;
+   import java.io.FileNotFoundException;
+   import java.io.FileOutputStream;
+   import java.io.IOException;
+   import java.io.InputStream;
+   import java.nio.ByteBuffer;
+   import java.nio.channels.ClosedChannelException;
+   import java.nio.channels.NonReadableChannelException;
+   import java.nio.channels.NonWritableChannelException;
+   import java.nio.channels.SeekableByteChannel;
+   import java.nio.file.Files;
+   import java.util.ArrayList;
+   import java.util.Arrays;
+   import java.util.HashMap;
+   import java.util.zip.ZipEntry;
+   import java.util.zip.ZipInputStream;
+
+/**
+ * Files kept in memory, for running MIPS programs without touching the disk: for
+ * instance to grade many runs, each starting from the same files and each checked
+ * by the files it leaves behind.  Files can be loaded from a directory or a zip
+ * archive before the run, and read back, or saved to a directory, after it.
+ * <br><br>
+ * Names are paths relative to the root of the file system, with '/' or '\' between
+ * directories.  "." and ".." are resolved, and a leading '/' is ignored, so a program
+ * cannot name anything outside.  Directories exist only as parts of file names.
+ **/
+
+   public class MemoryFileSystem implements ProgramFileSystem {
+      private static final int MAXIMUM_FILE_SIZE = Integer.MAX_VALUE - 8; // largest array most VMs allocate
+
+      private HashMap files = new HashMap(); // name -> MemoryFile
+
+   /**
+    * Creates a file system with no files.
+    */
+       public MemoryFileSystem() {
+      }
+
+   /**
+    * @param directory directory whose files, including those in its subdirectories, to load.
+    * @return a file system holding copies of the files, named relative to the directory.
+    * @throws IOException if the directory or one of its files cannot be read.
+    */
+       public static MemoryFileSystem fromDirectory(String directory) throws IOException {
+         File root = new File(directory);
+         if (!root.isDirectory()) {
+            throw new FileNotFoundException(directory + " is not a directory");
+         }
+         MemoryFileSystem fileSystem = new MemoryFileSystem();
+         fileSystem.loadDirectory(root, "");
+         return fileSystem;
+      }
+
+   /**
+    * @param archive zip file whose entries to load.
+    * @return a file system holding the files in the archive, named as they are there.
+    * @throws IOException if the archive cannot be read.
+    */
+       public static MemoryFileSystem fromArchive(String archive) throws IOException {
+         MemoryFileSystem fileSystem = new MemoryFileSystem();
+         ZipInputStream in = new ZipInputStream(new FileInputStream(archive));
+         try {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+               if (!entry.isDirectory()) {
+                  fileSystem.putFile(entry.getName(), readAll(in));
+               }
+            }
+         }
+         finally {
+            in.close();
+         }
+         return fileSystem;
+      }
+
+   /**
+    * Adds a file, replacing any file of the same name.
+    *
+    * @param filename name of the file.
+    * @param contents contents of the file.  The array is copied.
+    */
+       public synchronized void putFile(String filename, byte[] contents) {
+         MemoryFile file = new MemoryFile();
+         file.data = (byte[]) contents.clone();
+         file.size = contents.length;
+         files.put(normalize(filename), file);
+      }
+
+   /**
+    * @param filename name of a file.
+    * @return a copy of the contents of the file, or null if there is no such file.
+    */
+       public synchronized byte[] getFile(String filename) {
+         MemoryFile file = (MemoryFile) files.get(normalize(filename));
+         if (file == null) {
+            return null;
+         }
+         synchronized (file) {
+            return Arrays.copyOf(file.data, file.size);
+         }
+      }
+
+   /**
+    * @param writtenOnly true for only the files opened for writing since they were loaded.
+    * @return the names of the files, sorted.
+    */
+       public synchronized String[] getFilenames(boolean writtenOnly) {
+         ArrayList names = new ArrayList();
+         Object[] keys = files.keySet().toArray();
+         for (int i = 0; i < keys.length; i++) {
+            if (!writtenOnly || ((MemoryFile) files.get(keys[i])).written) {
+               names.add(keys[i]);
+            }
+         }
+         String[] result = (String[]) names.toArray(new String[names.size()]);
+         Arrays.sort(result);
+         return result;
+      }
+
+   /**
+    * Saves files to a directory on disk, creating it and any subdirectories needed.
+    *
+    * @param directory directory to save the files in.
+    * @param writtenOnly true to save only the files opened for writing since they were loaded.
+    * @throws IOException if a file cannot be written.
+    */
+       public void saveFiles(String directory, boolean writtenOnly) throws IOException {
+         String[] names = getFilenames(writtenOnly);
+         for (int i = 0; i < names.length; i++) {
+            File file = new File(directory, names[i].replace('/', File.separatorChar));
+            File parent = file.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+               throw new IOException("Cannot create directory " + parent);
+            }
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+               out.write(getFile(names[i]));
+            }
+            finally {
+               out.close();
+            }
+         }
+      }
+
+       public synchronized SeekableByteChannel openForReading(String filename) throws IOException {
+         MemoryFile file = (MemoryFile) files.get(normalize(filename));
+         if (file == null) {
+            throw new FileNotFoundException(filename);
+         }
+         return new MemoryChannel(file, false, false);
+      }
+
+       public synchronized SeekableByteChannel openForWriting(String filename, boolean append) throws IOException {
+         String name = normalize(filename);
+         if (name.length() == 0) {
+            throw new FileNotFoundException(filename);
+         }
+         MemoryFile file = (MemoryFile) files.get(name);
+         if (file == null) {
+            file = new MemoryFile();
+            files.put(name, file);
+         }
+         synchronized (file) {
+            file.written = true;
+            if (!append) {
+               file.size = 0;
+            }
+         }
+         return new MemoryChannel(file, true, append);
+      }
+
+      // Loads the files under a directory, prefixing their names with the given path.
+       private void loadDirectory(File directory, String path) throws IOException {
+         File[] entries = directory.listFiles();
+         if (entries == null) {
+            throw new IOException("Cannot list directory " + directory);
+         }
+         for (int i = 0; i < entries.length; i++) {
+            if (entries[i].isDirectory()) {
+               loadDirectory(entries[i], path + entries[i].getName() + "/");
+            }
+            else {
+               putFile(path + entries[i].getName(), Files.readAllBytes(entries[i].toPath()));
+            }
+         }
+      }
+
+       private static byte[] readAll(InputStream in) throws IOException {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         byte[] buffer = new byte[8192];
+         int count;
+         while ((count = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, count);
+         }
+         return bytes.toByteArray();
+      }
+
+      // Name relative to the root, with "." and ".." resolved and '/' between directories.
+       private static String normalize(String filename) {
+         String[] parts = filename.replace('\\', '/').split("/");
+         ArrayList path = new ArrayList();
+         for (int i = 0; i < parts.length; i++) {
+            if (parts[i].equals("..")) {
+               if (path.size() > 0) {
+                  path.remove(path.size() - 1);
+               }
+            }
+            else if (parts[i].length() > 0 && !parts[i].equals(".")) {
+               path.add(parts[i]);
+            }
+         }
+         StringBuffer name = new StringBuffer();
+         for (int i = 0; i < path.size(); i++) {
+            if (i > 0) {
+               name.append('/');
+            }
+            name.append((String) path.get(i));
+         }
+         return name.toString();
+      }
+
+       private static class MemoryFile {
+         private byte[] data = new byte[0];
+         private int size = 0;
+         private boolean written = false;
+      }
+
+      // Channel reading or writing a MemoryFile, which it locks for each operation.
+       private static class MemoryChannel implements SeekableByteChannel {
+         private MemoryFile file;
+         private boolean writing;
+         private boolean append;
+         private long position = 0;
+         private boolean open = true;
+
+          private MemoryChannel(MemoryFile file, boolean writing, boolean append) {
+            this.file = file;
+            this.writing = writing;
+            this.append = append;
+         }
+
+          public int read(ByteBuffer dst) throws IOException {
+            checkOpen();
+            if (writing) {
+               throw new NonReadableChannelException();
+            }
+            synchronized (file) {
+               if (position >= file.size) {
+                  return -1;
+               }
+               int count = (int) Math.min(dst.remaining(), file.size - position);
+               dst.put(file.data, (int) position, count);
+               position += count;
+               return count;
+            }
+         }
+
+          public int write(ByteBuffer src) throws IOException {
+            checkOpen();
+            if (!writing) {
+               throw new NonWritableChannelException();
+            }
+            synchronized (file) {
+               if (append) {
+                  position = file.size;
+               }
+               int count = src.remaining();
+               long end = position + count;
+               if (end > MAXIMUM_FILE_SIZE) {
+                  throw new IOException("File too large");
+               }
+               if (end > file.data.length) {
+                  file.data = Arrays.copyOf(file.data, (int) Math.min(Math.max(end, 2L * file.data.length), MAXIMUM_FILE_SIZE));
+               }
+               if (position > file.size) {
+                  Arrays.fill(file.data, file.size, (int) position, (byte) 0); // gap left by seeking past the end
+               }
+               src.get(file.data, (int) position, count);
+               position = end;
+               file.size = Math.max(file.size, (int) end);
+               return count;
+            }
+         }
+
+          public long position() throws IOException {
+            checkOpen();
+            return position;
+         }
+
+          public SeekableByteChannel position(long newPosition) throws IOException {
+            checkOpen();
+            if (newPosition < 0) {
+               throw new IllegalArgumentException();
+            }
+            position = newPosition;
+            return this;
+         }
+
+          public long size() throws IOException {
+            checkOpen();
+            synchronized (file) {
+               return file.size;
+            }
+         }
+
+          public SeekableByteChannel truncate(long size) throws IOException {
+            checkOpen();
+            if (size < 0) {
+               throw new IllegalArgumentException();
+            }
+            if (!writing) {
+               throw new NonWritableChannelException();
+            }
+            synchronized (file) {
+               file.size = (int) Math.min(file.size, size);
+            }
+            position = Math.min(position, size);
+            return this;
+         }
+
+          public boolean isOpen() {
+            return open;
+         }
+
+          public void close() {
+            open = false;
+         }
+
+          private void checkOpen() throws IOException {
+            if (!open) {
+               throw new ClosedChannelException();
+            }
+         }
+      }
+   }
@@ -0,0 +1,290 @@
+   package mars.util;
+
+   import java.io.BufferedInputStream;
+   import java.io.BufferedOutputStream;
+   import java.io.DataInputStream;
+   import java.io.DataOutputStream;
+   import java.io.File;
+   import java.io.FileInputStream;
+   import java.io.FileOutputStream;
+   import java.io.IOException;
+   import java.lang.reflect.Modifier;
+   import java.net.URI;
+   import java.net.URL;
+   import java.nio.file.Files;
+   import java.nio.file.StandardCopyOption;
+   import java.util.ArrayList;
+   import java.util.Enumeration;
+   import java.util.HashMap;
+   import java.util.LinkedHashSet;
+   import java.util.Map;
+
+/**
+ * Index of the plugins MARS finds at startup: tools, syscalls, dump formats and
+ * custom languages.  Finding them means listing directories and JAR files on the
+ * classpath and loading every class in them to see which qualify, which is most of
+ * the time MARS takes to start.  The index records what was found for each kind of
+ * plugin along with a fingerprint of where it was found (the names, sizes and
+ * modification times of the files), so later runs with the same classpath load only
+ * the classes that qualified, and only when that kind of plugin is first used.
+ * <br><br>
+ * The index is kept in one small file in the user's home directory.  It is only a
+ * cache: if it is missing, unreadable, stale or cannot be written, plugins are found
+ * by scanning as before.
+ **/
+
+   public class PluginRegistry {
+      private static final int INDEX_MAGIC = 0x4D504C47; // "MPLG"
+      private static final int INDEX_VERSION = 1;
+      private static final String INDEX_FILE = ".mars-plugins.index";
+      private static final String CLASS_EXTENSION = "class";
+
+      // Section name to Section, read from the index file the first time it is needed
+      private static HashMap sections = null;
+
+   /**
+    * Used when plugins are found to record, along with each class, anything else about
+    * it that will be needed before it is used, such as the name of a tool for the Tools menu.
+    */
+       public interface Describer {
+      /**
+       * @param pluginClass a class that qualifies as a plugin.
+       * @return strings to record with its name.
+       * @throws Exception if the plugin cannot be described, in which case it is left out.
+       */
+          String[] describe(Class pluginClass) throws Exception;
+      }
+
+   /**
+    * Finds the concrete classes in a classpath directory that implement or extend a given type.
+    * The result comes from the index if nothing in the directory has changed since it was
+    * recorded; otherwise the classes are loaded, without being initialized, to check them.
+    * Classes that cannot be loaded are reported and left out.
+    *
+    * @param classLoader class loader to search and load classes with.
+    * @param directoryPath classpath directory of the classes, e.g. "mars/tools".
+    * @param pluginType type the classes must implement or extend.
+    * @param describer describes each class found, or null if only class names are needed.
+    * @return array list with a String array for each class: its fully qualified name
+    * followed by what the describer gave for it.
+    */
+       public static synchronized ArrayList getPluginClasses(ClassLoader classLoader, String directoryPath,
+                                                           Class pluginType, Describer describer) {
+         String section = directoryPath + " " + pluginType.getName();
+         String fingerprint = fingerprint(classLoader, directoryPath);
+         ArrayList records = (fingerprint == null) ? null : get(section, fingerprint);
+         if (records != null) {
+            return records;
+         }
+         records = new ArrayList();
+         String packagePrefix = directoryPath.replace('/', '.') + ".";
+         // A class may be found twice, e.g. when running in the MARS development directory
+         LinkedHashSet files = new LinkedHashSet(FilenameFinder.getFilenameList(classLoader, directoryPath, CLASS_EXTENSION));
+         for (Object file : files) {
+            String className = packagePrefix + ((String) file).substring(0, ((String) file).length() - CLASS_EXTENSION.length() - 1);
+            try {
+               Class clas = Class.forName(className, false, classLoader);
+               if (!pluginType.isAssignableFrom(clas) ||
+                   Modifier.isAbstract(clas.getModifiers()) ||
+                   Modifier.isInterface(clas.getModifiers())) {
+                  continue;
+               }
+               String[] description = (describer == null) ? new String[0] : describer.describe(clas);
+               String[] record = new String[description.length + 1];
+               record[0] = className;
+               System.arraycopy(description, 0, record, 1, description.length);
+               records.add(record);
+            }
+               catch (Throwable e) {
+                  System.out.println("Error instantiating " + pluginType.getName().substring(pluginType.getName().lastIndexOf('.') + 1)
+                     + " from file " + file + ": " + e);
+               }
+         }
+         put(section, fingerprint, records);
+         return records;
+      }
+
+   /**
+    * Gets the records last stored in a section of the index.
+    *
+    * @param section name of the section.
+    * @param fingerprint fingerprint the records must have been stored with, or null to accept any.
+    * @return array list of String arrays, or null if the section is missing or its
+    * fingerprint differs.  The list must not be changed.
+    */
+       public static synchronized ArrayList get(String section, String fingerprint) {
+         Section stored = (Section) getSections().get(section);
+         if (stored == null || (fingerprint != null && !fingerprint.equals(stored.fingerprint))) {
+            return null;
+         }
+         return stored.records;
+      }
+
+   /**
+    * Replaces the records in a section of the index and saves the index.
+    *
+    * @param section name of the section.
+    * @param fingerprint fingerprint of what the records describe.
+    * @param records array list of String arrays.
+    */
+       public static synchronized void put(String section, String fingerprint, ArrayList records) {
+         getSections().put(section, new Section(fingerprint, records));
+         write();
+      }
+
+   /*
+    * Describes the files a classpath directory's classes come from, so that adding, removing
+    * or recompiling one of them changes the fingerprint.  A directory in a JAR file is
+    * described by the JAR file.
+    */
+       private static String fingerprint(ClassLoader classLoader, String directoryPath) {
+         StringBuilder fingerprint = new StringBuilder();
+         try {
+            Enumeration urls = classLoader.getResources(directoryPath);
+            while (urls.hasMoreElements()) {
+               URL url = (URL) urls.nextElement();
+               fingerprint.append(url).append(';');
+               File directory = null;
+               if (url.getProtocol().equals("file")) {
+                  directory = new File(new URI(url.toString()).getPath());
+               }
+               else if (url.getProtocol().equals("jar") && url.getPath().startsWith("file:") && url.getPath().indexOf("!/") > 0) {
+                  File jar = new File(new URI(url.getPath().substring(0, url.getPath().indexOf("!/"))).getPath());
+                  fingerprint.append(jar.length()).append(';').append(jar.lastModified()).append(';');
+                  continue;
+               }
+               File[] files = (directory == null) ? null : directory.listFiles();
+               if (files == null) {
+                  return null; // cannot tell whether it changed
+               }
+               long newest = directory.lastModified();
+               int count = 0;
+               for (int i = 0; i < files.length; i++) {
+                  if (FilenameFinder.fileExtensionMatch(files[i].getName(), CLASS_EXTENSION)) {
+                     newest = Math.max(newest, files[i].lastModified());
+                     count++;
+                  }
+               }
+               fingerprint.append(count).append(';').append(newest).append(';');
+            }
+         }
+            catch (Exception e) {
+               return null;
+            }
+         return fingerprint.toString();
+      }
+
+       private static HashMap getSections() {
+         if (sections == null) {
+            sections = read();
+         }
+         return sections;
+      }
+
+       private static File indexFile() {
+         return new File(System.getProperty("user.home"), INDEX_FILE);
+      }
+
+       private static HashMap read() {
+         HashMap result = new HashMap();
+         File file = indexFile();
+         if (!file.isFile()) {
+            return result;
+         }
+         DataInputStream in = null;
+         try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+               return result;
+            }
+            int sectionCount = in.readInt();
+            for (int i = 0; i < sectionCount; i++) {
+               String name = in.readUTF();
+               String fingerprint = in.readUTF();
+               int recordCount = in.readInt();
+               ArrayList records = new ArrayList(recordCount);
+               for (int j = 0; j < recordCount; j++) {
+                  String[] record = new String[in.readInt()];
+                  for (int k = 0; k < record.length; k++) {
+                     record[k] = in.readUTF();
+                  }
+                  records.add(record);
+               }
+               result.put(name, new Section(fingerprint, records));
+            }
+         }
+            catch (IOException e) {
+               result.clear();
+            }
+         finally {
+            if (in != null) {
+               try { in.close(); }
+                  catch (IOException e) { }
+            }
+         }
+         return result;
+      }
+
+       private static void write() {
+         File file = indexFile();
+         File tempFile = null;
+         DataOutputStream out = null;
+         try {
+            // Write to a temporary file then move it into place, so MARS started
+            // at the same time never reads a partially written index.
+            tempFile = File.createTempFile(INDEX_FILE, ".tmp", file.getParentFile());
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            int sectionCount = 0;
+            for (Object value : sections.values()) {
+               if (((Section) value).fingerprint != null) {
+                  sectionCount++;
+               }
+            }
+            out.writeInt(sectionCount);
+            for (Object entry : sections.entrySet()) {
+               Section section = (Section) ((Map.Entry) entry).getValue();
+               if (section.fingerprint == null) {
+                  continue; // could not be fingerprinted, so could never be used
+               }
+               out.writeUTF((String) ((Map.Entry) entry).getKey());
+               out.writeUTF(section.fingerprint);
+               out.writeInt(section.records.size());
+               for (int j = 0; j < section.records.size(); j++) {
+                  String[] record = (String[]) section.records.get(j);
+                  out.writeInt(record.length);
+                  for (int k = 0; k < record.length; k++) {
+                     out.writeUTF(record[k]);
+                  }
+               }
+            }
+            out.close();
+            out = null;
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tempFile = null;
+         }
+            catch (IOException e) {
+               // Not writable; plugins will be found by scanning next time.
+            }
+         finally {
+            if (out != null) {
+               try { out.close(); }
+                  catch (IOException e) { }
+            }
+            if (tempFile != null) {
+               tempFile.delete();
+            }
+         }
+      }
+
+       private static class Section {
+         private String fingerprint;
+         private ArrayList records;
+
+          private Section(String fingerprint, ArrayList records) {
+            this.fingerprint = fingerprint;
+            this.records = records;
+         }
+      }
+   }
@@ -0,0 +1,33 @@
+   package mars.util;
+
+   import java.io.IOException;
+   import java.nio.channels.SeekableByteChannel;
+
+/**
+ * The files a MIPS program sees through the Open, Read, Write and Close syscalls.
+ * Normally these are the computer's own files (DiskFileSystem), but command-line
+ * MARS can give the program a MemoryFileSystem instead, so that a run neither reads
+ * nor changes anything on disk.  See SystemIO.setFileSystem().
+ **/
+
+   public interface ProgramFileSystem {
+
+   /**
+    * Opens an existing file for reading.
+    *
+    * @param filename name of the file, as given by the MIPS program.
+    * @return channel positioned at the start of the file.
+    * @throws IOException if the file does not exist or cannot be read.
+    */
+       public SeekableByteChannel openForReading(String filename) throws IOException;
+
+   /**
+    * Opens a file for writing, creating it if it does not exist.
+    *
+    * @param filename name of the file, as given by the MIPS program.
+    * @param append true to write after the existing contents, false to replace them.
+    * @return channel to write the file through.
+    * @throws IOException if the file cannot be created or written.
+    */
+       public SeekableByteChannel openForWriting(String filename, boolean append) throws IOException;
+   }
@@ -1,6 +1,11 @@
    package mars.util;
    import mars.*;
+   import java.awt.GraphicsEnvironment;
    import java.io.*;
+   import java.nio.ByteBuffer;
+   import java.nio.MappedByteBuffer;
+   import java.nio.channels.FileChannel;
+   import java.nio.channels.SeekableByteChannel;
    import javax.swing.*;
    import java.util.*;
 	
@@ -46,8 +51,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    {
     /** Buffer size for syscalls for file I/O */
       public static final int SYSCALL_BUFSIZE = 128;
-    /** Maximum number of files that can be open */
-      public static final int SYSCALL_MAXFILES = 32;
+    /** Maximum number of files that can be open, including standard input, output and error.
+     *  Set by MaximumOpenFiles in Config.properties. */
+      public static final int SYSCALL_MAXFILES = Math.max(Globals.maximumOpenFiles, 3);
     /** String used for description of file error */
       public static String fileErrorString = new String("File operation OK");
    
@@ -64,9 +70,58 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static final int STDOUT = 1;
       private static final int STDERR = 2;
    
-      // Will use one buffered reader for all keyboard/redirected/piped input.
-   	// Added by DPS 28 Feb 2008.  See getInputReader() below.
-      private static BufferedReader inputReader = null;
+      // Will use one input source for all keyboard/redirected/piped input.
+   	// Added by DPS 28 Feb 2008.  See getInputSource() below.
+      private static InputSource inputSource = null;
+      private static boolean inputSourceGiven = false; // by setInputSource(), as the "in" option does
+   
+      // Buffers behind System.out and System.err when running from the command line,
+      // installed by bufferConsoleOutput().  Null if console output is not buffered.
+      private static ConsoleStream consoleOut = null;
+      private static ConsoleStream consoleErr = null;
+   
+    /**
+     * Buffers System.out and System.err, for running from the command line.  Without
+     * this, a program that prints one character at a time makes a system call for each.
+     * The buffers are written out by flushConsoleOutput(), which is called before input
+     * is read, when the program exits or stops, and when MARS exits.  Writing to one of
+     * the two streams first writes out what is buffered for the other, so output to both
+     * still appears in the order it was written.
+     *
+     * @param size buffer size in bytes.  If 0 or less, the streams are left unbuffered.
+     */
+       public static void bufferConsoleOutput(int size)
+      {
+         if (size <= 0 || consoleOut != null) {
+            return;
+         }
+         System.out.flush();
+         System.err.flush();
+         consoleOut = new ConsoleStream(new FileOutputStream(FileDescriptor.out), size);
+         consoleErr = new ConsoleStream(new FileOutputStream(FileDescriptor.err), size);
+         consoleOut.other = consoleErr;
+         consoleErr.other = consoleOut;
+         System.setOut(new PrintStream(consoleOut, false));
+         System.setErr(new PrintStream(consoleErr, false));
+         Runtime.getRuntime().addShutdownHook(
+               new Thread() {
+                  public void run() {
+                     flushConsoleOutput();
+                  }
+               });
+      }
+   
+    /**
+     * Writes out anything buffered for System.out and System.err by bufferConsoleOutput().
+     * Does nothing if console output is not buffered.
+     */
+       public static void flushConsoleOutput()
+      {
+         if (consoleOut != null) {
+            System.out.flush();
+            System.err.flush();
+         }
+      }
    
     /**
      * Implements syscall to read an integer value.  
@@ -82,7 +137,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          {
             try
             {  
-               input = getInputReader().readLine();
+               input = getInputSource().readLine();
             } 
                 catch (IOException e)
                {}
@@ -117,7 +172,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          {
             try
             {
-               input = getInputReader().readLine();
+               input = getInputSource().readLine();
             } 
                 catch (IOException e)
                {}
@@ -151,7 +206,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          {
             try
             {
-               input = getInputReader().readLine();
+               input = getInputSource().readLine();
             } 
                 catch (IOException e)
                {}
@@ -201,7 +256,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          {
             try
             {
-               input = getInputReader().readLine();
+               input = getInputSource().readLine();
             } 
                 catch (IOException e)
                {}
@@ -244,7 +299,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          {
             try
             {
-               input = getInputReader().readLine();
+               input = getInputSource().readLine();
             } 
                 catch (IOException e)
                {}
@@ -302,8 +357,29 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                     "File descriptor " + fd + " is not open for writing");
             return -1;
          }
-         // retrieve FileOutputStream from storage
-         OutputStream outputStream = (OutputStream) FileIOData.getStreamInUse(fd);
+         Object stream = FileIOData.getStreamInUse(fd);
+         if (stream instanceof OpenFile) // a file opened by the program, not STDOUT or STDERR
+         {
+            try
+            {
+               ((OpenFile) stream).write(myBuffer, lengthRequested);
+            } 
+                catch (IOException e)
+               {
+                  fileErrorString = new String(
+                       "IO Exception on write of file with fd " + fd);
+                  return -1;
+               } 
+                catch (IndexOutOfBoundsException e)
+               {
+                  fileErrorString = new String(
+                       "IndexOutOfBoundsException on write of file with fd" + fd);
+                  return -1;
+               }
+            return lengthRequested;
+         }
+         // retrieve STDOUT or STDERR stream from storage
+         OutputStream outputStream = (OutputStream) stream;
          try
          {
             // Oct. 9 2005 Ken Vollmar
@@ -318,11 +394,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             
             // Oct. 9 2005 Ken Vollmar  Force the write statement to write exactly
             // the number of bytes requested, even though those bytes include many ZERO values.
-            for (int ii = 0; ii < lengthRequested; ii++)
-            {
-               outputStream.write(myBuffer[ii]); 
+            // The loop that did so made a call per byte.  Writing the array does the same
+            // in one call; OutputStream's write(byte[], int, int) does not stop at zero bytes.
+            outputStream.write(myBuffer, 0, lengthRequested);
+            // Buffered console output is written out by flushConsoleOutput()
+            if (consoleOut == null) {
+               outputStream.flush();// DPS 7-Jan-2013
             }
-            outputStream.flush();// DPS 7-Jan-2013
          } 
              catch (IOException e)
             {
@@ -371,12 +449,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                     "File descriptor " + fd + " is not open for reading");
             return -1;
          }
-        // retrieve FileInputStream from storage
-         InputStream InputStream = (InputStream) FileIOData.getStreamInUse(fd);
+        // retrieve STDIN stream or opened file from storage
+         Object stream = FileIOData.getStreamInUse(fd);
          try
          {
             // Reads up to lengthRequested bytes of data from this Input stream into an array of bytes.
-            retValue = InputStream.read(myBuffer, 0, lengthRequested);
+            if (fd == STDIN) {
+               retValue = getInputSource().read(myBuffer, lengthRequested);
+            } 
+            else if (stream instanceof OpenFile) {
+               retValue = ((OpenFile) stream).read(myBuffer, lengthRequested);
+            } 
+            else {
+               retValue = ((InputStream) stream).read(myBuffer, 0, lengthRequested);
+            }
          	// This method will return -1 upon EOF, but our spec says that negative
          	// value represents an error, so we return 0 for EOF.  DPS 10-July-2008.
             if (retValue == -1) {
@@ -416,9 +502,6 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
         // that file descriptor.
       
          int retValue = -1;
-         char ch[] = { ' '}; // Need an array to convert to String
-         FileInputStream inputStream;
-         FileOutputStream outputStream;
          int fdToUse;
       
         // Check internal plausibility of opening this file
@@ -434,29 +517,32 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          {
             try
             {
-                // Set up input stream from disk file
-               inputStream = new FileInputStream(filename);
-               FileIOData.setStreamInUse(fdToUse, inputStream); // Save stream for later use
+                // Set up channel from disk file
+               FileIOData.setStreamInUse(fdToUse, // Save file for later use
+                  OpenFile.openForReading(FileIOData.getFileSystem(), filename, FileIOData.getBuffer(fdToUse)));
             } 
-                catch (FileNotFoundException e)
+                catch (IOException e)
                {
                   fileErrorString = new String(
                         "File " + filename + " not found, open for input.");
+                  FileIOData.close(fdToUse); // free the file descriptor
                   retValue = -1;
                }
          } 
          else if ( (flags & O_WRONLY) != 0 ) // Open for writing only
          {
-            // Set up output stream to disk file
+            // Set up channel to disk file
             try
             { 
-               outputStream = new FileOutputStream(filename, ((flags & O_APPEND) != 0) );
-               FileIOData.setStreamInUse(fdToUse, outputStream); // Save stream for later use
+               FileIOData.flushFilesAtExit();
+               FileIOData.setStreamInUse(fdToUse, // Save file for later use
+                  OpenFile.openForWriting(FileIOData.getFileSystem(), filename, ((flags & O_APPEND) != 0), FileIOData.getBuffer(fdToUse)));
             } 
-                catch (FileNotFoundException e)
+                catch (IOException e)
                {
                   fileErrorString = new String(
                         "File " + filename + " not found, open for output.");
+                  FileIOData.close(fdToUse); // free the file descriptor
                   retValue = -1;
                }
          }
@@ -481,6 +567,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          FileIOData.resetFiles();
       }
    
+    /**
+     * Writes out what the MIPS program has written to its open files but is still
+     * buffered, leaving the files open.  Called whenever execution stops without the
+     * program being done, and when MARS exits, so the bytes reach the files as they
+     * would have without buffering.
+     */
+       public static void flushFiles()
+      {
+         FileIOData.flushFiles();
+      }
+   
      /**
       *  Retrieve file operation or error message
    	*
@@ -491,20 +588,286 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return fileErrorString;
       }
    
+    /**
+     * Sets the files the file syscalls open, in place of the computer's own files.
+     * Takes effect for files opened after the call.
+     *
+     * @param fileSystem the files, or null for the computer's own.
+     */
+       public static void setFileSystem(ProgramFileSystem fileSystem)
+      {
+         FileIOData.setFileSystem(fileSystem);
+      }
+   
+    /**
+     * @return the files the file syscalls open.
+     */
+       public static ProgramFileSystem getFileSystem()
+      {
+         return FileIOData.getFileSystem();
+      }
+   
+    /**
+     * Sets where a MIPS program run from the command line gets its input, in place
+     * of standard input.
+     *
+     * @param source the input source, or null for standard input.
+     */
+       public static void setInputSource(InputSource source)
+      {
+         inputSource = source;
+         inputSourceGiven = (source != null);
+      }
+   
+    /**
+     * Whether input and confirm dialog syscalls read their responses with
+     * readDialogResponse() instead of showing a dialog.  That is so when there is
+     * no GUI and either no display to show a dialog on, or the program's input was
+     * given by setInputSource().  Otherwise a command-line run shows the dialogs.
+     *
+     * @return true if dialog responses are read from the program's input.
+     */
+       public static boolean readsDialogResponses()
+      {
+         return Globals.getGui() == null && (inputSourceGiven || GraphicsEnvironment.isHeadless());
+      }
+   
+    /**
+     * Reads the response to an input or confirm dialog syscall in place of showing
+     * the dialog, when readsDialogResponses(): prints the dialog's message as a prompt,
+     * then reads the next line of input.
+     *
+     * @param message the message the dialog would show.
+     * @return the line, or null at end of input.
+     */
+       public static String readDialogResponse(String message)
+      {
+         printString(message);
+         try
+         {
+            return getInputSource().readLine();
+         } 
+             catch (IOException e)
+            {
+               return null;
+            }
+      }
+   
       ///////////////////////////////////////////////////////////////////////
-      // Private method to simply return the BufferedReader used for
-   	// keyboard input, redirected input, or piped input.
-   	// These are all equivalent in the eyes of the program because they are 
-   	// transparent to it.  Lazy instantiation.  DPS.  28 Feb 2008
+      // Private method to simply return the InputSource used for
+   	// keyboard input, redirected input, piped input, or input given by
+   	// setInputSource().  These are all equivalent in the eyes of the program
+   	// because they are transparent to it.  Lazy instantiation.  DPS.  28 Feb 2008
    	
-       private static BufferedReader getInputReader() {
-         if (inputReader == null) {
-            inputReader = new BufferedReader(new InputStreamReader(System.in));  
+       private static InputSource getInputSource() {
+         flushConsoleOutput(); // show any prompt before waiting for input
+         if (inputSource == null) {
+            inputSource = new InputSource(System.in);  
          }
-         return inputReader;
+         return inputSource;
       }
    	
    	
+    // //////////////////////////////////////////////////////////////////////////////
+    // Buffered stream to standard output or standard error, see bufferConsoleOutput().
+    // The two streams share a lock so that one can write out the other's buffer.
+    
+       private static class ConsoleStream extends OutputStream
+      {
+         private static final Object lock = new Object();
+         private OutputStream target;
+         private byte[] buffer;
+         private int count = 0;
+         private ConsoleStream other; // the other console stream, written out before this one is written to
+      
+          private ConsoleStream(OutputStream target, int size)
+         {
+            this.target = target;
+            this.buffer = new byte[size];
+         }
+      
+          public void write(int b) throws IOException
+         {
+            synchronized (lock) {
+               other.flushBuffer();
+               if (count == buffer.length) {
+                  flushBuffer();
+               }
+               buffer[count++] = (byte) b;
+            }
+         }
+      
+          public void write(byte[] b, int off, int len) throws IOException
+         {
+            synchronized (lock) {
+               other.flushBuffer();
+               if (len > buffer.length - count) {
+                  flushBuffer();
+               }
+               if (len >= buffer.length) {
+                  target.write(b, off, len);
+               } 
+               else {
+                  System.arraycopy(b, off, buffer, count, len);
+                  count += len;
+               }
+            }
+         }
+      
+          public void flush() throws IOException
+         {
+            synchronized (lock) {
+               flushBuffer();
+            }
+         }
+      
+          private void flushBuffer() throws IOException
+         {
+            if (count > 0) {
+               target.write(buffer, 0, count);
+               count = 0;
+            }
+         }
+      }
+   
+   
+   // //////////////////////////////////////////////////////////////////////////////
+   // A file opened by the MIPS program, read or written through a channel from the file
+   // system (see setFileSystem) and the direct buffer of its file descriptor.  Reads take
+   // bytes from the buffer, refilling it from the channel when it runs out.  Writes collect
+   // in the buffer until it fills, the file is closed, or execution stops (see flushFiles).
+   // Reads and writes at least as long as the buffer go straight between the channel and
+   // the MIPS program's bytes.  A disk file opened for reading that is no longer than
+   // Globals.fileMapLimit is instead memory-mapped, and the mapping is read in place of
+   // the buffer.
+
+      private static class OpenFile
+     {
+        private SeekableByteChannel channel;
+        private ByteBuffer buffer; // reading: bytes read from the file but not yet by the program; writing: bytes not yet written to the file
+        private boolean writing;
+        private boolean mapped;
+
+         private OpenFile(SeekableByteChannel channel, ByteBuffer buffer, boolean writing, boolean mapped)
+        {
+           this.channel = channel;
+           this.buffer = buffer;
+           this.writing = writing;
+           this.mapped = mapped;
+        }
+
+         private static OpenFile openForReading(ProgramFileSystem fileSystem, String filename, ByteBuffer buffer) throws IOException
+        {
+           SeekableByteChannel channel = fileSystem.openForReading(filename);
+           try {
+              long size = channel.size();
+              if (channel instanceof FileChannel && size > 0 && size <= Globals.fileMapLimit) {
+                 MappedByteBuffer mapping = ((FileChannel) channel).map(FileChannel.MapMode.READ_ONLY, 0, size);
+                 return new OpenFile(channel, mapping, false, true);
+              }
+           }
+               catch (IOException e) {
+                 // Mapping is only an optimization; read through the buffer instead.
+              }
+           buffer.clear();
+           buffer.limit(0); // nothing read yet
+           return new OpenFile(channel, buffer, false, false);
+        }
+
+         private static OpenFile openForWriting(ProgramFileSystem fileSystem, String filename, boolean append, ByteBuffer buffer) throws IOException
+        {
+           SeekableByteChannel channel = fileSystem.openForWriting(filename, append);
+           buffer.clear();
+           return new OpenFile(channel, buffer, true, false);
+        }
+
+        // Reads up to length bytes, fewer at end of file or once the file has given fewer
+        // than were asked of it (as from a pipe).  Returns the number read.
+         private int read(byte[] bytes, int length) throws IOException
+        {
+           if (length < 0 || length > bytes.length) {
+              throw new IndexOutOfBoundsException();
+           }
+           int count = 0;
+           boolean shortRead = mapped;
+           while (count < length) {
+              if (buffer.hasRemaining()) {
+                 int n = Math.min(length - count, buffer.remaining());
+                 buffer.get(bytes, count, n);
+                 count += n;
+              }
+              else if (shortRead) {
+                 break;
+              }
+              else if (length - count >= buffer.capacity()) {
+                 int n = channel.read(ByteBuffer.wrap(bytes, count, length - count));
+                 if (n <= 0) {
+                    break; // end of file
+                 }
+                 shortRead = (n < length - count);
+                 count += n;
+              }
+              else {
+                 buffer.clear();
+                 int n = channel.read(buffer);
+                 buffer.flip();
+                 if (n <= 0) {
+                    break; // end of file
+                 }
+                 shortRead = (n < buffer.capacity());
+              }
+           }
+           return count;
+        }
+
+         private void write(byte[] bytes, int length) throws IOException
+        {
+           if (length < 0 || length > bytes.length) {
+              throw new IndexOutOfBoundsException();
+           }
+           if (length > buffer.remaining()) {
+              flush();
+           }
+           if (length >= buffer.capacity()) {
+              writeFully(ByteBuffer.wrap(bytes, 0, length));
+           }
+           else {
+              buffer.put(bytes, 0, length);
+           }
+        }
+
+         private void flush() throws IOException
+        {
+           if (!writing) {
+              return;
+           }
+           buffer.flip();
+           try {
+              writeFully(buffer);
+           }
+           finally {
+              buffer.clear();
+           }
+        }
+
+         private void writeFully(ByteBuffer bytes) throws IOException
+        {
+           while (bytes.hasRemaining()) {
+              channel.write(bytes);
+           }
+        }
+
+         private void close() throws IOException
+        {
+           try {
+              flush();
+           }
+           finally {
+              channel.close();
+           }
+        }
+     }
+
     // //////////////////////////////////////////////////////////////////////////////
     // Maintain information on files in use. The index to the arrays is the "file descriptor."
     // Ken Vollmar, August 2005
@@ -513,7 +876,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       {
          private static String[] fileNames = new String[ SYSCALL_MAXFILES ]; // The filenames in use. Null if file descriptor i is not in use.
          private static int[] fileFlags = new int[ SYSCALL_MAXFILES ]; // The flags of this file, 0=READ, 1=WRITE. Invalid if this file descriptor is not in use.
-         private static Object[] streams = new Object[SYSCALL_MAXFILES]; // The streams in use, associated with the filenames
+         private static Object[] streams = new Object[SYSCALL_MAXFILES]; // The streams in use, associated with the filenames.  OpenFile except for STDIN, STDOUT, STDERR.
+         private static ByteBuffer[] buffers = new ByteBuffer[SYSCALL_MAXFILES]; // Buffer of each file descriptor, kept for the next file opened with it
+         private static ProgramFileSystem fileSystem = new DiskFileSystem(); // Where files are opened
+         private static boolean flushingAtExit = false; // shutdown hook to flush files added
       
         // Reset all file information. Closes any open files and resets the arrays
           private static void resetFiles()
@@ -524,6 +890,38 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             }
             setupStdio();
          }
+      
+        // Write out the buffered bytes of every open file
+          private static void flushFiles()
+         {
+            for (int i = STDERR + 1; i < SYSCALL_MAXFILES; i++)
+            {
+               if (streams[i] instanceof OpenFile)
+               {
+                  try {
+                     ((OpenFile) streams[i]).flush();
+                  } 
+                      catch (IOException ioe) {
+                     // not concerned with this exception, as in close()
+                     }
+               }
+            }
+         }
+      
+        // Make sure files still open when MARS exits, as when it is quit in the middle of
+        // a run, get their buffered bytes.  Added the first time a file is opened for writing.
+          private static void flushFilesAtExit()
+         {
+            if (flushingAtExit) 
+               return;
+            flushingAtExit = true;
+            Runtime.getRuntime().addShutdownHook(
+                  new Thread() {
+                     public void run() {
+                        flushFiles();
+                     }
+                  });
+         }
       	// DPS 8-Jan-2013
           private static void setupStdio() {
             fileNames[STDIN]  = "STDIN";
@@ -553,6 +951,27 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          
          }
       
+        // Set or retrieve the file system files are opened in
+          private static void setFileSystem(ProgramFileSystem newFileSystem)
+         {
+            fileSystem = (newFileSystem == null) ? new DiskFileSystem() : newFileSystem;
+         }
+      
+          private static ProgramFileSystem getFileSystem()
+         {
+            return fileSystem;
+         }
+      
+        // Retrieve the buffer for a file descriptor, allocating it the first time.  Direct
+        // buffers are costly to allocate, so each is reused by every file opened with its descriptor.
+          private static ByteBuffer getBuffer(int fd)
+         {
+            if (buffers[fd] == null) {
+               buffers[fd] = ByteBuffer.allocateDirect(Math.max(Globals.fileBufferSize, 1));
+            }
+            return buffers[fd];
+         }
+      
         // Determine whether a given filename is already in use.
           private static boolean filenameInUse(String requestedFilename)
          {
@@ -602,15 +1021,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          	// All this code will be executed only if the descriptor is open.
             if (streams[fd] != null)
             {
-               int keepFlag = fileFlags[fd];
                Object keepStream = streams[fd];
                fileFlags[fd] = -1;
                streams[fd] = null;
                try {
-                  if (keepFlag == O_RDONLY)
-                     ((FileInputStream)keepStream).close();
-                  else
-                     ((FileOutputStream)keepStream).close();
+                  ((OpenFile)keepStream).close();
                } 
                    catch (IOException ioe) {
                   // not concerned with this exception
@@ -642,7 +1057,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                return -1;
             }
          
-            while (fileNames[i] != null && i < SYSCALL_MAXFILES)
+            while (i < SYSCALL_MAXFILES && fileNames[i] != null)
             {
                i++;
             } // Attempt to find available file descriptor
@@ -6,6 +6,7 @@
    import javax.swing.*;
    import java.io.*;
    import mars.mips.instructions.CustomAssembly;
+   import mars.mips.instructions.LanguageLoader;
 	
 /**
  * Action class for the Instruction Set dropdown to toggle instruction sets on and off.
@@ -29,6 +30,14 @@ public class LanguageAction extends GuiAction{
       }
    		 
        public void actionPerformed(ActionEvent e) {
+         if (!assemblyList.contains(assembly)){
+            // The language's JAR file was reloaded after this menu was built
+            for (CustomAssembly c : assemblyList){
+               if (LanguageLoader.getLanguageClassName(c).equals(LanguageLoader.getLanguageClassName(assembly))){
+                  assembly = c;
+               }
+            }
+         }
 		   for (CustomAssembly c : assemblyList){
             if (c.enabled == true){
                c.enabled = false;
@@ -5,6 +5,8 @@
    import java.awt.*;
    import java.awt.event.*;
    import java.util.concurrent.ArrayBlockingQueue;
+   import java.util.concurrent.ConcurrentLinkedQueue;
+   import java.util.concurrent.atomic.AtomicBoolean;
    import javax.swing.event.DocumentListener;
    import javax.swing.undo.UndoableEdit;
    import mars.simulator.Simulator;
@@ -55,6 +57,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	// must obviously be smaller than the former.
       public static final int MAXIMUM_SCROLLED_CHARACTERS = Globals.maximumMessageCharacters;
       public static final int NUMBER_OF_CHARACTERS_TO_CUT = Globals.maximumMessageCharacters/10 ; // 10%
+   	// Messages posted to the run display wait here until the next flush, which
+   	// appends all of them at once.  Flushes are at most this many milliseconds
+   	// apart, about once per screen refresh.
+      private static final int RUN_MESSAGE_FLUSH_INTERVAL = 16;
+      private final ConcurrentLinkedQueue<String> runMessages = new ConcurrentLinkedQueue<String>();
+      private final AtomicBoolean runFlushScheduled = new AtomicBoolean(false);
+      private javax.swing.Timer runFlushTimer;
    
    /**
      *  Constructor for the class, sets up two fresh tabbed text areas for program feedback.
@@ -64,7 +73,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          super();
          this.setMinimumSize(new Dimension(0,0));
          assemble= new JTextArea();
-         run= new JTextArea();
+      	// Run display is cut from the front as it fills; RingBufferContent makes that cheap.
+         run= new JTextArea(new PlainDocument(new RingBufferContent()));
+         runFlushTimer = new javax.swing.Timer(RUN_MESSAGE_FLUSH_INTERVAL, 
+                new ActionListener() {
+                   public void actionPerformed(ActionEvent e){ 
+                     flushRunMessages();
+                  }
+               });
+         runFlushTimer.setRepeats(false);
          assemble.setEditable(false); 
          run.setEditable(false);
       	// Set both text areas to mono font.  For assemble
@@ -158,6 +175,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          runTabClearButton.addActionListener(
                 new ActionListener() {
                    public void actionPerformed(ActionEvent e){ 
+                     flushRunMessages();
                      run.setText("");
                   }
                });
@@ -298,26 +316,52 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	// "print" syscalls. "invokeLater" schedules the code to be
    	// run under the event-processing thread no matter what.
    	// DPS, 23 Aug 2005.
+   	// A program printing in a loop posts far more messages than the event
+   	// thread can append one at a time, so messages are queued and one
+   	// "invokeLater" starts a timer that appends everything queued when it
+   	// fires.  Posting never blocks the execution thread.
        public void postRunMessage(String message) {
-         final String mess = message;
-         SwingUtilities.invokeLater(
-                new Runnable() { 
-                   public void run() { 
-                     setSelectedComponent(runTab);
-                     run.append(mess);
-                  // can do some crude cutting here.  If the document gets "very large", 
-                  // let's cut off the oldest text. This will limit scrolling but the limit 
-                  // can be set reasonably high.
-                     if (run.getDocument().getLength() > MAXIMUM_SCROLLED_CHARACTERS) {
-                        try {
-                           run.getDocument().remove(0, NUMBER_OF_CHARACTERS_TO_CUT);
-                        } 
-                            catch (BadLocationException ble) { 
-                           // only if NUMBER_OF_CHARACTERS_TO_CUT > MAXIMUM_SCROLLED_CHARACTERS
-                           }
-                     }
-                  } 
-               });
+         runMessages.add(message);
+         if (runFlushScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(
+                   new Runnable() { 
+                      public void run() { 
+                        runFlushTimer.start();
+                     } 
+                  });
+         }
+      }
+   
+   	// Appends all queued run messages to the run display in one edit, first cutting
+   	// the oldest text if the display would become "very large".  This will limit
+   	// scrolling but the limit can be set reasonably high.  Must be called from the
+   	// main event thread.
+       private void flushRunMessages() {
+         runFlushScheduled.set(false);
+         if (runMessages.isEmpty()) {
+            return;
+         }
+         StringBuilder text = new StringBuilder();
+         String message;
+         while ((message = runMessages.poll()) != null) {
+            text.append(message);
+         }
+         // Text beyond the limit would be cut right away, so don't insert it.
+         if (text.length() > MAXIMUM_SCROLLED_CHARACTERS) {
+            text.delete(0, text.length() - MAXIMUM_SCROLLED_CHARACTERS);
+         }
+         setSelectedComponent(runTab);
+         Document document = run.getDocument();
+         int excess = document.getLength() + text.length() - MAXIMUM_SCROLLED_CHARACTERS;
+         if (excess > 0) {
+            try {
+               document.remove(0, Math.min(document.getLength(), Math.max(excess, NUMBER_OF_CHARACTERS_TO_CUT)));
+            } 
+                catch (BadLocationException ble) { 
+               // cannot happen, the range is within the document
+               }
+         }
+         run.append(text.toString());
       }
    	
    	/**
@@ -452,6 +496,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                }
             };
           public void run() { // must be invoked from the GUI thread
+            flushRunMessages(); // so output already posted, such as a prompt, comes before the input
             setSelectedComponent(runTab);
             run.setEditable(true);
             run.requestFocusInWindow();
@@ -0,0 +1,398 @@
+   package mars.venus;
+
+   import java.lang.ref.ReferenceQueue;
+   import java.lang.ref.WeakReference;
+   import java.util.ArrayList;
+   import java.util.Collections;
+   import java.util.Comparator;
+   import javax.swing.text.AbstractDocument;
+   import javax.swing.text.BadLocationException;
+   import javax.swing.text.Position;
+   import javax.swing.text.Segment;
+   import javax.swing.undo.AbstractUndoableEdit;
+   import javax.swing.undo.CannotRedoException;
+   import javax.swing.undo.CannotUndoException;
+   import javax.swing.undo.UndoableEdit;
+
+/**
+ * Document content for the Run I/O console, which is appended to at the end and
+ * cut from the front as it fills.  Swing's own contents move every remaining
+ * character, and every position, each time text is cut from the front.  Here the
+ * characters are kept in a circular buffer and positions are kept relative to the
+ * number of characters ever cut from the front, so cutting from the front takes the
+ * same time however much text remains.  Inserting or removing elsewhere, as happens
+ * while the user types input, moves only the characters and positions on the
+ * nearer side of the change.
+ * <br><br>
+ * Behaves as javax.swing.text.StringContent does, including its undo of removed positions.
+ * As there, positions are held weakly: those Swing no longer uses, such as the ends of
+ * removed lines, are forgotten once collected and no longer moved by later edits.
+ **/
+
+   public class RingBufferContent implements AbstractDocument.Content {
+      private static final int INITIAL_CAPACITY = 1024;
+      private static final int MINIMUM_MARKS_TO_COMPACT = 1024;
+
+      private char[] data;
+      private int head;   // index in data of the first character
+      private int count;  // number of characters, including the final newline every content has
+
+      // Marks of positions, sorted by absolute offset.  A mark's offset is its absolute offset
+      // minus the number of characters cut from the front, or 0 if that is negative.  Marks
+      // before firstMark have been cut from the front; they stay at 0 and are no longer updated.
+      private ArrayList marks = new ArrayList();
+      private int firstMark = 0;
+      private long cutFromFront = 0;
+      // Marks whose positions have been collected, to be taken out of marks
+      private ReferenceQueue collectedMarks = new ReferenceQueue();
+
+      private static final Comparator MARK_ORDER =
+          new Comparator() {
+             public int compare(Object a, Object b) {
+               long difference = ((Mark) a).absolute - ((Mark) b).absolute;
+               return (difference < 0) ? -1 : (difference > 0) ? 1 : 0;
+            }
+         };
+
+   /**
+    * Creates content holding only the final newline.
+    */
+       public RingBufferContent() {
+         data = new char[INITIAL_CAPACITY];
+         data[0] = '\n';
+         count = 1;
+      }
+
+       public synchronized Position createPosition(int offset) throws BadLocationException {
+         removeCollectedMarks();
+         StickyPosition position = new StickyPosition();
+         position.mark = new Mark(position, cutFromFront + offset, collectedMarks);
+         int index = findMark(position.mark.absolute + 1); // after any marks already at this offset
+         marks.add(index, position.mark);
+         return position;
+      }
+
+       public synchronized int length() {
+         return count;
+      }
+
+       public synchronized UndoableEdit insertString(int where, String str) throws BadLocationException {
+         if (where >= count || where < 0) {
+            throw new BadLocationException("Invalid location", count);
+         }
+         int length = str.length();
+         ensureCapacity(count + length);
+         removeCollectedMarks();
+         if (where < count - where) {
+            // Move the characters before the insertion toward the front
+            head = (head - length) & (data.length - 1);
+            for (int i = 0; i < where; i++) {
+               data[index(i)] = data[index(i + length)];
+            }
+         }
+         else {
+            for (int i = count - 1; i >= where; i--) {
+               data[index(i + length)] = data[index(i)];
+            }
+         }
+         for (int i = 0; i < length; i++) {
+            data[index(where + i)] = str.charAt(i);
+         }
+         count += length;
+         // Marks at the insertion move after it, except those at 0
+         for (int i = findMark(cutFromFront + Math.max(where, 1)); i < marks.size(); i++) {
+            ((Mark) marks.get(i)).absolute += length;
+         }
+         return new InsertUndo(where, length);
+      }
+
+       public synchronized UndoableEdit remove(int where, int nitems) throws BadLocationException {
+         if (where + nitems >= count || where < 0 || nitems < 0) {
+            throw new BadLocationException("Invalid range", count);
+         }
+         removeCollectedMarks();
+         UndoableEdit edit = new RemoveUndo(where, getString(where, nitems));
+         if (where < count - where - nitems) {
+            for (int i = where - 1; i >= 0; i--) {
+               data[index(i + nitems)] = data[index(i)];
+            }
+            head = (head + nitems) & (data.length - 1);
+         }
+         else {
+            for (int i = where + nitems; i < count; i++) {
+               data[index(i - nitems)] = data[index(i)];
+            }
+         }
+         count -= nitems;
+         if (where == 0) {
+            // Every mark moves back by nitems, or to 0; no need to visit them.
+            cutFromFront += nitems;
+            while (firstMark < marks.size() && ((Mark) marks.get(firstMark)).absolute < cutFromFront) {
+               ((Mark) marks.get(firstMark++)).listed = false;
+            }
+            if (firstMark >= MINIMUM_MARKS_TO_COMPACT && firstMark > marks.size() / 2) {
+               marks.subList(0, firstMark).clear();
+               firstMark = 0;
+            }
+         }
+         else {
+            for (int i = findMark(cutFromFront + where); i < marks.size(); i++) {
+               Mark mark = (Mark) marks.get(i);
+               mark.absolute = (mark.absolute - cutFromFront >= where + nitems)
+                  ? mark.absolute - nitems
+                  : cutFromFront + where;
+            }
+         }
+         return edit;
+      }
+
+       public synchronized String getString(int where, int len) throws BadLocationException {
+         Segment segment = new Segment();
+         getChars(where, len, segment);
+         return segment.toString();
+      }
+
+       public synchronized void getChars(int where, int len, Segment txt) throws BadLocationException {
+         if (where < 0 || len < 0 || where + len > count) {
+            throw new BadLocationException("Invalid location", count);
+         }
+         int start = index(where);
+         if (start + len <= data.length) {
+            txt.array = data;
+            txt.offset = start;
+            txt.count = len;
+         }
+         else if (txt.isPartialReturn()) {
+            // Up to the end of the buffer; the caller asks again for the rest
+            txt.array = data;
+            txt.offset = start;
+            txt.count = data.length - start;
+         }
+         else {
+            char[] chars = new char[len];
+            System.arraycopy(data, start, chars, 0, data.length - start);
+            System.arraycopy(data, 0, chars, data.length - start, len - (data.length - start));
+            txt.array = chars;
+            txt.offset = 0;
+            txt.count = len;
+         }
+      }
+
+      // Index in data of the character at the given offset.
+       private int index(int offset) {
+         return (head + offset) & (data.length - 1);
+      }
+
+       private void ensureCapacity(int capacity) {
+         if (capacity <= data.length) {
+            return;
+         }
+         int newLength = data.length;
+         while (newLength < capacity) {
+            newLength <<= 1;
+         }
+         char[] newData = new char[newLength];
+         for (int i = 0; i < count; i++) {
+            newData[i] = data[index(i)];
+         }
+         data = newData;
+         head = 0;
+      }
+
+      // Takes the marks of positions that have been collected out of marks, in one pass.
+       private void removeCollectedMarks() {
+         if (collectedMarks.poll() == null) {
+            return;
+         }
+         while (collectedMarks.poll() != null) {
+            // the pass below finds them all
+         }
+         int kept = 0;
+         int keptBeforeFirst = 0;
+         for (int i = 0; i < marks.size(); i++) {
+            Mark mark = (Mark) marks.get(i);
+            if (mark.get() == null) {
+               mark.listed = false;
+            }
+            else {
+               if (i < firstMark) {
+                  keptBeforeFirst++;
+               }
+               marks.set(kept++, mark);
+            }
+         }
+         marks.subList(kept, marks.size()).clear();
+         firstMark = keptBeforeFirst;
+      }
+
+      // Offset of a mark, as its position gives it.
+       private int offsetOf(Mark mark) {
+         return (int) Math.max(0, mark.absolute - cutFromFront);
+      }
+
+      // Index in marks of the first listed mark whose absolute offset is at least the given one.
+       private int findMark(long absolute) {
+         int low = firstMark;
+         int high = marks.size();
+         while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (((Mark) marks.get(middle)).absolute < absolute) {
+               low = middle + 1;
+            }
+            else {
+               high = middle;
+            }
+         }
+         return low;
+      }
+
+      // Marks whose offsets are in the given range, with those offsets, for undoing a removal.
+       private ArrayList getMarksInRange(int offset, int length) {
+         ArrayList undoMarks = new ArrayList();
+         for (int i = findMark(cutFromFront + offset); i < marks.size(); i++) {
+            Mark mark = (Mark) marks.get(i);
+            if (offsetOf(mark) > offset + length) {
+               break;
+            }
+            undoMarks.add(new UndoMark(mark));
+         }
+         return undoMarks;
+      }
+
+      // Puts marks back where they were before a removal was undone.
+       private void resetMarks(ArrayList undoMarks) {
+         for (int i = 0; i < undoMarks.size(); i++) {
+            UndoMark undoMark = (UndoMark) undoMarks.get(i);
+            if (undoMark.mark.get() == null) {
+               continue; // its position is gone
+            }
+            undoMark.mark.absolute = cutFromFront + undoMark.offset;
+            if (!undoMark.mark.listed) {
+               undoMark.mark.listed = true;
+               marks.add(undoMark.mark);
+            }
+         }
+         // Marks before firstMark are all at 0, so sorting puts them first still.
+         Collections.sort(marks.subList(firstMark, marks.size()), MARK_ORDER);
+      }
+
+      // A position handed out by createPosition().  Only its mark is kept in marks.
+       private class StickyPosition implements Position {
+         private Mark mark;
+
+          public int getOffset() {
+            synchronized (RingBufferContent.this) {
+               return offsetOf(mark);
+            }
+         }
+
+          public String toString() {
+            return Integer.toString(getOffset());
+         }
+      }
+
+      // Where a position is, referring to the position weakly so that it can be collected.
+       private static class Mark extends WeakReference {
+         private long absolute;
+         private boolean listed = true;
+
+          private Mark(StickyPosition position, long absolute, ReferenceQueue queue) {
+            super(position, queue);
+            this.absolute = absolute;
+         }
+      }
+
+       private class UndoMark {
+         private Mark mark;
+         private int offset;
+
+          private UndoMark(Mark mark) {
+            this.mark = mark;
+            this.offset = offsetOf(mark);
+         }
+      }
+
+       private class InsertUndo extends AbstractUndoableEdit {
+         private int offset;
+         private int length;
+         private String string; // text removed by undo, for redo
+         private ArrayList undoMarks;
+
+          private InsertUndo(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+         }
+
+          public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+               synchronized (RingBufferContent.this) {
+                  undoMarks = getMarksInRange(offset, length);
+                  string = getString(offset, length);
+                  remove(offset, length);
+               }
+            }
+                catch (BadLocationException e) {
+                  throw new CannotUndoException();
+               }
+         }
+
+          public void redo() throws CannotRedoException {
+            super.redo();
+            try {
+               synchronized (RingBufferContent.this) {
+                  insertString(offset, string);
+                  string = null;
+                  resetMarks(undoMarks);
+                  undoMarks = null;
+               }
+            }
+                catch (BadLocationException e) {
+                  throw new CannotRedoException();
+               }
+         }
+      }
+
+       private class RemoveUndo extends AbstractUndoableEdit {
+         private int offset;
+         private int length;
+         private String string; // text removed, for undo
+         private ArrayList undoMarks;
+
+          private RemoveUndo(int offset, String string) {
+            this.offset = offset;
+            this.string = string;
+            this.length = string.length();
+            undoMarks = getMarksInRange(offset, length);
+         }
+
+          public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+               synchronized (RingBufferContent.this) {
+                  insertString(offset, string);
+                  resetMarks(undoMarks);
+                  undoMarks = null;
+                  string = null;
+               }
+            }
+                catch (BadLocationException e) {
+                  throw new CannotUndoException();
+               }
+         }
+
+          public void redo() throws CannotRedoException {
+            super.redo();
+            try {
+               synchronized (RingBufferContent.this) {
+                  string = getString(offset, length);
+                  undoMarks = getMarksInRange(offset, length);
+                  remove(offset, length);
+               }
+            }
+                catch (BadLocationException e) {
+                  throw new CannotRedoException();
+               }
+         }
+      }
+   }
@@ -2,6 +2,9 @@
    import mars.*;
    import mars.util.*;
    import mars.mips.hardware.*;
+   import mars.simulator.*;
+   import mars.mips.instructions.syscalls.HeapAllocator;
+   import mars.mips.instructions.syscalls.RandomStreams;
    import java.util.*;
    import java.io.*;
    import java.awt.*;
@@ -123,6 +126,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             	
             // Aug. 24, 2005 Ken Vollmar
                SystemIO.resetFiles( );  // Ensure that I/O "file descriptors" are initialized for a new program run
+               SimulatedClock.reset();
+               RandomStreams.reset();
+               HeapAllocator.reset();
             
             }
                 catch (ProcessingException pe) {
@@ -2,6 +2,9 @@
    import mars.*;
    import mars.util.*;
    import mars.mips.hardware.*;
+   import mars.simulator.*;
+   import mars.mips.instructions.syscalls.HeapAllocator;
+   import mars.mips.instructions.syscalls.RandomStreams;
    import java.awt.*;
    import java.awt.event.*;
    import javax.swing.*;
@@ -92,6 +95,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       
          // Aug. 24, 2005 Ken Vollmar
          SystemIO.resetFiles( );  // Ensure that I/O "file descriptors" are initialized for a new program run
+         SimulatedClock.reset();
+         RandomStreams.reset();
+         HeapAllocator.reset();
       
          mainUI.getMessagesPane().postRunMessage(
                              "\n"+name+": reset completed.\n\n");
@@ -0,0 +1,38 @@
+   package mars.venus;
+   import mars.simulator.*;
+   import mars.*;
+   import java.util.*;
+   import java.awt.*;
+   import java.awt.event.*;
+   import javax.swing.*;
+   import java.io.*;
+	
+	
+   /**
+    * Action class for the Settings menu item to control whether
+	 * the MemCopy, MemSet, MemCompare and StrLen syscalls are provided.
+	 * When they are not, their service numbers are free for other syscalls.
+	 * The change is refused if it would give two syscalls the same number.
+    */
+    public class SettingsMemorySyscallsAction extends GuiAction  {
+   	
+   
+       public SettingsMemorySyscallsAction(String name, Icon icon, String descrip,
+                             Integer mnemonic, KeyStroke accel, VenusUI gui) {
+         super(name, icon, descrip, mnemonic, accel, gui);
+      }
+   		 
+       public void actionPerformed(ActionEvent e) {
+         JCheckBoxMenuItem item = (JCheckBoxMenuItem) e.getSource();
+         String problem = Globals.instructionSet.setMemorySyscallsEnabled(item.isSelected());
+         if (problem != null) {
+            JOptionPane.showMessageDialog(mainUI, "Memory syscalls cannot be turned " +
+                  (item.isSelected() ? "on" : "off") + ".\n" + problem,
+                  "Memory syscalls", JOptionPane.ERROR_MESSAGE);
+            item.setSelected(!item.isSelected());
+            return;
+         }
+         Globals.getSettings().setBooleanSetting(Settings.MEMORY_SYSCALLS_ENABLED, item.isSelected());
+      }
+   	   	
+   }
\ No newline at end of file
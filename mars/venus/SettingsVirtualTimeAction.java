@@ -0,0 +1,30 @@
+   package mars.venus;
+   import mars.simulator.*;
+   import mars.*;
+   import java.util.*;
+   import java.awt.*;
+   import java.awt.event.*;
+   import javax.swing.*;
+   import java.io.*;
+	
+	
+   /**
+    * Action class for the Settings menu item to control whether
+	 * the running MIPS program sees virtual time: time that advances
+	 * with the instructions executed and the time slept, so that
+	 * sleeping returns at once.
+    */
+    public class SettingsVirtualTimeAction extends GuiAction  {
+   	
+   
+       public SettingsVirtualTimeAction(String name, Icon icon, String descrip,
+                             Integer mnemonic, KeyStroke accel, VenusUI gui) {
+         super(name, icon, descrip, mnemonic, accel, gui);
+      }
+   		 
+       public void actionPerformed(ActionEvent e) {
+         Globals.getSettings().setBooleanSetting(Settings.VIRTUAL_TIME_ENABLED,
+               ((JCheckBoxMenuItem) e.getSource()).isSelected());
+      }
+   	   	
+   }
\ No newline at end of file
@@ -42,6 +42,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 	  
     public class ToolAction extends AbstractAction {
       private Class toolClass; //MarsTool tool;
+      private String toolClassName; // name of toolClass, which is not loaded until the tool is chosen
    	
 		/**
 		 *  Simple constructor.
@@ -52,6 +53,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public ToolAction(Class toolClass, String toolName) { 
 		   super(toolName, null); 
          this.toolClass = toolClass;
+         this.toolClassName = toolClass.getName();
+      }
+
+		/**
+		 *  Constructor for a tool whose class has not been loaded yet.  It is loaded
+		 *  the first time the tool is chosen from the menu.
+		 *
+		 *  @param toolClassName fully qualified name of the associated MarsTool subclass
+		 *  @param toolName Name of this tool, for the menu.
+		 */
+       public ToolAction(String toolClassName, String toolName) { 
+		   super(toolName, null); 
+         this.toolClassName = toolClassName;
       }
 
 			
@@ -63,9 +77,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public void actionPerformed(ActionEvent e) {
 		 try {  
 		    // An exception should not occur here because we got here only after
-			 // already successfully creating an instance from the same Class object 
-			 // in ToolLoader's loadMarsTools() method.
+			 // ToolLoader's loadMarsTools() method found this to be a MarsTool that
+			 // could be instantiated, in this or an earlier run.
+			 if (this.toolClass == null) {
+			    this.toolClass = Class.forName(this.toolClassName);
+			 }
           ((MarsTool)this.toolClass.newInstance()).action(); 
-			 } catch (Exception ex) { }  
+			 } catch (Exception ex) {
+			    System.out.println("Error instantiating MarsTool " + this.toolClassName + ": " + ex);
+			 }  
       }
    }
\ No newline at end of file
@@ -51,11 +51,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 	 
     public class ToolLoader {
    
-      private static final String CLASS_PREFIX = "mars.tools.";
       private static final String TOOLS_DIRECTORY_PATH = "mars/tools";
       private static final String TOOLS_MENU_NAME = "Tools";
-      private static final String MARSTOOL_INTERFACE = "MarsTool.class";
-      private static final String CLASS_EXTENSION = "class";
     
     /**
      *  Called in VenusUI to build its Tools menu.  If there are no qualifying tools
@@ -73,17 +70,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             menu = new JMenu(TOOLS_MENU_NAME);
             menu.setMnemonic(KeyEvent.VK_T);
          // traverse array list and build menu
-            MarsToolClassAndInstance listItem;
             for (int i=0; i<marsToolList.size(); i++) {
-               listItem = (MarsToolClassAndInstance) marsToolList.get(i);
-               menu.add(new ToolAction(listItem.marsToolClass, listItem.marsToolInstance.getName()));
+               String[] tool = (String[]) marsToolList.get(i);
+               menu.add(new ToolAction(tool[0], tool[1]));
             }
          }
          return menu;
       }
    
    /*
-    *  Dynamically loads MarsTools into an ArrayList.  This method is adapted from
+    *  Finds the MarsTools and their names, for the menu.  Originally adapted from
     *  the loadGameControllers() method in Bret Barker's GameServer class.
     *  Barker (bret@hypefiend.com) is co-author of the book "Developing Games
     *  in Java".  It was demo'ed to me by Otterbein student Chris Dieterle
@@ -100,55 +96,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     *  of the JAR file (using toString, not getName).  Extract that name, open it
     *  as a ZipFile, get the ZipEntry enumeration, find the class files in the tools
     *  folder, then continue as before.
+    *
+    *  The search is now done by PluginRegistry, which remembers the tools and their
+    *  names between runs.  Each tool is a window, so creating them all is slow; a tool
+    *  is created here only if the registry does not have its name, and otherwise not
+    *  until it is chosen from the menu.  Returns {class name, tool name} String arrays.
     */
        private ArrayList loadMarsTools() {
-         ArrayList toolList = new ArrayList();
-         ArrayList candidates = FilenameFinder.getFilenameList(this.getClass( ).getClassLoader(),
-                                              TOOLS_DIRECTORY_PATH, CLASS_EXTENSION);
-      	// Add any tools stored externally, as listed in Config.properties file.
+      	// Tools stored externally, as listed in Config.properties file, are not loaded.
       	// This needs some work, because mars.Globals.getExternalTools() returns
       	// whatever is in the properties file entry.  Since the class file will
-      	// not be located in the mars.tools folder, the loop below will not process
-      	// it correctly.  Not sure how to create a Class object given an absolute
-      	// pathname.
-         //candidates.addAll(mars.Globals.getExternalTools());  // this by itself is not enough...
-         HashMap tools = new HashMap();
-for( int i = 0; i < candidates.size(); i++) {
-            String file = (String) candidates.get(i);
-            // Do not add class if already encountered (happens if run in MARS development directory)
-            if (tools.containsKey(file)) {
-               continue;
-            } 
-            else {
-               tools.put(file,file);
-            }
-            if (!file.equals(MARSTOOL_INTERFACE)) {
-               try {
-                  // grab the class, make sure it implements MarsTool, instantiate, add to menu
-                  String toolClassName = CLASS_PREFIX+file.substring(0, file.indexOf(CLASS_EXTENSION)-1);
-                  Class clas = Class.forName(toolClassName);
-                  if (!MarsTool.class.isAssignableFrom(clas)   || 
-                      Modifier.isAbstract(clas.getModifiers()) ||
-                  	 Modifier.isInterface(clas.getModifiers())  ) {
-                     continue;
+      	// not be located in the mars.tools folder, the registry will not find it.
+      	// Not sure how to create a Class object given an absolute pathname.
+         return PluginRegistry.getPluginClasses(this.getClass().getClassLoader(), TOOLS_DIRECTORY_PATH, MarsTool.class,
+                new PluginRegistry.Describer() {
+                   public String[] describe(Class toolClass) throws Exception {
+                     return new String[] {((MarsTool) toolClass.newInstance()).getName()};
                   }
-                  toolList.add(new MarsToolClassAndInstance(clas,(MarsTool)clas.newInstance()));
-               } 
-                   catch (Exception e) {
-                     System.out.println("Error instantiating MarsTool from file " + file + ": "+e);
-                  }
-            }
-         }
-         return toolList;
-      }
-   
-   	
-       private class MarsToolClassAndInstance {
-         Class marsToolClass;
-         MarsTool marsToolInstance;
-          MarsToolClassAndInstance(Class marsToolClass, MarsTool marsToolInstance) {
-            this.marsToolClass = marsToolClass;
-            this.marsToolInstance = marsToolInstance;
-         }
+               });
       }
    }
\ No newline at end of file
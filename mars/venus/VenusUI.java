@@ -77,7 +77,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private JMenuItem runGo, runStep, runBackstep, runReset, runAssemble, runStop, runPause, runClearBreakpoints, runToggleBreakpoints;
       private JCheckBoxMenuItem settingsLabel, settingsPopupInput, settingsValueDisplayBase, settingsAddressDisplayBase,
               settingsExtended, settingsAssembleOnOpen, settingsAssembleAll, settingsWarningsAreErrors, settingsStartAtMain,
-      		  settingsDelayedBranching, settingsProgramArguments, settingsSelfModifyingCode;
+      		  settingsDelayedBranching, settingsProgramArguments, settingsSelfModifyingCode, settingsVirtualTime,
+      		  settingsMemorySyscalls;
       private JMenuItem settingsExceptionHandler, settingsEditor, settingsHighlighting, settingsMemoryConfiguration;
       private JMenuItem helpHelp, helpAbout;
          
@@ -102,7 +103,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      settingsExtendedAction, settingsAssembleOnOpenAction, settingsAssembleAllAction,
       					settingsWarningsAreErrorsAction, settingsStartAtMainAction, settingsProgramArgumentsAction,
       					settingsDelayedBranchingAction, settingsExceptionHandlerAction, settingsEditorAction,
-      					settingsHighlightingAction, settingsMemoryConfigurationAction, settingsSelfModifyingCodeAction;    
+      					settingsHighlightingAction, settingsMemoryConfigurationAction, settingsSelfModifyingCodeAction,
+                     settingsVirtualTimeAction, settingsMemorySyscallsAction;    
       private Action helpHelpAction, helpAboutAction;
    
    
@@ -425,6 +427,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                									  "If set, the MIPS program can write and branch to both text and data segments.",
                									  null,null,
                									  mainUI);
+            settingsVirtualTimeAction  = new SettingsVirtualTimeAction("Virtual time",
+                                            null,
+               									  "If set, the Time and Sleep syscalls use simulated time, and sleeping takes no real time.",
+               									  null,null,
+               									  mainUI);
+            settingsMemorySyscallsAction  = new SettingsMemorySyscallsAction("Memory syscalls",
+                                            null,
+               									  "If set, the MemCopy, MemSet, MemCompare and StrLen syscalls (60-63) are provided.",
+               									  null,null,
+               									  mainUI);
             settingsEditorAction          = new SettingsEditorAction("Editor...",
                                             null,
                									  "View and modify text editor settings.",
@@ -514,7 +526,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          file.add(fileSave);
          file.add(fileSaveAs);
          file.add(fileSaveAll);
-         if (new mars.mips.dump.DumpFormatLoader().loadDumpFormats().size() > 0) {
+         if (new mars.mips.dump.DumpFormatLoader().hasDumpFormats()) {
             file.add(fileDumpMemory);
          }
          file.addSeparator();
@@ -594,6 +606,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          settingsDelayedBranching.setSelected(Globals.getSettings().getDelayedBranchingEnabled());
          settingsSelfModifyingCode = new JCheckBoxMenuItem(settingsSelfModifyingCodeAction);
          settingsSelfModifyingCode.setSelected(Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED));
+         settingsVirtualTime = new JCheckBoxMenuItem(settingsVirtualTimeAction);
+         settingsVirtualTime.setSelected(Globals.getSettings().getBooleanSetting(Settings.VIRTUAL_TIME_ENABLED));
+         settingsMemorySyscalls = new JCheckBoxMenuItem(settingsMemorySyscallsAction);
+         settingsMemorySyscalls.setSelected(Globals.getSettings().getBooleanSetting(Settings.MEMORY_SYSCALLS_ENABLED));
          settingsAssembleOnOpen = new JCheckBoxMenuItem(settingsAssembleOnOpenAction);
          settingsAssembleOnOpen.setSelected(Globals.getSettings().getAssembleOnOpenEnabled());
          settingsAssembleAll = new JCheckBoxMenuItem(settingsAssembleAllAction);
@@ -623,6 +639,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          settings.add(settingsExtended);
          settings.add(settingsDelayedBranching);
          settings.add(settingsSelfModifyingCode);
+         settings.add(settingsVirtualTime);
+         settings.add(settingsMemorySyscalls);
          settings.addSeparator();
          settings.add(settingsEditor);
          settings.add(settingsHighlighting);
@@ -720,7 +738,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          toolBar.add(Open);
          toolBar.add(Save);
          toolBar.add(SaveAs);
-         if (new mars.mips.dump.DumpFormatLoader().loadDumpFormats().size() > 0) {
+         if (new mars.mips.dump.DumpFormatLoader().hasDumpFormats()) {
             toolBar.add(DumpMemory);
          }
          toolBar.add(Print);